@@ -0,0 +1,129 @@
+package com.thecarousell.cropimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+
+/**
+ * Records a crop window drag and replays it from the written file on a new view.
+ */
+@RunWith(AndroidJUnit4.class)
+public class GestureRecordingTest {
+
+    private static final int WIDTH = 480;
+
+    private static final int HEIGHT = 640;
+
+    /**
+     * The status code of the reported dispatch times, the test runner reserves 1 to -4 for the
+     * test results and 0 for its own values.
+     */
+    private static final int STATUS_REPLAY_TIMES = 2;
+
+    private Rect mRecordedRect;
+
+    private Rect mInitialRect;
+
+    private Rect mReplayedRect;
+
+    private int mEventCount;
+
+    private long[] mDurations;
+
+    @Test
+    public void replay_recordedDrag_reproducesCropRect() throws Exception {
+        final ByteArrayOutputStream file = new ByteArrayOutputStream();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                CropImageView view = createView();
+                mInitialRect = view.getCropRect();
+                GestureRecording recording = view.startGestureRecording();
+                dragLeftEdge(view);
+                view.stopGestureRecording();
+                mRecordedRect = view.getCropRect();
+                mEventCount = recording.getEventCount();
+                try {
+                    recording.write(file);
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        });
+
+        final GestureRecording recording =
+                GestureRecording.read(new ByteArrayInputStream(file.toByteArray()));
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                CropImageView view = createView();
+                mDurations = view.replayGestureRecording(recording);
+                mReplayedRect = view.getCropRect();
+            }
+        });
+
+        assertNotNull(mRecordedRect);
+        assertNotEquals(mInitialRect, mRecordedRect);
+        assertEquals(mRecordedRect, mReplayedRect);
+        assertEquals(mEventCount, mDurations.length);
+
+        // report the dispatch times to the instrumentation output, e.g. `am instrument -r`
+        Bundle results = new Bundle();
+        results.putLongArray("replay_event_cpu_time_ns", mDurations);
+        InstrumentationRegistry.getInstrumentation().sendStatus(STATUS_REPLAY_TIMES, results);
+    }
+
+    private static CropImageView createView() {
+        CropImageView view =
+                new CropImageView(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        view.setLayoutParams(new FrameLayout.LayoutParams(WIDTH, HEIGHT));
+        view.setImageBitmap(Bitmap.createBitmap(1200, 900, Bitmap.Config.ARGB_8888));
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, WIDTH, HEIGHT);
+        return view;
+    }
+
+    /**
+     * Drag the left edge of the crop window to the right, a move with historical samples.
+     */
+    private static void dragLeftEdge(CropImageView view) {
+        RectF rect = ((CropOverlayView) view.findViewById(R.id.CropOverlayView))
+                .getCropWindowRect();
+        float x = rect.left;
+        float y = rect.centerY();
+        long downTime = SystemClock.uptimeMillis();
+        dispatch(view, MotionEvent.obtain(downTime, downTime, MotionEvent.ACTION_DOWN, x, y, 0));
+        MotionEvent move = MotionEvent.obtain(downTime, downTime + 8, MotionEvent.ACTION_MOVE,
+                x + 10, y, 0);
+        move.addBatch(downTime + 16, x + 25, y, 1, 1, 0);
+        dispatch(view, move);
+        dispatch(view, MotionEvent.obtain(downTime, downTime + 24, MotionEvent.ACTION_MOVE,
+                x + 40, y, 0));
+        dispatch(view, MotionEvent.obtain(downTime, downTime + 32, MotionEvent.ACTION_UP,
+                x + 40, y, 0));
+    }
+
+    private static void dispatch(View view, MotionEvent event) {
+        view.dispatchTouchEvent(event);
+        event.recycle();
+    }
+}
@@ -0,0 +1,710 @@
+package com.thecarousell.cropimageview;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.net.Uri;
+
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Utility class for decoding, reading and cropping the bitmaps used for cropping.
+ */
+final class BitmapUtils {
+
+    /**
+     * Max bytes of a single strip decoded when filling a {@link MappedPixelBuffer}.
+     */
+    private static final int MAX_STRIP_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Max width/height of a preview bitmap created from a {@link MappedPixelBuffer}, safe for the
+     * max texture size of most devices.
+     */
+    static final int MAX_PREVIEW_SIZE = 2048;
+
+    private BitmapUtils() {
+    }
+
+    /**
+     * Decode the image at the given uri into a new memory-mapped pixel buffer.<br>
+     * The source is decoded once, strip by strip, so the full decoded image is never on the heap.
+     *
+     * @param file    the file to back the pixel buffer by
+     * @param metrics the metrics to record the stages into, null to not measure
+     */
+    static MappedPixelBuffer decodeToMappedBuffer(Context context, Uri uri, File file,
+            CropMetrics metrics) throws IOException {
+        ContentResolver resolver = context.getContentResolver();
+
+        if (metrics != null) {
+            metrics.begin(CropMetrics.Stage.BOUNDS_READ);
+        }
+        BitmapRegionDecoder decoder = null;
+        MappedPixelBuffer buffer = null;
+        try {
+            decoder = newRegionDecoder(resolver, uri);
+            int width = decoder.getWidth();
+            int height = decoder.getHeight();
+            buffer = MappedPixelBuffer.create(file, width, height);
+            if (metrics != null) {
+                metrics.setSource(width, height, 1);
+                metrics.setOutput(width, height);
+                metrics.end();
+                metrics.begin(CropMetrics.Stage.EXIF_READ);
+            }
+            buffer.setDegreesRotated(readExifDegrees(resolver, uri));
+            if (metrics != null) {
+                metrics.end();
+                metrics.begin(CropMetrics.Stage.REGION_DECODE);
+            }
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+
+            int stripHeight = getStripHeight(width);
+            int[] pixels = new int[width * Math.min(stripHeight, height)];
+            if (metrics != null) {
+                metrics.addAllocatedBytes(pixels.length * 4L);
+            }
+            Rect region = new Rect();
+            for (int top = 0; top < height; top += stripHeight) {
+                region.set(0, top, width, Math.min(height, top + stripHeight));
+                Bitmap strip = decoder.decodeRegion(region, options);
+                if (strip == null) {
+                    throw new IOException("Failed to decode region " + region + " of " + uri);
+                }
+                if (metrics != null) {
+                    metrics.addAllocatedBytes(strip.getByteCount());
+                }
+                strip.getPixels(pixels, 0, width, 0, 0, width, region.height());
+                strip.recycle();
+                buffer.writePixels(pixels, 0, width, 0, top, width, region.height());
+            }
+            if (metrics != null) {
+                metrics.dispatch();
+            }
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            if (buffer != null) {
+                buffer.close();
+            }
+            if (metrics != null) {
+                metrics.abort();
+            }
+            throw e;
+        } finally {
+            if (decoder != null) {
+                decoder.recycle();
+            }
+        }
+    }
+
+    /**
+     * Crop all the given outputs out of the image at the given uri and save them.<br>
+     * The union of the output regions is decoded once, strip by strip, at the largest sample size
+     * that still gives every output its requested resolution, into a temporary {@link
+     * MappedPixelBuffer} so the decoded union is never on the heap. The outputs are then cropped
+     * from the mapped pixels and written in parallel.
+     *
+     * @return the format every output was saved with, see {@link #writeBitmapToUri}
+     */
+    static Bitmap.CompressFormat[] cropRegions(final Context context, Uri uri,
+            final List<CropOutput> outputs) throws IOException {
+        if (outputs.isEmpty()) {
+            return new Bitmap.CompressFormat[0];
+        }
+
+        File file = File.createTempFile("crop_regions", ".pixels", context.getCacheDir());
+        try {
+            final int[] bounds;
+            final int sampleSize;
+            MappedPixelBuffer decoded;
+            BitmapRegionDecoder decoder = newRegionDecoder(context.getContentResolver(), uri);
+            try {
+                int width = decoder.getWidth();
+                int height = decoder.getHeight();
+                int[][] regions = new int[outputs.size()][];
+                int sample = Integer.MAX_VALUE;
+                for (int i = 0; i < regions.length; i++) {
+                    CropOutput output = outputs.get(i);
+                    Rect rect = output.sourceRect;
+                    if (rect.left < 0 || rect.top < 0 || rect.right > width
+                            || rect.bottom > height || rect.isEmpty()) {
+                        throw new IllegalArgumentException(
+                                "Crop region " + rect + " is outside of the image " + width + "x"
+                                        + height);
+                    }
+                    regions[i] = new int[]{rect.left, rect.top, rect.right, rect.bottom};
+                    sample = Math.min(sample, getRegionSampleSize(rect.width(), rect.height(),
+                            output.outputRequestWidth, output.outputRequestHeight));
+                }
+                sampleSize = sample;
+                bounds = getDecodeBounds(regions, sampleSize);
+                decoded = decodeRegion(decoder, bounds, sampleSize, file);
+            } finally {
+                decoder.recycle();
+            }
+
+            final CropPixelTransform.Source source = newSource(decoded);
+            final Bitmap.CompressFormat[] formats = new Bitmap.CompressFormat[outputs.size()];
+            final AtomicReference<IOException> error = new AtomicReference<>();
+            try {
+                ParallelStrips.run(outputs.size(), 1, new ParallelStrips.StripTask() {
+                    @Override
+                    public void run(int startRow, int endRow) {
+                        for (int i = startRow; i < endRow && error.get() == null; i++) {
+                            CropOutput output = outputs.get(i);
+                            Rect rect = output.sourceRect;
+                            float[] points = getSampledPoints(
+                                    new int[]{rect.left, rect.top, rect.right, rect.bottom},
+                                    bounds, sampleSize);
+                            boolean oval = output.cropShape == CropImage.CropShape.OVAL;
+                            Bitmap bitmap = cropPixels(source, points, output.outputRequestWidth,
+                                    output.outputRequestHeight, oval, null, null);
+                            try {
+                                formats[i] = writeBitmapToUri(context, bitmap, output.outputUri,
+                                        output.outputCompressFormat,
+                                        output.outputCompressQuality, oval, null);
+                            } catch (IOException e) {
+                                error.compareAndSet(null, e);
+                            } finally {
+                                bitmap.recycle();
+                            }
+                        }
+                    }
+                });
+            } finally {
+                decoded.close();
+            }
+            if (error.get() != null) {
+                throw error.get();
+            }
+            return formats;
+        } finally {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+    }
+
+    /**
+     * Get the largest power of 2 sample size that still decodes a region of the given size in at
+     * least the requested width/height.
+     */
+    static int getRegionSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int sampleSize = 1;
+        if (reqWidth > 0 || reqHeight > 0) {
+            float scale = getResizeScale(width, height, reqWidth, reqHeight);
+            while (sampleSize * 2 * scale <= 1) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Get the bounds to decode for all the given regions: their union, with the left/top aligned to
+     * the sample grid so every region maps to whole decoded pixels.
+     *
+     * @param regions the regions as {left, top, right, bottom}
+     * @return the bounds as {left, top, right, bottom}
+     */
+    static int[] getDecodeBounds(int[][] regions, int sampleSize) {
+        int[] bounds = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Integer.MIN_VALUE};
+        for (int[] region : regions) {
+            bounds[0] = Math.min(bounds[0], region[0]);
+            bounds[1] = Math.min(bounds[1], region[1]);
+            bounds[2] = Math.max(bounds[2], region[2]);
+            bounds[3] = Math.max(bounds[3], region[3]);
+        }
+        bounds[0] -= bounds[0] % sampleSize;
+        bounds[1] -= bounds[1] % sampleSize;
+        return bounds;
+    }
+
+    /**
+     * Get the 4 crop points of the given region in the pixels of the given bounds decoded at the
+     * given sample size.
+     *
+     * @param region the region as {left, top, right, bottom}
+     * @param bounds the decoded bounds, see {@link #getDecodeBounds(int[][], int)}
+     */
+    static float[] getSampledPoints(int[] region, int[] bounds, int sampleSize) {
+        float left = (float) (region[0] - bounds[0]) / sampleSize;
+        float top = (float) (region[1] - bounds[1]) / sampleSize;
+        float right = (float) (region[2] - bounds[0]) / sampleSize;
+        float bottom = (float) (region[3] - bounds[1]) / sampleSize;
+        return new float[]{left, top, right, top, right, bottom, left, bottom};
+    }
+
+    /**
+     * Decode the given bounds strip by strip into a new pixel buffer backed by the given file, so
+     * the decoded bitmap of only one strip is on the heap at a time.
+     *
+     * @return the pixels of the bounds, down-sampled by the given sample size (rounded up)
+     */
+    private static MappedPixelBuffer decodeRegion(BitmapRegionDecoder decoder, int[] bounds,
+            int sampleSize, File file) throws IOException {
+        int width = (bounds[2] - bounds[0] + sampleSize - 1) / sampleSize;
+        int height = (bounds[3] - bounds[1] + sampleSize - 1) / sampleSize;
+        MappedPixelBuffer buffer = MappedPixelBuffer.create(file, width, height);
+        try {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inSampleSize = sampleSize;
+
+            int stripRows = getStripHeight(width);
+            int[] pixels = new int[width * Math.min(stripRows, height)];
+            Rect strip = new Rect();
+            for (int row = 0; row < height; row += stripRows) {
+                int top = bounds[1] + row * sampleSize;
+                strip.set(bounds[0], top, bounds[2],
+                        Math.min(bounds[3], top + stripRows * sampleSize));
+                Bitmap bitmap = decoder.decodeRegion(strip, options);
+                if (bitmap == null) {
+                    throw new IOException("Failed to decode region " + strip);
+                }
+                int stripWidth = Math.min(width, bitmap.getWidth());
+                int stripHeight = Math.min(Math.min(stripRows, height - row), bitmap.getHeight());
+                bitmap.getPixels(pixels, 0, width, 0, 0, stripWidth, stripHeight);
+                bitmap.recycle();
+                buffer.writePixels(pixels, 0, width, 0, row, stripWidth, stripHeight);
+            }
+            return buffer;
+        } catch (IOException | RuntimeException e) {
+            buffer.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Get the sample size to read a preview of the given buffer that fits into {@link
+     * #MAX_PREVIEW_SIZE}.
+     */
+    static int calculatePreviewSampleSize(MappedPixelBuffer buffer) {
+        return calculatePreviewSampleSize(buffer.getWidth(), buffer.getHeight());
+    }
+
+    /**
+     * Get the sample size to read a preview of a source of the given size that fits into {@link
+     * #MAX_PREVIEW_SIZE}.
+     */
+    static int calculatePreviewSampleSize(int width, int height) {
+        int sampleSize = 1;
+        while (getPreviewSize(width, sampleSize) > MAX_PREVIEW_SIZE
+                || getPreviewSize(height, sampleSize) > MAX_PREVIEW_SIZE) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Get the preview width/height of the given source width/height at the given sample size,
+     * rounded to the nearest pixel so the preview scaled back by the sample size (see {@code
+     * CropImageView#mLoadedSampleSize}) is off the source by at most half a sample.<br>
+     * The last sampled pixel, {@code (previewSize - 1) * sampleSize}, is always inside the
+     * source.
+     */
+    static int getPreviewSize(int size, int sampleSize) {
+        return Math.max(1, (size + sampleSize / 2) / sampleSize);
+    }
+
+    /**
+     * Create a down-sampled preview bitmap from the pixels stored in the given buffer.
+     */
+    static Bitmap createPreviewBitmap(MappedPixelBuffer buffer, int sampleSize) {
+        int width = getPreviewSize(buffer.getWidth(), sampleSize);
+        int height = getPreviewSize(buffer.getHeight(), sampleSize);
+        Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+
+        int stripHeight = getStripHeight(width);
+        int[] pixels = new int[width * Math.min(stripHeight, height)];
+        for (int top = 0; top < height; top += stripHeight) {
+            int rows = Math.min(stripHeight, height - top);
+            buffer.readSampledPixels(pixels, 0, width, 0, top * sampleSize, width, rows,
+                    sampleSize);
+            bitmap.setPixels(pixels, 0, width, 0, top, width, rows);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Get the pixels of the given bitmap down-sampled to fit into the given max width/height
+     * keeping the aspect ratio, e.g. for {@link SaliencyCrop} and {@link QuadDetector}. Only the
+     * returned array is kept, the down-sampled bitmap is recycled.
+     *
+     * @param size the array to write the width and height of the returned pixels to
+     * @return the ARGB pixels, row-major without padding
+     */
+    static int[] getDownsampledPixels(Bitmap bitmap, int maxSize, int[] size) {
+        float scale = Math.min(1f, (float) maxSize / Math.max(bitmap.getWidth(),
+                bitmap.getHeight()));
+        int width = Math.max(1, Math.round(bitmap.getWidth() * scale));
+        int height = Math.max(1, Math.round(bitmap.getHeight() * scale));
+        Bitmap small = Bitmap.createScaledBitmap(bitmap, width, height, true);
+        int[] pixels = new int[width * height];
+        small.getPixels(pixels, 0, width, 0, 0, width, height);
+        if (small != bitmap) {
+            small.recycle();
+        }
+        size[0] = width;
+        size[1] = height;
+        return pixels;
+    }
+
+    /**
+     * Crop the given 4 points out of the given bitmap in a single pass, see {@link
+     * CropPixelTransform}.<br>
+     * The points order (top-left, top-right, bottom-right, bottom-left of the crop window as shown)
+     * carries the rotation and flip of the image, the result is resized to fit into the requested
+     * width/height keeping the aspect ratio.
+     *
+     * @param points      the 4 points (x0,y0,x1,y1,x2,y2,x3,y3) of the crop window in the bitmap
+     * @param reqWidth    the width to resize the result to, 0 for unconstrained
+     * @param reqHeight   the height to resize the result to, 0 for unconstrained
+     * @param oval        if to mask the result by the inscribed oval, transparent outside of it
+     * @param colorMatrix the color adjustments to apply to the result, null for none
+     * @param metrics     the metrics to record the stages into, null to not measure
+     * @return the cropped bitmap, null if the points are outside the bitmap
+     */
+    static Bitmap cropBitmap(Bitmap bitmap, float[] points, int reqWidth, int reqHeight,
+            boolean oval, float[] colorMatrix, CropMetrics metrics) {
+        Rect rect = getSourceRect(points, bitmap.getWidth(), bitmap.getHeight());
+        if (rect == null) {
+            return null;
+        }
+        if (metrics != null) {
+            metrics.begin(CropMetrics.Stage.REGION_READ);
+        }
+        int[] region = new int[rect.width() * rect.height()];
+        bitmap.getPixels(region, 0, rect.width(), rect.left, rect.top, rect.width(),
+                rect.height());
+        if (metrics != null) {
+            metrics.addAllocatedBytes(region.length * 4L);
+            metrics.end();
+        }
+        return cropPixels(region, rect, points, reqWidth, reqHeight, oval, colorMatrix,
+                metrics);
+    }
+
+    /**
+     * Crop the given 4 points out of the given pixel buffer in a single pass, sampling the buffer
+     * in place so only the result bitmap is allocated.
+     *
+     * @see #cropBitmap(Bitmap, float[], int, int, boolean, float[], CropMetrics)
+     */
+    static Bitmap cropBitmap(MappedPixelBuffer buffer, float[] points, int reqWidth,
+            int reqHeight, boolean oval, float[] colorMatrix, CropMetrics metrics) {
+        if (getSourceRect(points, buffer.getWidth(), buffer.getHeight()) == null) {
+            return null;
+        }
+        return cropPixels(newSource(buffer), points, reqWidth, reqHeight, oval, colorMatrix,
+                metrics);
+    }
+
+    /**
+     * Crop the given sets of 4 points out of the given bitmap, reading the pixels of overlapping
+     * crops only once, see {@link #getSharedSourceRect(Rect[])}.
+     *
+     * @return the cropped bitmaps in the order of the points, null for points outside the bitmap
+     * @see #cropBitmap(Bitmap, float[], int, int, boolean, float[], CropMetrics)
+     */
+    static Bitmap[] cropBitmaps(Bitmap bitmap, float[][] points, int reqWidth, int reqHeight,
+            boolean oval, float[] colorMatrix) {
+        Rect[] rects = new Rect[points.length];
+        for (int i = 0; i < points.length; i++) {
+            rects[i] = getSourceRect(points[i], bitmap.getWidth(), bitmap.getHeight());
+        }
+        Rect shared = getSharedSourceRect(rects);
+        int[] sharedRegion = null;
+        if (shared != null) {
+            sharedRegion = new int[shared.width() * shared.height()];
+            bitmap.getPixels(sharedRegion, 0, shared.width(), shared.left, shared.top,
+                    shared.width(), shared.height());
+        }
+
+        Bitmap[] bitmaps = new Bitmap[points.length];
+        for (int i = 0; i < points.length; i++) {
+            Rect rect = rects[i];
+            if (rect == null) {
+                continue;
+            }
+            if (shared != null) {
+                bitmaps[i] = cropPixels(sharedRegion, shared, points[i], reqWidth, reqHeight,
+                        oval, colorMatrix);
+            } else {
+                int[] region = new int[rect.width() * rect.height()];
+                bitmap.getPixels(region, 0, rect.width(), rect.left, rect.top, rect.width(),
+                        rect.height());
+                bitmaps[i] = cropPixels(region, rect, points[i], reqWidth, reqHeight, oval,
+                        colorMatrix);
+            }
+        }
+        return bitmaps;
+    }
+
+    /**
+     * Crop the given sets of 4 points out of the given pixel buffer, every crop samples the buffer
+     * in place so overlapping crops share the mapped pages instead of a copied region.
+     *
+     * @see #cropBitmaps(Bitmap, float[][], int, int, boolean, float[])
+     */
+    static Bitmap[] cropBitmaps(MappedPixelBuffer buffer, float[][] points, int reqWidth,
+            int reqHeight, boolean oval, float[] colorMatrix) {
+        Bitmap[] bitmaps = new Bitmap[points.length];
+        for (int i = 0; i < points.length; i++) {
+            bitmaps[i] = cropBitmap(buffer, points[i], reqWidth, reqHeight, oval, colorMatrix,
+                    null);
+        }
+        return bitmaps;
+    }
+
+    /**
+     * Get the union of the given source rectangles if reading it once is no larger than reading
+     * every rectangle separately, i.e. the crops overlap or nearly cover their union.
+     *
+     * @param rects the source rectangles, null entries are ignored
+     * @return the union to read once, null to read every rectangle separately
+     */
+    private static Rect getSharedSourceRect(Rect[] rects) {
+        Rect union = null;
+        long area = 0;
+        int count = 0;
+        for (Rect rect : rects) {
+            if (rect != null) {
+                if (union == null) {
+                    union = new Rect(rect);
+                } else {
+                    union.union(rect);
+                }
+                area += (long) rect.width() * rect.height();
+                count++;
+            }
+        }
+        return count > 1 && (long) union.width() * union.height() <= area ? union : null;
+    }
+
+    /**
+     * Get the number of rows of the given width that fit into a single strip.
+     */
+    private static int getStripHeight(int width) {
+        return Math.max(1, MAX_STRIP_SIZE / (width * MappedPixelBuffer.BYTES_PER_PIXEL));
+    }
+
+    /**
+     * Compress the given bitmap into the given uri.<br>
+     * JPEG has no alpha channel so it is replaced by PNG for transparent (e.g. oval) crops,
+     * other formats are kept.
+     *
+     * @param transparent if the bitmap has transparent pixels that must be kept
+     * @param metrics     the metrics to record the encode and write into, null to not measure
+     * @return the format the bitmap was compressed with
+     */
+    static Bitmap.CompressFormat writeBitmapToUri(Context context, Bitmap bitmap, Uri uri,
+            Bitmap.CompressFormat compressFormat, int compressQuality, boolean transparent,
+            CropMetrics metrics) throws IOException {
+        if (transparent && compressFormat == Bitmap.CompressFormat.JPEG) {
+            compressFormat = Bitmap.CompressFormat.PNG;
+        }
+        OutputStream stream = context.getContentResolver().openOutputStream(uri);
+        if (stream == null) {
+            throw new IOException("Failed to open output stream for " + uri);
+        }
+        try {
+            if (metrics != null) {
+                metrics.begin(CropMetrics.Stage.ENCODE);
+                stream = metrics.wrapOutput(stream);
+            }
+            if (!bitmap.compress(compressFormat, compressQuality, stream)) {
+                throw new IOException("Failed to compress bitmap to " + uri);
+            }
+        } finally {
+            stream.close();
+            if (metrics != null) {
+                metrics.end();
+            }
+        }
+        return compressFormat;
+    }
+
+    /**
+     * Crop the points out of the given source region pixels into a new bitmap.
+     */
+    private static Bitmap cropPixels(final int[] region, final Rect rect, float[] points,
+            int reqWidth, int reqHeight, boolean oval, float[] colorMatrix) {
+        return cropPixels(region, rect, points, reqWidth, reqHeight, oval, colorMatrix, null);
+    }
+
+    /**
+     * Crop the points out of the given source region pixels into a new bitmap, recording the
+     * transform into the given metrics.
+     */
+    private static Bitmap cropPixels(final int[] region, final Rect rect, float[] points,
+            int reqWidth, int reqHeight, boolean oval, float[] colorMatrix, CropMetrics metrics) {
+        // make the points relative to the region
+        float[] regionPoints = new float[8];
+        for (int i = 0; i < 8; i += 2) {
+            regionPoints[i] = points[i] - rect.left;
+            regionPoints[i + 1] = points[i + 1] - rect.top;
+        }
+        CropPixelTransform.Source source = new CropPixelTransform.Source() {
+            @Override
+            public int getWidth() {
+                return rect.width();
+            }
+
+            @Override
+            public int getHeight() {
+                return rect.height();
+            }
+
+            @Override
+            public int getPixel(int x, int y) {
+                return region[y * rect.width() + x];
+            }
+        };
+        return cropPixels(source, regionPoints, reqWidth, reqHeight, oval, colorMatrix, metrics);
+    }
+
+    /**
+     * Crop the points out of the given source into a new bitmap, the result rows are written to
+     * the bitmap strip by strip so, unless {@link CropPixelTransform} has to resize the result,
+     * the bitmap is the only result sized allocation.
+     */
+    private static Bitmap cropPixels(CropPixelTransform.Source source, float[] points,
+            int reqWidth, int reqHeight, boolean oval, float[] colorMatrix, CropMetrics metrics) {
+        if (metrics != null) {
+            metrics.begin(CropMetrics.Stage.TRANSFORM);
+        }
+
+        int[] size = getCropSize(points, reqWidth, reqHeight);
+        final int width = size[0];
+        int height = size[1];
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        CropPixelTransform.transform(source, points, width, height, oval, colorMatrix,
+                new CropPixelTransform.Output() {
+                    @Override
+                    public void setRows(int[] pixels, int y, int rows) {
+                        synchronized (bitmap) {
+                            bitmap.setPixels(pixels, 0, width, 0, y, width, rows);
+                        }
+                    }
+                });
+        if (metrics != null) {
+            metrics.addAllocatedBytes(bitmap.getByteCount());
+            metrics.setOutput(width, height);
+            metrics.end();
+        }
+        return bitmap;
+    }
+
+    /**
+     * Get the size of the result of cropping the given points, resized to fit into the requested
+     * width/height keeping the aspect ratio.
+     *
+     * @param reqWidth  the width to fit into, 0 for unconstrained
+     * @param reqHeight the height to fit into, 0 for unconstrained
+     * @return the size as {width, height}
+     */
+    static int[] getCropSize(float[] points, int reqWidth, int reqHeight) {
+        // a quad is warped upright to its longer opposite edges, a parallelogram has equal ones
+        float cropWidth = Math.max(CropPixelTransform.getDistance(points, 0, 1),
+                CropPixelTransform.getDistance(points, 3, 2));
+        float cropHeight = Math.max(CropPixelTransform.getDistance(points, 0, 3),
+                CropPixelTransform.getDistance(points, 1, 2));
+        float scale = reqWidth > 0 || reqHeight > 0
+                ? getResizeScale(cropWidth, cropHeight, reqWidth, reqHeight) : 1;
+        return new int[]{Math.max(1, Math.round(cropWidth * scale)),
+                Math.max(1, Math.round(cropHeight * scale))};
+    }
+
+    /**
+     * Get a source sampling the given pixel buffer in place.
+     */
+    private static CropPixelTransform.Source newSource(final MappedPixelBuffer buffer) {
+        return new CropPixelTransform.Source() {
+            @Override
+            public int getWidth() {
+                return buffer.getWidth();
+            }
+
+            @Override
+            public int getHeight() {
+                return buffer.getHeight();
+            }
+
+            @Override
+            public int getPixel(int x, int y) {
+                return buffer.getPixel(x, y);
+            }
+        };
+    }
+
+    /**
+     * Get the source rectangle needed to sample the given points, including the neighbour pixels
+     * used by bilinear sampling.
+     *
+     * @return the rectangle clipped to the source, null if empty
+     */
+    private static Rect getSourceRect(float[] points, int width, int height) {
+        Rect rect = new Rect((int) Math.floor(RectUtils.getRectLeft(points)) - 1,
+                (int) Math.floor(RectUtils.getRectTop(points)) - 1,
+                (int) Math.ceil(RectUtils.getRectRight(points)) + 1,
+                (int) Math.ceil(RectUtils.getRectBottom(points)) + 1);
+        return rect.intersect(0, 0, width, height) ? rect : null;
+    }
+
+    /**
+     * Get the scale to fit the given size into the requested width/height keeping the aspect
+     * ratio, a request of 0 leaves that dimension unconstrained.
+     */
+    private static float getResizeScale(float width, float height, int reqWidth, int reqHeight) {
+        return Math.min(reqWidth > 0 ? reqWidth / width : Float.MAX_VALUE,
+                reqHeight > 0 ? reqHeight / height : Float.MAX_VALUE);
+    }
+
+    /**
+     * Read the degrees the image at the given uri should be rotated by its EXIF orientation.
+     */
+    private static int readExifDegrees(ContentResolver resolver, Uri uri) {
+        try {
+            InputStream stream = openStream(resolver, uri);
+            try {
+                return new ExifInterface(stream).getRotationDegrees();
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static BitmapRegionDecoder newRegionDecoder(ContentResolver resolver, Uri uri)
+            throws IOException {
+        InputStream stream = openStream(resolver, uri);
+        try {
+            return BitmapRegionDecoder.newInstance(stream, false);
+        } finally {
+            stream.close();
+        }
+    }
+
+    private static InputStream openStream(ContentResolver resolver, Uri uri) throws IOException {
+        InputStream stream = resolver.openInputStream(uri);
+        if (stream == null) {
+            throw new IOException("Failed to open input stream for " + uri);
+        }
+        return stream;
+    }
+}
@@ -0,0 +1,71 @@
+package com.thecarousell.cropimageview;
+
+/**
+ * Brightness, contrast and saturation adjustments as a single 4x5 color matrix, in the layout of
+ * {@link android.graphics.ColorMatrix} so the same array drives the preview color filter and the
+ * crop output pixels.
+ */
+final class ColorAdjustments {
+
+    /**
+     * The luminance weights of the red, green and blue channels used for saturation (the same as
+     * {@link android.graphics.ColorMatrix#setSaturation(float)}).
+     */
+    private static final float LUMA_R = 0.213f;
+
+    private static final float LUMA_G = 0.715f;
+
+    private static final float LUMA_B = 0.072f;
+
+    private ColorAdjustments() {
+    }
+
+    /**
+     * Get the color matrix of the given adjustments, applied in the order saturation, contrast,
+     * brightness.
+     *
+     * @param brightness the value added to every channel relative to the full range, 0 for none
+     * @param contrast   the scale of the channels around the middle gray, 1 for none
+     * @param saturation the scale of the color from its gray, 0 for grayscale, 1 for none
+     * @return the 4x5 row-major matrix, null if the adjustments don't change the colors
+     */
+    static float[] getMatrix(float brightness, float contrast, float saturation) {
+        if (brightness == 0 && contrast == 1 && saturation == 1) {
+            return null;
+        }
+        float inverse = 1 - saturation;
+        float r = LUMA_R * inverse;
+        float g = LUMA_G * inverse;
+        float b = LUMA_B * inverse;
+        float offset = 128 * (1 - contrast) + brightness * 255;
+        return new float[]{
+                (r + saturation) * contrast, g * contrast, b * contrast, 0, offset,
+                r * contrast, (g + saturation) * contrast, b * contrast, 0, offset,
+                r * contrast, g * contrast, (b + saturation) * contrast, 0, offset,
+                0, 0, 0, 1, 0
+        };
+    }
+
+    /**
+     * Apply the given color matrix to the given non-premultiplied ARGB color, channels are clamped
+     * to 0-255.
+     */
+    static int apply(float[] matrix, int color) {
+        float a = color >>> 24;
+        float r = (color >> 16) & 0xFF;
+        float g = (color >> 8) & 0xFF;
+        float b = color & 0xFF;
+        return (clamp(matrix[15] * r + matrix[16] * g + matrix[17] * b + matrix[18] * a
+                + matrix[19]) << 24)
+                | (clamp(matrix[0] * r + matrix[1] * g + matrix[2] * b + matrix[3] * a
+                + matrix[4]) << 16)
+                | (clamp(matrix[5] * r + matrix[6] * g + matrix[7] * b + matrix[8] * a
+                + matrix[9]) << 8)
+                | clamp(matrix[10] * r + matrix[11] * g + matrix[12] * b + matrix[13] * a
+                + matrix[14]);
+    }
+
+    private static int clamp(float value) {
+        return value <= 0 ? 0 : value >= 255 ? 255 : (int) (value + 0.5f);
+    }
+}
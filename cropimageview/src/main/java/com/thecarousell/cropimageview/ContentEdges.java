@@ -0,0 +1,131 @@
+package com.thecarousell.cropimageview;
+
+import java.util.Arrays;
+
+/**
+ * The strong horizontal and vertical edges in the content of an image (e.g. the outline of a
+ * product on a plain background) for the crop window to snap to.<br>
+ * Found once per image from the edge profiles: the luma differences between neighbour columns
+ * (rows) summed over the whole column (row). Columns/rows whose sum is a local max well above the
+ * average are edges. The positions are kept in sorted primitive arrays so the nearest edge to a
+ * dragged crop window edge is a binary search.
+ */
+final class ContentEdges {
+
+    /**
+     * The max width/height of the image to find the edges on.
+     */
+    static final int MAX_SIZE = 256;
+
+    /**
+     * How many standard deviations above the average a profile sum must be to be an edge.
+     */
+    private static final float EDGE_DEVIATIONS = 2;
+
+    /**
+     * The x-coordinates of the vertical edges as fractions of the image width, ascending.
+     */
+    private final float[] mVertical;
+
+    /**
+     * The y-coordinates of the horizontal edges as fractions of the image height, ascending.
+     */
+    private final float[] mHorizontal;
+
+    private ContentEdges(float[] vertical, float[] horizontal) {
+        mVertical = vertical;
+        mHorizontal = horizontal;
+    }
+
+    float[] getVertical() {
+        return mVertical;
+    }
+
+    float[] getHorizontal() {
+        return mHorizontal;
+    }
+
+    /**
+     * Find the edges in the given pixels.
+     *
+     * @param pixels the ARGB pixels of the image, row-major without padding
+     */
+    static ContentEdges find(int[] pixels, int width, int height) {
+        PixelUtils.checkPixels(pixels, width, height);
+        int[] luma = PixelUtils.getLuma(pixels, width * height);
+
+        // profile entry i is the difference between column (row) i and i + 1
+        float[] columns = new float[Math.max(0, width - 1)];
+        float[] rows = new float[Math.max(0, height - 1)];
+        for (int y = 0; y < height; y++) {
+            int row = y * width;
+            for (int x = 0; x < width; x++) {
+                int value = luma[row + x];
+                if (x + 1 < width) {
+                    columns[x] += Math.abs(luma[row + x + 1] - value);
+                }
+                if (y + 1 < height) {
+                    rows[y] += Math.abs(luma[row + width + x] - value);
+                }
+            }
+        }
+        return new ContentEdges(getEdges(columns, width), getEdges(rows, height));
+    }
+
+    /**
+     * Get the nearest edge to the given position within the given radius.
+     *
+     * @param edges the edge positions, ascending, null for none
+     * @return the nearest edge, the given position if none is within the radius
+     */
+    static float snap(float[] edges, float position, float radius) {
+        if (edges == null || edges.length == 0 || radius <= 0) {
+            return position;
+        }
+        int index = Arrays.binarySearch(edges, position);
+        if (index >= 0) {
+            return position;
+        }
+        index = -index - 1;
+        float snapped = position;
+        float distance = radius;
+        if (index < edges.length && edges[index] - position <= distance) {
+            snapped = edges[index];
+            distance = edges[index] - position;
+        }
+        if (index > 0 && position - edges[index - 1] < distance) {
+            snapped = edges[index - 1];
+        }
+        return snapped;
+    }
+
+    /**
+     * Get the positions of the local max sums in the given profile that are {@link
+     * #EDGE_DEVIATIONS} above the average, as fractions of the given size.
+     */
+    private static float[] getEdges(float[] profile, int size) {
+        int length = profile.length;
+        if (length < 3) {
+            return new float[0];
+        }
+        double sum = 0;
+        double squares = 0;
+        for (float value : profile) {
+            sum += value;
+            squares += value * value;
+        }
+        double mean = sum / length;
+        double threshold = mean
+                + EDGE_DEVIATIONS * Math.sqrt(Math.max(0, squares / length - mean * mean));
+
+        float[] edges = new float[length];
+        int count = 0;
+        for (int i = 1; i < length - 1; i++) {
+            float value = profile[i];
+            if (value > threshold && value >= profile[i - 1] && value > profile[i + 1]) {
+                edges[count++] = (float) (i + 1) / size;
+            }
+        }
+        return Arrays.copyOf(edges, count);
+    }
+}
@@ -0,0 +1,129 @@
+package com.thecarousell.cropimageview;
+
+/**
+ * Undo/redo history of fixed size float records in a single ring buffer, no allocations after
+ * creation.<br>
+ * The record at the cursor is the current state, undo/redo move the cursor over the older/newer
+ * records. Pushing a new state drops the states that could be redone, and the oldest state when
+ * the buffer is full.
+ */
+final class CropHistory {
+
+    /**
+     * The number of floats in every record.
+     */
+    private final int mRecordSize;
+
+    /**
+     * The max number of records kept.
+     */
+    private final int mCapacity;
+
+    private final float[] mRecords;
+
+    /**
+     * The ring index of the oldest record.
+     */
+    private int mStart;
+
+    /**
+     * The number of records kept.
+     */
+    private int mCount;
+
+    /**
+     * The position (from the oldest record) of the current state, -1 if empty.
+     */
+    private int mCursor = -1;
+
+    CropHistory(int capacity, int recordSize) {
+        if (capacity < 2 || recordSize <= 0) {
+            throw new IllegalArgumentException("Cannot create a history of less than 2 records");
+        }
+        mCapacity = capacity;
+        mRecordSize = recordSize;
+        mRecords = new float[capacity * recordSize];
+    }
+
+    boolean isEmpty() {
+        return mCount == 0;
+    }
+
+    boolean canUndo() {
+        return mCursor > 0;
+    }
+
+    boolean canRedo() {
+        return mCursor < mCount - 1;
+    }
+
+    /**
+     * Remove all the records.
+     */
+    void clear() {
+        mStart = 0;
+        mCount = 0;
+        mCursor = -1;
+    }
+
+    /**
+     * Make the given record the current state, unless it equals the current state.
+     */
+    void push(float[] record) {
+        if (mCursor >= 0 && equalsRecord(mCursor, record)) {
+            return;
+        }
+        mCount = mCursor + 1;
+        if (mCount == mCapacity) {
+            mStart = (mStart + 1) % mCapacity;
+            mCount--;
+        }
+        System.arraycopy(record, 0, mRecords, getOffset(mCount), mRecordSize);
+        mCursor = mCount;
+        mCount++;
+    }
+
+    /**
+     * Move back to the previous state.
+     *
+     * @param record the array to copy the previous state to
+     * @return false if there is no previous state
+     */
+    boolean undo(float[] record) {
+        if (!canUndo()) {
+            return false;
+        }
+        mCursor--;
+        System.arraycopy(mRecords, getOffset(mCursor), record, 0, mRecordSize);
+        return true;
+    }
+
+    /**
+     * Move forward to the state that was undone.
+     *
+     * @param record the array to copy the next state to
+     * @return false if there is no undone state
+     */
+    boolean redo(float[] record) {
+        if (!canRedo()) {
+            return false;
+        }
+        mCursor++;
+        System.arraycopy(mRecords, getOffset(mCursor), record, 0, mRecordSize);
+        return true;
+    }
+
+    private int getOffset(int position) {
+        return (mStart + position) % mCapacity * mRecordSize;
+    }
+
+    private boolean equalsRecord(int position, float[] record) {
+        int offset = getOffset(position);
+        for (int i = 0; i < mRecordSize; i++) {
+            if (mRecords[offset + i] != record[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,13 +1,71 @@
 package com.thecarousell.cropimageview;
 
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
 public class CropImage {
+
+    /**
+     * Decode the image at the given uri once into a memory-mapped pixel buffer backed by the given
+     * file, for sources that are too large to be decoded on the heap.<br>
+     * The result can be set for cropping using {@link CropImageView#setImageBuffer(
+     * MappedPixelBuffer)}. Must not be called on the main thread.
+     *
+     * @param context used to open the uri
+     * @param uri     the uri of the image to decode
+     * @param file    the file to store the decoded pixels in (e.g. in the cache dir)
+     */
+    public static MappedPixelBuffer decodeToMappedBuffer(Context context, Uri uri, File file)
+            throws IOException {
+        return BitmapUtils.decodeToMappedBuffer(context, uri, file, null);
+    }
+
+    /**
+     * Decode the image at the given uri into a memory-mapped pixel buffer, reporting the time
+     * spent reading the bounds, EXIF and decoding to the given listener.
+     *
+     * @see #decodeToMappedBuffer(Context, Uri, File)
+     */
+    public static MappedPixelBuffer decodeToMappedBuffer(Context context, Uri uri, File file,
+            CropImageView.OnCropMetricsListener listener) throws IOException {
+        return BitmapUtils.decodeToMappedBuffer(context, uri, file, CropMetrics.create(listener));
+    }
+
+    /**
+     * Crop multiple regions out of the image at the given uri and save each of them, e.g. grid
+     * tiles or the same item in several aspect ratios.<br>
+     * The source is decoded once for all the outputs: only the union of the regions, at the
+     * lowest resolution that still fits every requested output size, into a temporary pixel
+     * buffer in the cache dir. The outputs are written in parallel. Must not be called on the main
+     * thread.
+     *
+     * @param context used to open the uris
+     * @param uri     the uri of the image to crop
+     * @param outputs the regions to crop and where to save them
+     * @return the format every output was saved with, oval crops are saved as PNG instead of JPEG
+     * @throws IllegalArgumentException if a region is outside of the image
+     */
+    public static Bitmap.CompressFormat[] cropRegions(Context context, Uri uri,
+            List<CropOutput> outputs) throws IOException {
+        return BitmapUtils.cropRegions(context, uri, outputs);
+    }
+
     /**
      * The possible cropping area shape.<br>
-     * To set square/circle crop shape set aspect ratio to 1:1.
+     * To set square/circle crop shape set aspect ratio to 1:1.<br>
+     * A quad has corners that move independently (e.g. around a document photographed at an
+     * angle), it is cropped by a perspective warp to an upright rectangle and doesn't keep the
+     * aspect ratio.
      */
     public enum CropShape {
         RECTANGLE,
-        OVAL
+        OVAL,
+        QUAD
     }
 
     /**
@@ -1,33 +1,58 @@
 package com.thecarousell.cropimageview;
 
+import android.animation.ValueAnimator;
 import android.graphics.Matrix;
 import android.graphics.RectF;
 import android.view.animation.AccelerateDecelerateInterpolator;
-import android.view.animation.Animation;
-import android.view.animation.Transformation;
 import android.widget.ImageView;
 
 /**
  * Animation to handle smooth cropping image matrix transformation change, specifically for
- * zoom-in/out.
+ * zoom-in/out.<br>
+ * Driven by a {@link ValueAnimator} so frames are synced with the display. Scale, rotation and
+ * translation of the image matrix are interpolated separately, so flipped or rotated images don't
+ * shear mid-animation, and the image bounds are derived from them. No layout or per frame
+ * allocations. Setting a new start state while running continues from the currently shown state,
+ * so consecutive zooms blend instead of jumping back.
  */
-final class CropImageAnimation extends Animation implements Animation.AnimationListener {
+final class CropImageAnimation implements ValueAnimator.AnimatorUpdateListener {
+
+    private static final int SCALE_X = 0;
+
+    private static final int SCALE_Y = 1;
+
+    /**
+     * Clockwise rotation in radians.
+     */
+    private static final int ROTATION = 2;
+
+    private static final int TRANSLATE_X = 3;
+
+    private static final int TRANSLATE_Y = 4;
+
+    private static final int TRANSFORM_SIZE = 5;
 
     private final ImageView mImageView;
 
     private final CropOverlayView mCropOverlayView;
 
-    private final float[] mStartBoundPoints = new float[8];
+    private final ValueAnimator mAnimator;
 
-    private final float[] mEndBoundPoints = new float[8];
+    /**
+     * The decomposed start transformation, see {@link #decompose(Matrix, float[])}.
+     */
+    private final float[] mStartTransform = new float[TRANSFORM_SIZE];
 
-    private final RectF mStartCropWindowRect = new RectF();
+    private final float[] mEndTransform = new float[TRANSFORM_SIZE];
 
-    private final RectF mEndCropWindowRect = new RectF();
+    /**
+     * The decomposed transformation currently shown.
+     */
+    private final float[] mAnimTransform = new float[TRANSFORM_SIZE];
 
-    private final float[] mStartImageMatrix = new float[9];
+    private final RectF mStartCropWindowRect = new RectF();
 
-    private final float[] mEndImageMatrix = new float[9];
+    private final RectF mEndCropWindowRect = new RectF();
 
     private final RectF mAnimRect = new RectF();
 
@@ -35,73 +60,151 @@ final class CropImageAnimation extends Animation implements Animation.AnimationL
 
     private final float[] mAnimMatrix = new float[9];
 
+    private final Matrix mMatrix = new Matrix();
+
+    /**
+     * Reusing values array for matrix decomposition.
+     */
+    private final float[] mValues = new float[9];
+
+    /**
+     * The size of the image in the image view before transformation.
+     */
+    private float mImageWidth;
+
+    private float mImageHeight;
+
     CropImageAnimation(ImageView cropImageView, CropOverlayView cropOverlayView) {
         mImageView = cropImageView;
         mCropOverlayView = cropOverlayView;
 
-        setDuration(300);
-        setFillAfter(true);
-        setInterpolator(new AccelerateDecelerateInterpolator());
-        setAnimationListener(this);
+        mAnimator = ValueAnimator.ofFloat(0, 1);
+        mAnimator.setDuration(300);
+        mAnimator.setInterpolator(new AccelerateDecelerateInterpolator());
+        mAnimator.addUpdateListener(this);
     }
 
-    void setStartState(float[] boundPoints, Matrix imageMatrix) {
-        reset();
-        System.arraycopy(boundPoints, 0, mStartBoundPoints, 0, 8);
-        mStartCropWindowRect.set(mCropOverlayView.getCropWindowRect());
-        imageMatrix.getValues(mStartImageMatrix);
+    /**
+     * Set the state to animate from, the given state is ignored if the animation is running as
+     * it then continues from the state currently shown.<br>
+     * The crop window is restored to the previous end state so the new end state is calculated
+     * from the same image matrix as before.
+     */
+    void setStartState(Matrix imageMatrix) {
+        if (mAnimator.isRunning()) {
+            mAnimator.cancel();
+            System.arraycopy(mAnimTransform, 0, mStartTransform, 0, TRANSFORM_SIZE);
+            mStartCropWindowRect.set(mAnimRect);
+            mCropOverlayView.setCropWindowRect(mEndCropWindowRect);
+        } else {
+            decompose(imageMatrix, mStartTransform);
+            mStartCropWindowRect.set(mCropOverlayView.getCropWindowRect());
+        }
     }
 
-    void setEndState(float[] boundPoints, Matrix imageMatrix) {
-        System.arraycopy(boundPoints, 0, mEndBoundPoints, 0, 8);
+    /**
+     * Set the state to animate to and start the animation.
+     *
+     * @param imageWidth  the width of the image before transformation
+     * @param imageHeight the height of the image before transformation
+     */
+    void start(Matrix imageMatrix, float imageWidth, float imageHeight) {
+        decompose(imageMatrix, mEndTransform);
         mEndCropWindowRect.set(mCropOverlayView.getCropWindowRect());
-        imageMatrix.getValues(mEndImageMatrix);
+        mImageWidth = imageWidth;
+        mImageHeight = imageHeight;
+
+        // rotate the short way around
+        float rotation = mEndTransform[ROTATION] - mStartTransform[ROTATION];
+        if (rotation > Math.PI) {
+            mEndTransform[ROTATION] -= 2 * Math.PI;
+        } else if (rotation < -Math.PI) {
+            mEndTransform[ROTATION] += 2 * Math.PI;
+        }
+
+        // the shown state until the first frame, in case it is retargeted before
+        System.arraycopy(mStartTransform, 0, mAnimTransform, 0, TRANSFORM_SIZE);
+        mAnimRect.set(mStartCropWindowRect);
+        mAnimator.start();
+    }
+
+    /**
+     * Jump to the end state if running, e.g. when the user starts a new touch.
+     */
+    void end() {
+        if (mAnimator.isRunning()) {
+            mAnimator.end();
+        }
+    }
+
+    /**
+     * Stop the animation where it is, the caller is expected to set a new state.
+     */
+    void cancel() {
+        mAnimator.cancel();
+    }
+
+    /**
+     * Decompose the given scale/rotate/translate matrix into {@link #SCALE_X}, {@link #SCALE_Y},
+     * {@link #ROTATION} and {@link #TRANSLATE_X}, {@link #TRANSLATE_Y}.<br>
+     * The matrix is expected as built by the image view: rotation first, then a scale that is
+     * negative on flipped axes.
+     */
+    private void decompose(Matrix matrix, float[] transform) {
+        matrix.getValues(mValues);
+        float scaleX = (float) Math.hypot(mValues[Matrix.MSCALE_X], mValues[Matrix.MSKEW_X]);
+        double rotation = Math.atan2(-mValues[Matrix.MSKEW_X], mValues[Matrix.MSCALE_X]);
+        transform[SCALE_X] = scaleX;
+        transform[SCALE_Y] = (float) (mValues[Matrix.MSKEW_Y] * Math.sin(rotation)
+                + mValues[Matrix.MSCALE_Y] * Math.cos(rotation));
+        transform[ROTATION] = (float) rotation;
+        transform[TRANSLATE_X] = mValues[Matrix.MTRANS_X];
+        transform[TRANSLATE_Y] = mValues[Matrix.MTRANS_Y];
     }
 
     @Override
-    protected void applyTransformation(float interpolatedTime, Transformation t) {
+    public void onAnimationUpdate(ValueAnimator animation) {
+        float fraction = animation.getAnimatedFraction();
 
         mAnimRect.left = mStartCropWindowRect.left
-                + (mEndCropWindowRect.left - mStartCropWindowRect.left) * interpolatedTime;
+                + (mEndCropWindowRect.left - mStartCropWindowRect.left) * fraction;
         mAnimRect.top = mStartCropWindowRect.top
-                + (mEndCropWindowRect.top - mStartCropWindowRect.top) * interpolatedTime;
+                + (mEndCropWindowRect.top - mStartCropWindowRect.top) * fraction;
         mAnimRect.right = mStartCropWindowRect.right
-                + (mEndCropWindowRect.right - mStartCropWindowRect.right) * interpolatedTime;
+                + (mEndCropWindowRect.right - mStartCropWindowRect.right) * fraction;
         mAnimRect.bottom = mStartCropWindowRect.bottom
-                + (mEndCropWindowRect.bottom - mStartCropWindowRect.bottom) * interpolatedTime;
+                + (mEndCropWindowRect.bottom - mStartCropWindowRect.bottom) * fraction;
         mCropOverlayView.setCropWindowRect(mAnimRect);
 
-        for (int i = 0; i < mAnimPoints.length; i++) {
-            mAnimPoints[i] = mStartBoundPoints[i]
-                    + (mEndBoundPoints[i] - mStartBoundPoints[i]) * interpolatedTime;
+        for (int i = 0; i < TRANSFORM_SIZE; i++) {
+            mAnimTransform[i] = mStartTransform[i]
+                    + (mEndTransform[i] - mStartTransform[i]) * fraction;
         }
+        float cos = (float) Math.cos(mAnimTransform[ROTATION]);
+        float sin = (float) Math.sin(mAnimTransform[ROTATION]);
+        float scaleX = mAnimTransform[SCALE_X];
+        float scaleY = mAnimTransform[SCALE_Y];
+        mAnimMatrix[Matrix.MSCALE_X] = scaleX * cos;
+        mAnimMatrix[Matrix.MSKEW_X] = -scaleX * sin;
+        mAnimMatrix[Matrix.MTRANS_X] = mAnimTransform[TRANSLATE_X];
+        mAnimMatrix[Matrix.MSKEW_Y] = scaleY * sin;
+        mAnimMatrix[Matrix.MSCALE_Y] = scaleY * cos;
+        mAnimMatrix[Matrix.MTRANS_Y] = mAnimTransform[TRANSLATE_Y];
+        mAnimMatrix[Matrix.MPERSP_2] = 1;
+        mMatrix.setValues(mAnimMatrix);
+        mImageView.setImageMatrix(mMatrix);
+
+        // the image bounds are the image corners mapped by the same transformation
+        mAnimPoints[0] = mAnimMatrix[Matrix.MTRANS_X];
+        mAnimPoints[1] = mAnimMatrix[Matrix.MTRANS_Y];
+        mAnimPoints[2] = mAnimPoints[0] + mAnimMatrix[Matrix.MSCALE_X] * mImageWidth;
+        mAnimPoints[3] = mAnimPoints[1] + mAnimMatrix[Matrix.MSKEW_Y] * mImageWidth;
+        mAnimPoints[4] = mAnimPoints[2] + mAnimMatrix[Matrix.MSKEW_X] * mImageHeight;
+        mAnimPoints[5] = mAnimPoints[3] + mAnimMatrix[Matrix.MSCALE_Y] * mImageHeight;
+        mAnimPoints[6] = mAnimPoints[0] + mAnimMatrix[Matrix.MSKEW_X] * mImageHeight;
+        mAnimPoints[7] = mAnimPoints[1] + mAnimMatrix[Matrix.MSCALE_Y] * mImageHeight;
         mCropOverlayView.setBounds(mAnimPoints, mImageView.getWidth(), mImageView.getHeight());
 
-        for (int i = 0; i < mAnimMatrix.length; i++) {
-            mAnimMatrix[i] = mStartImageMatrix[i]
-                    + (mEndImageMatrix[i] - mStartImageMatrix[i]) * interpolatedTime;
-        }
-        Matrix m = mImageView.getImageMatrix();
-        m.setValues(mAnimMatrix);
-        mImageView.setImageMatrix(m);
-
-        mImageView.invalidate();
         mCropOverlayView.invalidate();
     }
-
-    @Override
-    public void onAnimationStart(Animation animation) {
-
-    }
-
-    @Override
-    public void onAnimationEnd(Animation animation) {
-        mImageView.clearAnimation();
-    }
-
-    @Override
-    public void onAnimationRepeat(Animation animation) {
-
-    }
 }
-
@@ -3,22 +3,41 @@ package com.thecarousell.cropimageview;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
+import android.graphics.ColorMatrixColorFilter;
 import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
+import android.net.Uri;
 import android.util.AttributeSet;
 import android.util.Pair;
 import android.view.LayoutInflater;
+import android.view.MotionEvent;
 import android.view.View;
-import android.view.ViewGroup;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 
+import java.io.IOException;
+
 /**
  * Custom view that provides cropping capabilities to an image.
  */
 public class CropImageView extends FrameLayout {
 
+    /**
+     * The max number of crop states kept for undo/redo.
+     */
+    private static final int HISTORY_SIZE = 32;
+
+    /**
+     * A history record: the crop window rectangle relative to the bitmap (left, top, right,
+     * bottom), zoom, zoom offset X and Y, degrees rotated and the flip flags.
+     */
+    private static final int HISTORY_RECORD_SIZE = 9;
+
+    private static final int HISTORY_FLIP_HORIZONTALLY = 1;
+
+    private static final int HISTORY_FLIP_VERTICALLY = 2;
+
     /**
      * Image view widget used to show the image for cropping.
      */
@@ -44,6 +63,28 @@ public class CropImageView extends FrameLayout {
      */
     private final float[] mImagePoints = new float[8];
 
+    /**
+     * The image matrix before the last {@link #applyImageMatrix(float, float, boolean, boolean)},
+     * to know if it changed the matrix.
+     */
+    private final Matrix mPreviousImageMatrix = new Matrix();
+
+    /**
+     * Incremented when the bitmap or the image matrix changes, the image bounds and crop window
+     * limits derived from them are recalculated only for a new version.
+     */
+    private int mImageVersion;
+
+    /**
+     * The image version and view size the crop overlay bounds and limits were last set for, a
+     * negative version if not set.
+     */
+    private int mImageBoundsVersion = -1;
+
+    private int mImageBoundsWidth;
+
+    private int mImageBoundsHeight;
+
     /**
      * Animation class to smooth animate zoom-in/out
      */
@@ -51,6 +92,12 @@ public class CropImageView extends FrameLayout {
 
     private Bitmap mBitmap;
 
+    /**
+     * The memory-mapped pixels of the source image if it was set by {@link
+     * #setImageBuffer(MappedPixelBuffer)}, {@link #mBitmap} is then a down-sampled preview of it.
+     */
+    private MappedPixelBuffer mPixelBuffer;
+
     /**
      * How much the image is rotated from original clockwise
      */
@@ -66,10 +113,6 @@ public class CropImageView extends FrameLayout {
      */
     private boolean mFlipVertically;
 
-    private int mLayoutWidth;
-
-    private int mLayoutHeight;
-
     /**
      * The initial scale type of the image in the crop image view
      */
@@ -89,6 +132,65 @@ public class CropImageView extends FrameLayout {
      */
     private boolean mAutoZoomEnabled = true;
 
+    /**
+     * If the initial crop window of a new image is placed on its content.<br>
+     * default: false.
+     */
+    private boolean mAutoCropEnabled;
+
+    /**
+     * If the crop window edges snap to strong edges in the image content.<br>
+     * default: false.
+     */
+    private boolean mSnapToContentEnabled;
+
+    /**
+     * The brightness adjustment of the image, see {@link #setBrightness(float)}.
+     */
+    private float mBrightness;
+
+    /**
+     * The contrast adjustment of the image, see {@link #setContrast(float)}.
+     */
+    private float mContrast = 1;
+
+    /**
+     * The saturation adjustment of the image, see {@link #setSaturation(float)}.
+     */
+    private float mSaturation = 1;
+
+    /**
+     * The color matrix of the adjustments shown in the preview and applied to the cropped image,
+     * null if there are none.
+     */
+    private float[] mColorMatrix;
+
+    /**
+     * The running auto straighten detection, null if none.
+     */
+    private StraightenTask mStraightenTask;
+
+    /**
+     * The undo/redo states of the crop window and image transformation.
+     */
+    private final CropHistory mHistory = new CropHistory(HISTORY_SIZE, HISTORY_RECORD_SIZE);
+
+    /**
+     * The record of the state being saved to or restored from {@link #mHistory}.
+     */
+    private final float[] mHistoryRecord = new float[HISTORY_RECORD_SIZE];
+
+    /**
+     * The crop window rectangle (relative to the bitmap) of a restored history state to apply in
+     * the next {@link #applyImageMatrix(float, float, boolean, boolean)}, null if none.
+     */
+    private RectF mRestoreCropRect;
+
+    /**
+     * Set while a history state is restored so the crop window changes don't save states.
+     */
+    private boolean mRestoringHistory;
+
     /**
      * The max zoom allowed during cropping
      */
@@ -99,6 +201,21 @@ public class CropImageView extends FrameLayout {
      */
     private OnSetCropOverlayReleasedListener mOnCropOverlayReleasedListener;
 
+    /**
+     * callback to be invoked with the metrics of every crop, null to not measure crops.
+     */
+    private OnCropMetricsListener mOnCropMetricsListener;
+
+    /**
+     * Frame time histograms of the crop window interactions, null if disabled.
+     */
+    private InteractionMetrics mInteractionMetrics;
+
+    /**
+     * Pans and flings the image by gestures outside of the crop window.
+     */
+    private final ImageGestureHandler mImageGestureHandler;
+
     /**
      * The sample size the image was loaded by if was loaded by URI
      */
@@ -250,14 +367,61 @@ public class CropImageView extends FrameLayout {
                 new CropOverlayView.CropWindowChangeListener() {
                     @Override
                     public void onCropWindowChanged(boolean inProgress) {
+                        InteractionMetrics metrics = mInteractionMetrics;
+                        long start = metrics != null ? System.nanoTime() : 0;
+                        // the crop window relative to the bitmap is kept by auto-zoom, capture
+                        // it before the overlay is set to the zoom animation start
+                        boolean saveHistory = !inProgress && !mRestoringHistory
+                                && captureHistoryCropRect(mHistoryRecord);
                         handleCropWindowChanged(inProgress, true);
-                        OnSetCropOverlayReleasedListener listener = mOnCropOverlayReleasedListener;
-                        if (listener != null && !inProgress) {
-                            listener.onCropOverlayReleased(getCropRect());
+                        if (saveHistory) {
+                            captureHistoryImageState(mHistoryRecord);
+                            mHistory.push(mHistoryRecord);
+                        }
+                        if (metrics != null) {
+                            metrics.recordCropWindowChanged(System.nanoTime() - start);
+                        }
+                        if (!inProgress) {
+                            notifyCropOverlayReleased();
                         }
                     }
                 });
         mCropOverlayView.setInitialAttributeValues(options);
+
+        mImageGestureHandler = new ImageGestureHandler(context, this,
+                new ImageGestureHandler.Listener() {
+                    @Override
+                    public boolean onPan(float dx, float dy) {
+                        return panImage(dx, dy);
+                    }
+
+                    @Override
+                    public void onZoom(float scaleFactor, float focusX, float focusY) {
+                        zoomImage(scaleFactor, focusX, focusY);
+                    }
+
+                    @Override
+                    public void onPanEnd() {
+                        if (mBitmap != null) {
+                            // the crop window is over another part of the image now
+                            saveHistoryState();
+                            notifyCropOverlayReleased();
+                        }
+                    }
+
+                    @Override
+                    public void onZoomEnd() {
+                        if (mBitmap != null) {
+                            // update the crop window limits by the new image scale
+                            updateImageBounds(false);
+                            mCropOverlayView.fixCurrentCropWindowRect();
+                            mCropOverlayView.invalidate();
+                            saveHistoryState();
+                            notifyCropOverlayReleased();
+                        }
+                    }
+                });
+        mCropOverlayView.setImageGestureHandler(mImageGestureHandler);
     }
 
     /**
@@ -313,6 +477,323 @@ public class CropImageView extends FrameLayout {
         }
     }
 
+    /**
+     * if the initial crop window of a new image is placed on its content.
+     */
+    public boolean isAutoCropEnabled() {
+        return mAutoCropEnabled;
+    }
+
+    /**
+     * Set if to start cropping a new image from {@link #getSuggestedCropRect()} instead of a
+     * centered crop window, or from {@link #detectCropQuad()} for a quad crop shape.
+     */
+    public void setAutoCropEnabled(boolean autoCropEnabled) {
+        mAutoCropEnabled = autoCropEnabled;
+        if (!autoCropEnabled) {
+            mCropOverlayView.setSuggestedCropWindowRect(null);
+        }
+    }
+
+    /**
+     * if the crop window edges snap to strong edges in the image content when dragged.
+     */
+    public boolean isSnapToContentEnabled() {
+        return mSnapToContentEnabled;
+    }
+
+    /**
+     * Set if the crop window edges snap to strong edges in the image content (e.g. the outline of
+     * an object on a plain background) when dragged within the snap radius, not only to the image
+     * bounds.<br>
+     * The edges are found once per image on a background thread.
+     */
+    public void setSnapToContentEnabled(boolean snapToContentEnabled) {
+        if (mSnapToContentEnabled != snapToContentEnabled) {
+            mSnapToContentEnabled = snapToContentEnabled;
+            updateContentEdges();
+        }
+    }
+
+    /**
+     * The brightness adjustment of the image.
+     */
+    public float getBrightness() {
+        return mBrightness;
+    }
+
+    /**
+     * Set the brightness adjustment of the image, shown in the preview and applied to the cropped
+     * image.<br>
+     * default: 0.
+     *
+     * @param brightness the value added to every color channel relative to the full range, from -1
+     *                   (black) to 1 (white)
+     */
+    public void setBrightness(float brightness) {
+        if (brightness < -1 || brightness > 1) {
+            throw new IllegalArgumentException("Cannot set brightness outside of [-1, 1].");
+        }
+        mBrightness = brightness;
+        updateColorFilter();
+    }
+
+    /**
+     * The contrast adjustment of the image.
+     */
+    public float getContrast() {
+        return mContrast;
+    }
+
+    /**
+     * Set the contrast adjustment of the image, shown in the preview and applied to the cropped
+     * image.<br>
+     * default: 1.
+     *
+     * @param contrast the scale of the color channels around the middle gray, 0 for flat gray
+     */
+    public void setContrast(float contrast) {
+        if (contrast < 0) {
+            throw new IllegalArgumentException("Cannot set contrast to a negative value.");
+        }
+        mContrast = contrast;
+        updateColorFilter();
+    }
+
+    /**
+     * The saturation adjustment of the image.
+     */
+    public float getSaturation() {
+        return mSaturation;
+    }
+
+    /**
+     * Set the saturation adjustment of the image, shown in the preview and applied to the cropped
+     * image.<br>
+     * default: 1.
+     *
+     * @param saturation the scale of the colors from their gray, 0 for grayscale
+     */
+    public void setSaturation(float saturation) {
+        if (saturation < 0) {
+            throw new IllegalArgumentException("Cannot set saturation to a negative value.");
+        }
+        mSaturation = saturation;
+        updateColorFilter();
+    }
+
+    /**
+     * Show the adjustments in the preview by a color filter on the image view, the bitmap itself
+     * is never changed. The same matrix is applied to the cropped pixels.
+     */
+    private void updateColorFilter() {
+        mColorMatrix = ColorAdjustments.getMatrix(mBrightness, mContrast, mSaturation);
+        mImageView.setColorFilter(
+                mColorMatrix != null ? new ColorMatrixColorFilter(mColorMatrix) : null);
+    }
+
+    /**
+     * Suggest a crop window on the content of the image for the current aspect ratio, computed
+     * from the gradient energy of a small down-sampled copy of the image (a few milliseconds).<br>
+     * With a fixed aspect ratio the window has the initial size moved to the content, otherwise it
+     * is around the content.
+     *
+     * @return the rectangle to set by {@link #setCropRect(Rect)}, null if no image is set or it is
+     * rotated by a non-straight angle
+     */
+    public Rect getSuggestedCropRect() {
+        if (mBitmap == null || mDegreesRotated % 90 != 0) {
+            return null;
+        }
+        boolean transpose = mDegreesRotated % 180 != 0;
+        float aspectRatio = 0;
+        if (mCropOverlayView.isFixAspectRatio()) {
+            aspectRatio = (float) mCropOverlayView.getAspectRatioX()
+                    / mCropOverlayView.getAspectRatioY();
+            // the window is searched in the bitmap that is shown rotated
+            if (transpose) {
+                aspectRatio = 1 / aspectRatio;
+            }
+        }
+
+        int[] size = new int[2];
+        int[] pixels = BitmapUtils.getDownsampledPixels(mBitmap, SaliencyCrop.MAX_SIZE, size);
+        int width = size[0];
+        int height = size[1];
+        int[] window = SaliencyCrop.findCropRect(pixels, width, height, aspectRatio,
+                mCropOverlayView.getInitialCropWindowPaddingRatio());
+
+        // map the window to fractions of the image as shown, rotated and flipped
+        Matrix matrix = new Matrix();
+        matrix.setRotate(mDegreesRotated);
+        matrix.postScale(mFlipHorizontally ? -1 : 1, mFlipVertically ? -1 : 1);
+        RectF rect = new RectF(window[0], window[1], window[2], window[3]);
+        RectF bounds = new RectF(0, 0, width, height);
+        matrix.mapRect(rect);
+        matrix.mapRect(bounds);
+
+        // the initial crop window is relative to the shown image in the loaded bitmap scale
+        float shownWidth = (transpose ? mBitmap.getHeight() : mBitmap.getWidth())
+                * mLoadedSampleSize;
+        float shownHeight = (transpose ? mBitmap.getWidth() : mBitmap.getHeight())
+                * mLoadedSampleSize;
+        return new Rect(Math.round((rect.left - bounds.left) / bounds.width() * shownWidth),
+                Math.round((rect.top - bounds.top) / bounds.height() * shownHeight),
+                Math.round((rect.right - bounds.left) / bounds.width() * shownWidth),
+                Math.round((rect.bottom - bounds.top) / bounds.height() * shownHeight));
+    }
+
+    /**
+     * Find the content edges of the current image for the crop window to snap to.<br>
+     * The bitmap is down-sampled on the calling thread, the edge profiles are computed on a
+     * background thread and set only if the image didn't change meanwhile.
+     */
+    private void updateContentEdges() {
+        mCropOverlayView.setContentEdges(null);
+        if (!mSnapToContentEnabled || mBitmap == null) {
+            return;
+        }
+        final Bitmap bitmap = mBitmap;
+        final int[] size = new int[2];
+        final int[] pixels = BitmapUtils.getDownsampledPixels(bitmap, ContentEdges.MAX_SIZE, size);
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final ContentEdges contentEdges = ContentEdges.find(pixels, size[0], size[1]);
+                post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (mBitmap == bitmap && mSnapToContentEnabled) {
+                            mCropOverlayView.setContentEdges(contentEdges);
+                        }
+                    }
+                });
+            }
+        }, "CropContentEdges").start();
+    }
+
+    /**
+     * Find a document photographed at an angle (a bright quad on a darker background) in the image
+     * and place the {@link CropImage.CropShape#QUAD} crop window on its corners.<br>
+     * Works on a small down-sampled copy of the image (a few milliseconds).
+     *
+     * @return true if a document was found, the quad is unchanged otherwise
+     */
+    public boolean detectCropQuad() {
+        if (mBitmap == null) {
+            return false;
+        }
+        int[] size = new int[2];
+        int[] pixels = BitmapUtils.getDownsampledPixels(mBitmap, QuadDetector.MAX_SIZE, size);
+        float[] quad = QuadDetector.find(pixels, size[0], size[1]);
+        if (quad == null) {
+            return false;
+        }
+        for (int i = 0; i < quad.length; i += 2) {
+            quad[i] /= size[0];
+            quad[i + 1] /= size[1];
+        }
+        mCropOverlayView.setCropQuad(quad);
+        return true;
+    }
+
+    /**
+     * Straighten a slightly tilted image: detect the tilt (up to {@link
+     * StraightenDetector#MAX_ANGLE} degrees) of the dominant near-horizontal/vertical lines in it
+     * on a background thread, then rotate the image by it to the nearest whole degree and shrink
+     * the crop window to the largest one inside the rotated image.<br>
+     * Setting a new image or calling again cancels a running detection.
+     */
+    public void autoStraighten() {
+        cancelAutoStraighten();
+        if (mBitmap == null) {
+            return;
+        }
+        int[] size = new int[2];
+        int[] pixels = BitmapUtils.getDownsampledPixels(mBitmap, StraightenDetector.MAX_SIZE, size);
+        mStraightenTask = new StraightenTask(mBitmap,
+                new StraightenDetector(pixels, size[0], size[1]));
+        new Thread(mStraightenTask, "CropStraighten").start();
+    }
+
+    /**
+     * Cancel the running auto straighten detection, if any.
+     */
+    private void cancelAutoStraighten() {
+        if (mStraightenTask != null) {
+            mStraightenTask.cancel();
+            mStraightenTask = null;
+        }
+    }
+
+    /**
+     * Rotate the image so lines tilted by the given angle in the bitmap are shown on the nearest
+     * axis, and fit the crop window inside the rotated image.
+     *
+     * @param angle the tilt of the lines in the bitmap (in degrees), clockwise on screen
+     */
+    private void applyStraighten(float angle) {
+        // rotation and flip are applied after the tilt, so the shown lines are on an axis when
+        // the total rotation cancels the tilt
+        int residual = (mDegreesRotated + 45) % 90 - 45;
+        float degrees = -angle - residual;
+        if (degrees >= 45) {
+            degrees -= 90;
+        } else if (degrees < -45) {
+            degrees += 90;
+        }
+        int rotation = Math.round(degrees);
+        if (rotation == 0) {
+            return;
+        }
+        rotateImage(rotation);
+        if (mDegreesRotated % 90 != 0) {
+            fitCropWindowInsideImage();
+        }
+    }
+
+    /**
+     * Set the crop window to the largest rectangle centered on the image that is inside the
+     * rotated image and the view, with the crop aspect ratio if fixed or the image's otherwise.
+     */
+    private void fitCropWindowInsideImage() {
+        float e1x = mImagePoints[2] - mImagePoints[0];
+        float e1y = mImagePoints[3] - mImagePoints[1];
+        float e2x = mImagePoints[6] - mImagePoints[0];
+        float e2y = mImagePoints[7] - mImagePoints[1];
+        float length1 = (float) Math.hypot(e1x, e1y);
+        float length2 = (float) Math.hypot(e2x, e2y);
+        if (length1 == 0 || length2 == 0) {
+            return;
+        }
+        float aspectRatio;
+        if (mCropOverlayView.isFixAspectRatio()) {
+            aspectRatio = (float) mCropOverlayView.getAspectRatioX()
+                    / mCropOverlayView.getAspectRatioY();
+        } else {
+            aspectRatio = Math.abs(e1x) >= Math.abs(e1y) ? length1 / length2 : length2 / length1;
+        }
+
+        // the window corners (+-aspectRatio * height / 2, +-height / 2) from the center must
+        // project inside the half lengths of both image sides
+        float centerX = RectUtils.getRectCenterX(mImagePoints);
+        float centerY = RectUtils.getRectCenterY(mImagePoints);
+        float height = Math.min(
+                length1 * length1 / (aspectRatio * Math.abs(e1x) + Math.abs(e1y)),
+                length2 * length2 / (aspectRatio * Math.abs(e2x) + Math.abs(e2y)));
+        height = Math.min(height, 2 * Math.min(centerX, getWidth() - centerX) / aspectRatio);
+        height = Math.min(height, 2 * Math.min(centerY, getHeight() - centerY));
+        if (height <= 0) {
+            return;
+        }
+        float halfWidth = aspectRatio * height / 2;
+        mCropOverlayView.setCropWindowRect(new RectF(centerX - halfWidth, centerY - height / 2,
+                centerX + halfWidth, centerY + height / 2));
+        handleCropWindowChanged(false, false);
+        mCropOverlayView.fixCurrentCropWindowRect();
+    }
+
     /**
      * Set multi touch functionality to enabled/disabled.
      */
@@ -518,9 +999,7 @@ public class CropImageView extends FrameLayout {
             return null;
         }
 
-        int orgWidth = (int) (mBitmap.getWidth() * mLoadedSampleSize);
-        int orgHeight = (int) (mBitmap.getHeight() * mLoadedSampleSize);
-        return new Rect(0, 0, orgWidth, orgHeight);
+        return new Rect(0, 0, getSourceWidth(), getSourceHeight());
     }
 
     /**
@@ -535,13 +1014,12 @@ public class CropImageView extends FrameLayout {
             // get the points of the crop rectangle adjusted to source bitmap
             float[] points = getCropPoints();
 
-            int orgWidth = (int) (mBitmap.getWidth() * mLoadedSampleSize);
-            int orgHeight = (int) (mBitmap.getHeight() * mLoadedSampleSize);
-
             // get the rectangle for the points (it may be larger than original if rotation is
             // not stright)
-            return RectUtils.getRectFromPoints(points, orgWidth, orgHeight,
-                    mCropOverlayView.isFixAspectRatio(), mCropOverlayView.getAspectRatioX(),
+            return RectUtils.getRectFromPoints(points, getSourceWidth(), getSourceHeight(),
+                    mCropOverlayView.isFixAspectRatio()
+                            && getCropShape() != CropImage.CropShape.QUAD,
+                    mCropOverlayView.getAspectRatioX(),
                     mCropOverlayView.getAspectRatioY());
         } else {
             return null;
@@ -552,16 +1030,35 @@ public class CropImageView extends FrameLayout {
      * Gets the 4 points of crop window's position relative to the source Bitmap (not the image
      * displayed in the CropImageView) using the original image rotation.<br>
      * Note: the 4 points may not be a rectangle if the image was rotates to NOT stright angle (!=
-     * 90/180/270).
+     * 90/180/270), or for {@link CropImage.CropShape#QUAD} where they are the quad corners.
      *
      * @return 4 points (x0,y0,x1,y1,x2,y2,x3,y3) of cropped area boundaries
      */
     public float[] getCropPoints() {
-
         // Get crop window position relative to the displayed image.
-        RectF cropWindowRect = mCropOverlayView.getCropWindowRect();
+        float[] quad = mCropOverlayView.getCropQuad();
+        if (quad != null) {
+            return mapCropPoints(quad);
+        }
+        return getCropPoints(mCropOverlayView.getCropWindowRect());
+    }
 
-        float[] points = new float[]{
+    /**
+     * Gets the 4 points of the crop region at the given index relative to the source Bitmap, see
+     * {@link #addCropRegion(Rect, boolean, int, int)}.
+     *
+     * @return 4 points (x0,y0,x1,y1,x2,y2,x3,y3) of cropped area boundaries
+     * @see #getCropPoints()
+     */
+    public float[] getCropPoints(int index) {
+        return getCropPoints(mCropOverlayView.getCropWindowRect(index));
+    }
+
+    /**
+     * Map the given crop window rectangle in the view to the 4 points in the source Bitmap.
+     */
+    private float[] getCropPoints(RectF cropWindowRect) {
+        return mapCropPoints(new float[]{
                 cropWindowRect.left,
                 cropWindowRect.top,
                 cropWindowRect.right,
@@ -570,8 +1067,13 @@ public class CropImageView extends FrameLayout {
                 cropWindowRect.bottom,
                 cropWindowRect.left,
                 cropWindowRect.bottom
-        };
+        });
+    }
 
+    /**
+     * Map the given crop window points in the view to the source Bitmap, in place.
+     */
+    private float[] mapCropPoints(float[] points) {
         mImageMatrix.invert(mImageInverseMatrix);
         mImageInverseMatrix.mapPoints(points);
 
@@ -582,6 +1084,226 @@ public class CropImageView extends FrameLayout {
         return points;
     }
 
+    /**
+     * Gets the cropped image based on the current crop window, rotated, flipped and color adjusted
+     * the same as shown in the crop window.<br>
+     * If the image was set by {@link #setImageBuffer(MappedPixelBuffer)} the cropped area is read
+     * in full resolution directly from the memory-mapped buffer, otherwise from the set bitmap.
+     *
+     * @return a new Bitmap representing the cropped image
+     */
+    public Bitmap getCroppedImage() {
+        return getCroppedImage(0, 0);
+    }
+
+    /**
+     * Gets the cropped image based on the current crop window, resized to fit into the requested
+     * width/height keeping the aspect ratio (see {@link CropImageOptions#outputRequestWidth}).<br>
+     * A request of 0 for width or height leaves that dimension unconstrained.<br>
+     * For {@link CropImage.CropShape#OVAL} the pixels outside the oval are transparent, a {@link
+     * CropImage.CropShape#QUAD} is warped upright to the size of its longer opposite edges.
+     *
+     * @param reqWidth  the width to resize the cropped image to
+     * @param reqHeight the height to resize the cropped image to
+     * @return a new Bitmap representing the cropped image
+     */
+    public Bitmap getCroppedImage(int reqWidth, int reqHeight) {
+        CropMetrics metrics = CropMetrics.create(mOnCropMetricsListener);
+        Bitmap bitmap;
+        try {
+            bitmap = getCroppedImage(reqWidth, reqHeight, metrics);
+        } catch (RuntimeException e) {
+            if (metrics != null) {
+                metrics.abort();
+            }
+            throw e;
+        }
+        if (metrics != null && bitmap != null) {
+            metrics.dispatch();
+        }
+        return bitmap;
+    }
+
+    /**
+     * Crop the image based on the current crop window and save it to the given uri.<br>
+     * Oval crops are transparent outside the oval, so JPEG is replaced by PNG for them. Must not be
+     * called on the main thread.
+     *
+     * @param saveUri             the uri to save the cropped image to
+     * @param saveCompressFormat  the format to compress the cropped image with
+     * @param saveCompressQuality the quality (0-100) to compress the cropped image with
+     * @param reqWidth            the width to resize the cropped image to, 0 for unconstrained
+     * @param reqHeight           the height to resize the cropped image to, 0 for unconstrained
+     * @return the format the cropped image was saved with
+     */
+    public Bitmap.CompressFormat saveCroppedImage(Uri saveUri,
+            Bitmap.CompressFormat saveCompressFormat, int saveCompressQuality, int reqWidth,
+            int reqHeight) throws IOException {
+        CropMetrics metrics = CropMetrics.create(mOnCropMetricsListener);
+        Bitmap bitmap = null;
+        try {
+            bitmap = getCroppedImage(reqWidth, reqHeight, metrics);
+            if (bitmap == null) {
+                throw new IOException("No image to crop");
+            }
+            Bitmap.CompressFormat format = BitmapUtils.writeBitmapToUri(getContext(), bitmap,
+                    saveUri, saveCompressFormat, saveCompressQuality,
+                    getCropShape() == CropImage.CropShape.OVAL, metrics);
+            if (metrics != null) {
+                metrics.dispatch();
+            }
+            return format;
+        } catch (IOException | RuntimeException e) {
+            if (metrics != null) {
+                metrics.abort();
+            }
+            throw e;
+        } finally {
+            if (bitmap != null) {
+                bitmap.recycle();
+            }
+        }
+    }
+
+    /**
+     * Crop the image based on the current crop window in a single pass.
+     *
+     * @param metrics the metrics to record the crop into, null to not measure
+     */
+    private Bitmap getCroppedImage(int reqWidth, int reqHeight, CropMetrics metrics) {
+        if (mBitmap == null) {
+            return null;
+        }
+
+        // the crop points carry the rotation and flip, crop them in a single pass
+        float[] points = getCropPoints();
+        boolean oval = getCropShape() == CropImage.CropShape.OVAL;
+        if (mPixelBuffer != null) {
+            if (metrics != null) {
+                metrics.setSource(mPixelBuffer.getWidth(), mPixelBuffer.getHeight(), 1);
+            }
+            return BitmapUtils.cropBitmap(mPixelBuffer, points, reqWidth, reqHeight, oval,
+                    mColorMatrix, metrics);
+        }
+
+        if (metrics != null) {
+            metrics.setSource(mBitmap.getWidth(), mBitmap.getHeight(), mLoadedSampleSize);
+        }
+        for (int i = 0; i < points.length; i++) {
+            points[i] /= mLoadedSampleSize;
+        }
+        return BitmapUtils.cropBitmap(mBitmap, points, reqWidth, reqHeight, oval, mColorMatrix,
+                metrics);
+    }
+
+    /**
+     * Add another crop region on the image with its own aspect ratio, for cutting multiple items
+     * out of a single image.<br>
+     * The crop window shown until now becomes the first crop region. Pressing a crop region makes
+     * it the active one that is moved/resized and used by the single region methods (e.g. {@link
+     * #getCroppedImage()}), all the regions share the crop shape. Setting a new image removes the
+     * added regions.
+     *
+     * @param rect           the region rectangle relative to the source bitmap, null for a region
+     *                       in the center of the image
+     * @param fixAspectRatio if the aspect ratio of the region is fixed
+     * @return the index of the new crop region, -1 if no image is set
+     */
+    public int addCropRegion(Rect rect, boolean fixAspectRatio, int aspectRatioX,
+            int aspectRatioY) {
+        if (mBitmap == null) {
+            return -1;
+        }
+        RectF imageRect = new RectF(0.25f, 0.25f, 0.75f, 0.75f);
+        if (rect != null) {
+            imageRect.set((float) rect.left / getSourceWidth(),
+                    (float) rect.top / getSourceHeight(), (float) rect.right / getSourceWidth(),
+                    (float) rect.bottom / getSourceHeight());
+        }
+        return mCropOverlayView.addCropWindow(imageRect, fixAspectRatio, aspectRatioX,
+                aspectRatioY);
+    }
+
+    /**
+     * Remove the crop region at the given index, the last region can't be removed.
+     */
+    public void removeCropRegion(int index) {
+        mCropOverlayView.removeCropWindow(index);
+    }
+
+    /**
+     * The number of crop regions, 1 unless regions were added by {@link #addCropRegion(Rect,
+     * boolean, int, int)}.
+     */
+    public int getCropRegionCount() {
+        return mCropOverlayView.getCropWindowCount();
+    }
+
+    /**
+     * The index of the crop region that is moved/resized by touch.
+     */
+    public int getActiveCropRegion() {
+        return mCropOverlayView.getActiveCropWindow();
+    }
+
+    /**
+     * Make the crop region at the given index the one that is moved/resized by touch.
+     */
+    public void setActiveCropRegion(int index) {
+        mCropOverlayView.setActiveCropWindow(index);
+    }
+
+    /**
+     * Gets the cropped images of all the crop regions in one batch, rotated and flipped the same
+     * as shown.<br>
+     * Overlapping regions are read from the source once and cropped from the same pixels.
+     *
+     * @param reqWidth  the width to resize every cropped image to, 0 for unconstrained
+     * @param reqHeight the height to resize every cropped image to, 0 for unconstrained
+     * @return the cropped images by region index, null if no image is set
+     */
+    public Bitmap[] getCroppedImages(int reqWidth, int reqHeight) {
+        if (mBitmap == null) {
+            return null;
+        }
+        float[][] points = new float[getCropRegionCount()][];
+        for (int i = 0; i < points.length; i++) {
+            points[i] = getCropPoints(i);
+        }
+        boolean oval = getCropShape() == CropImage.CropShape.OVAL;
+        if (mPixelBuffer != null) {
+            return BitmapUtils.cropBitmaps(mPixelBuffer, points, reqWidth, reqHeight, oval,
+                    mColorMatrix);
+        }
+        for (float[] regionPoints : points) {
+            for (int i = 0; i < regionPoints.length; i++) {
+                regionPoints[i] /= mLoadedSampleSize;
+            }
+        }
+        return BitmapUtils.cropBitmaps(mBitmap, points, reqWidth, reqHeight, oval, mColorMatrix);
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent ev) {
+        // a new touch interrupts a running zoom animation at its end state
+        if (ev.getActionMasked() == MotionEvent.ACTION_DOWN) {
+            if (mAnimation != null) {
+                mAnimation.end();
+            }
+            saveInitialHistoryState();
+        }
+        return super.dispatchTouchEvent(ev);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        if (mAnimation != null) {
+            mAnimation.end();
+        }
+        cancelAutoStraighten();
+    }
+
     /**
      * Set the crop window position and size to the given rectangle.<br>
      * Image to crop must be first set before invoking this, for async - after complete callback.
@@ -596,6 +1318,7 @@ public class CropImageView extends FrameLayout {
      * Reset crop window to initial rectangle.
      */
     public void resetCropRect() {
+        saveInitialHistoryState();
         mZoom = 1;
         mZoomOffsetX = 0;
         mZoomOffsetY = 0;
@@ -606,6 +1329,103 @@ public class CropImageView extends FrameLayout {
         mCropOverlayView.resetCropWindowRect();
     }
 
+    /**
+     * Set the callback to be invoked with the time and memory spent in every stage of {@link
+     * #getCroppedImage()} and {@link #saveCroppedImage}, null to stop measuring.<br>
+     * Called on the thread the crop ran on.
+     */
+    public void setOnCropMetricsListener(OnCropMetricsListener listener) {
+        mOnCropMetricsListener = listener;
+    }
+
+    /**
+     * Set if to record frame time histograms of the crop window interactions, off by default.<br>
+     * Disabling discards the recorded values.
+     */
+    public void setInteractionMetricsEnabled(boolean enabled) {
+        if (enabled != (mInteractionMetrics != null)) {
+            mInteractionMetrics = enabled ? new InteractionMetrics() : null;
+            mCropOverlayView.setInteractionMetrics(mInteractionMetrics);
+        }
+    }
+
+    /**
+     * Start recording the touch events of the crop window and image gestures with the current
+     * view/image geometry and crop state, to reproduce an interaction by {@link
+     * #replayGestureRecording(GestureRecording)}.<br>
+     * The events are appended to the returned recording until {@link #stopGestureRecording()}.
+     *
+     * @return the recording, null if no image is set
+     */
+    public GestureRecording startGestureRecording() {
+        float[] state = new float[HISTORY_RECORD_SIZE];
+        if (getWidth() <= 0 || !captureHistoryCropRect(state)) {
+            return null;
+        }
+        captureHistoryImageState(state);
+        GestureRecording recording = new GestureRecording(getWidth(), getHeight(),
+                mBitmap.getWidth(), mBitmap.getHeight(), state);
+        mCropOverlayView.setGestureRecording(recording);
+        return recording;
+    }
+
+    /**
+     * Stop appending the touch events to the recording started by {@link
+     * #startGestureRecording()}.
+     */
+    public void stopGestureRecording() {
+        mCropOverlayView.setGestureRecording(null);
+    }
+
+    /**
+     * Reset the crop state to the start of the given recording and dispatch its touch events, with
+     * their recorded timing and historical samples, on the calling thread.<br>
+     * The view and image must have the sizes the recording was made on.
+     *
+     * @return the CPU time (in nanoseconds) spent in dispatching every event
+     */
+    public long[] replayGestureRecording(GestureRecording recording) {
+        if (mBitmap == null || !recording.matches(getWidth(), getHeight(), mBitmap.getWidth(),
+                mBitmap.getHeight())) {
+            throw new IllegalArgumentException(
+                    "Cannot replay a recording made on a different view or image size");
+        }
+        mImageGestureHandler.stopFling();
+        restoreHistoryState(recording.getState(), false);
+        return recording.replay(this);
+    }
+
+    /**
+     * Set how far ahead to predict the finger position while dragging the crop window, so the
+     * window doesn't lag behind the finger, 0 (default) to disable.<br>
+     * The prediction is only used for showing the drag, the real position is used on release.
+     *
+     * @param horizonMillis the prediction time, usually 1-2 frames (16-32 ms)
+     */
+    public void setTouchPredictionHorizon(long horizonMillis) {
+        mCropOverlayView.setTouchPredictionHorizon(horizonMillis);
+    }
+
+    /**
+     * Get the histogram of the distance between predicted and real finger positions, in
+     * hundredths of a pixel, to tune {@link #setTouchPredictionHorizon(long)}.
+     *
+     * @return the histogram, null if touch prediction is disabled
+     */
+    public LatencyHistogram getTouchPredictionError() {
+        return mCropOverlayView.getTouchPredictionError();
+    }
+
+    /**
+     * Get the frame time histograms of the crop window interactions, to read the p50/p95/p99 of
+     * touch to draw latency, crop window move and image update durations.
+     *
+     * @return the histograms, null if not enabled by {@link #setInteractionMetricsEnabled(boolean)}
+     */
+    public InteractionMetrics getInteractionMetrics() {
+        return mInteractionMetrics;
+    }
+
     /**
      * Set the callback to be invoked when crop overlay is released
      */
@@ -634,12 +1454,30 @@ public class CropImageView extends FrameLayout {
         setBitmap(bitmap, loadSampleSize, degreesRotated);
     }
 
+    /**
+     * Sets a memory-mapped pixel buffer as the content of the CropImageView.<br>
+     * A down-sampled preview of the buffer is shown for cropping while {@link #getCroppedImage()}
+     * reads the cropped area in full resolution directly from the buffer.<br>
+     * The buffer is not closed by the view, it must stay open while it is set.
+     *
+     * @param buffer the pixel buffer to set, see {@link CropImage#decodeToMappedBuffer}
+     */
+    public void setImageBuffer(MappedPixelBuffer buffer) {
+        int sampleSize = BitmapUtils.calculatePreviewSampleSize(buffer);
+        Bitmap preview = BitmapUtils.createPreviewBitmap(buffer, sampleSize);
+        setImageBitmap(preview, sampleSize, buffer.getDegreesRotated());
+        mPixelBuffer = buffer;
+    }
+
     /**
      * Clear the current image set for cropping.
      */
     public void clearImage() {
         clearImageInt();
+        mCropOverlayView.clearCropWindows();
+        mCropOverlayView.setContentEdges(null);
         mCropOverlayView.setInitialCropWindowRect(null);
+        mCropOverlayView.setSuggestedCropWindowRect(null);
     }
 
     /**
@@ -650,6 +1488,8 @@ public class CropImageView extends FrameLayout {
      */
     public void rotateImage(int degrees) {
         if (mBitmap != null) {
+            saveInitialHistoryState();
+
             // Force degrees to be a non-zero value between 0 and 360 (inclusive)
             if (degrees < 0) {
                 degrees = (degrees % 360) + 360;
@@ -719,6 +1559,7 @@ public class CropImageView extends FrameLayout {
             // make sure the crop window rectangle is within the cropping image bounds after all
             // the changes
             mCropOverlayView.fixCurrentCropWindowRect();
+            saveHistoryState();
         }
     }
 
@@ -726,16 +1567,162 @@ public class CropImageView extends FrameLayout {
      * Flips the image horizontally.
      */
     public void flipImageHorizontally() {
+        saveInitialHistoryState();
         mFlipHorizontally = !mFlipHorizontally;
         applyImageMatrix(getWidth(), getHeight(), true, false);
+        saveHistoryState();
     }
 
     /**
      * Flips the image vertically.
      */
     public void flipImageVertically() {
+        saveInitialHistoryState();
         mFlipVertically = !mFlipVertically;
         applyImageMatrix(getWidth(), getHeight(), true, false);
+        saveHistoryState();
+    }
+
+    /**
+     * Whether there is a crop window change, rotation or flip to undo.
+     */
+    public boolean canUndo() {
+        return mHistory.canUndo();
+    }
+
+    /**
+     * Whether there is an undone change to redo.
+     */
+    public boolean canRedo() {
+        return mHistory.canRedo();
+    }
+
+    /**
+     * Undo the last crop window change, rotation or flip, animated to the previous state.<br>
+     * The states are kept from the time the image was set, up to the last {@value #HISTORY_SIZE}.
+     *
+     * @return false if there is nothing to undo
+     */
+    public boolean undo() {
+        if (mBitmap == null || !mHistory.undo(mHistoryRecord)) {
+            return false;
+        }
+        restoreHistoryState(mHistoryRecord, true);
+        notifyCropOverlayReleased();
+        return true;
+    }
+
+    /**
+     * Redo the last undone change, animated to its state.
+     *
+     * @return false if there is nothing to redo
+     */
+    public boolean redo() {
+        if (mBitmap == null || !mHistory.redo(mHistoryRecord)) {
+            return false;
+        }
+        restoreHistoryState(mHistoryRecord, true);
+        notifyCropOverlayReleased();
+        return true;
+    }
+
+    /**
+     * Notify the crop overlay released listener of the current crop rectangle, if set.
+     */
+    private void notifyCropOverlayReleased() {
+        OnSetCropOverlayReleasedListener listener = mOnCropOverlayReleasedListener;
+        if (listener != null) {
+            listener.onCropOverlayReleased(getCropRect());
+        }
+    }
+
+    /**
+     * Save the current state as the state to undo to if no state was saved for the image yet.
+     */
+    private void saveInitialHistoryState() {
+        if (mHistory.isEmpty()) {
+            saveHistoryState();
+        }
+    }
+
+    /**
+     * Save the current crop window and image transformation to the undo/redo history.
+     */
+    private void saveHistoryState() {
+        if (!mRestoringHistory && captureHistoryCropRect(mHistoryRecord)) {
+            captureHistoryImageState(mHistoryRecord);
+            mHistory.push(mHistoryRecord);
+        }
+    }
+
+    /**
+     * Capture the crop window rectangle relative to the bitmap to the given history record.
+     *
+     * @return false if there is no crop window to capture
+     */
+    private boolean captureHistoryCropRect(float[] record) {
+        RectF cropRect = mCropOverlayView.getCropWindowRect();
+        if (mBitmap == null || cropRect.isEmpty() || !mImageMatrix.invert(mImageInverseMatrix)) {
+            return false;
+        }
+        mImageInverseMatrix.mapRect(cropRect);
+        record[0] = cropRect.left;
+        record[1] = cropRect.top;
+        record[2] = cropRect.right;
+        record[3] = cropRect.bottom;
+        return true;
+    }
+
+    /**
+     * Capture the zoom, rotation and flip of the image to the given history record.
+     */
+    private void captureHistoryImageState(float[] record) {
+        record[4] = mZoom;
+        record[5] = mZoomOffsetX;
+        record[6] = mZoomOffsetY;
+        record[7] = mDegreesRotated;
+        record[8] = (mFlipHorizontally ? HISTORY_FLIP_HORIZONTALLY : 0)
+                | (mFlipVertically ? HISTORY_FLIP_VERTICALLY : 0);
+    }
+
+    /**
+     * Set the image and crop window to the given history record, on the already decoded bitmap.
+     *
+     * @param animate if to animate from the current state, the same frame synced animation as
+     *                auto-zoom
+     */
+    private void restoreHistoryState(float[] record, boolean animate) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        cancelAutoStraighten();
+        if (animate) {
+            if (mAnimation == null) {
+                mAnimation = new CropImageAnimation(mImageView, mCropOverlayView);
+            } else {
+                mAnimation.end();
+            }
+            mAnimation.setStartState(mImageMatrix);
+        }
+
+        mZoom = record[4];
+        mZoomOffsetX = record[5];
+        mZoomOffsetY = record[6];
+        mDegreesRotated = (int) record[7];
+        int flags = (int) record[8];
+        mFlipHorizontally = (flags & HISTORY_FLIP_HORIZONTALLY) != 0;
+        mFlipVertically = (flags & HISTORY_FLIP_VERTICALLY) != 0;
+        mRestoreCropRect = new RectF(record[0], record[1], record[2], record[3]);
+
+        mRestoringHistory = true;
+        try {
+            applyImageMatrix(width, height, false, animate);
+        } finally {
+            mRestoreCropRect = null;
+            mRestoringHistory = false;
+        }
     }
 
     /**
@@ -746,7 +1733,9 @@ public class CropImageView extends FrameLayout {
     private void setBitmap(Bitmap bitmap, float loadSampleSize, int degreesRotated) {
         if (mBitmap == null || !mBitmap.equals(bitmap)) {
 
-            mImageView.clearAnimation();
+            if (mAnimation != null) {
+                mAnimation.cancel();
+            }
 
             clearImageInt();
 
@@ -755,11 +1744,20 @@ public class CropImageView extends FrameLayout {
 
             mLoadedSampleSize = loadSampleSize;
             mDegreesRotated = degreesRotated;
+            mImageVersion++;
 
             applyImageMatrix(getWidth(), getHeight(), true, false);
 
             if (mCropOverlayView != null) {
+                mCropOverlayView.clearCropWindows();
+                boolean quad = getCropShape() == CropImage.CropShape.QUAD;
+                mCropOverlayView.setSuggestedCropWindowRect(
+                        mAutoCropEnabled && !quad ? getSuggestedCropRect() : null);
                 mCropOverlayView.resetCropOverlayView();
+                if (mAutoCropEnabled && quad) {
+                    detectCropQuad();
+                }
+                updateContentEdges();
                 setCropOverlayVisibility();
             }
         }
@@ -772,7 +1770,11 @@ public class CropImageView extends FrameLayout {
      * will only clear the bitmap.
      */
     private void clearImageInt() {
+        cancelAutoStraighten();
+        mHistory.clear();
         mBitmap = null;
+        mPixelBuffer = null;
+        mImageGestureHandler.stopFling();
 
         // clean the loaded image flags for new image
         mLoadedSampleSize = 1;
@@ -781,6 +1783,7 @@ public class CropImageView extends FrameLayout {
         mZoomOffsetX = 0;
         mZoomOffsetY = 0;
         mImageMatrix.reset();
+        mImageVersion++;
 
         mImageView.setImageBitmap(null);
 
@@ -837,10 +1840,7 @@ public class CropImageView extends FrameLayout {
             int width = getOnMeasureSpec(widthMode, widthSize, desiredWidth);
             int height = getOnMeasureSpec(heightMode, heightSize, desiredHeight);
 
-            mLayoutWidth = width;
-            mLayoutHeight = height;
-
-            setMeasuredDimension(mLayoutWidth, mLayoutHeight);
+            setMeasuredDimension(width, height);
 
         } else {
             setMeasuredDimension(widthSize, heightSize);
@@ -852,22 +1852,14 @@ public class CropImageView extends FrameLayout {
 
         super.onLayout(changed, l, t, r, b);
 
-        if (mLayoutWidth > 0 && mLayoutHeight > 0) {
-            // Gets original parameters, and creates the new parameters
-            ViewGroup.LayoutParams origParams = this.getLayoutParams();
-            origParams.width = mLayoutWidth;
-            origParams.height = mLayoutHeight;
-            setLayoutParams(origParams);
-
-            if (mBitmap != null) {
-                applyImageMatrix(r - l, b - t, true, false);
+        // the size for the image is only reported by onMeasure, changing the layout params here
+        // would request another measure/layout pass after every layout
+        if (mBitmap != null) {
+            applyImageMatrix(r - l, b - t, true, false);
 
-                if (mSizeChanged) {
-                    mSizeChanged = false;
-                    handleCropWindowChanged(false, false);
-                }
-            } else {
-                updateImageBounds(true);
+            if (mSizeChanged) {
+                mSizeChanged = false;
+                handleCropWindowChanged(false, false);
             }
         } else {
             updateImageBounds(true);
@@ -931,7 +1923,7 @@ public class CropImageView extends FrameLayout {
                             mAnimation = new CropImageAnimation(mImageView, mCropOverlayView);
                         }
                         // set the state for animation to start from
-                        mAnimation.setStartState(mImagePoints, mImageMatrix);
+                        mAnimation.setStartState(mImageMatrix);
                     }
 
                     mZoom = newZoom;
@@ -950,11 +1942,24 @@ public class CropImageView extends FrameLayout {
      */
     private void applyImageMatrix(float width, float height, boolean center, boolean animate) {
         if (mBitmap != null && width > 0 && height > 0) {
+            if (mInteractionMetrics != null) {
+                mInteractionMetrics.onImageMatrixApplied();
+            }
+            mImageGestureHandler.stopFling();
+            if (!animate && mAnimation != null) {
+                // the crop window must match the image matrix the new one is calculated from
+                mAnimation.end();
+            }
 
-            mImageMatrix.invert(mImageInverseMatrix);
             RectF cropRect = mCropOverlayView.getCropWindowRect();
-            mImageInverseMatrix.mapRect(cropRect);
+            if (mRestoreCropRect != null) {
+                cropRect.set(mRestoreCropRect);
+            } else {
+                mImageMatrix.invert(mImageInverseMatrix);
+                mImageInverseMatrix.mapRect(cropRect);
+            }
 
+            mPreviousImageMatrix.set(mImageMatrix);
             mImageMatrix.reset();
 
             // move the image to the center of the image view first so we can manipulate it from
@@ -1015,12 +2020,14 @@ public class CropImageView extends FrameLayout {
             mCropOverlayView.setCropWindowRect(cropRect);
             mapImagePointsByImageMatrix();
             mCropOverlayView.invalidate();
+            if (!mImageMatrix.equals(mPreviousImageMatrix)) {
+                mImageVersion++;
+            }
 
             // set matrix to apply
             if (animate) {
                 // set the state for animation to end in, start animation now
-                mAnimation.setEndState(mImagePoints, mImageMatrix);
-                mImageView.startAnimation(mAnimation);
+                mAnimation.start(mImageMatrix, mBitmap.getWidth(), mBitmap.getHeight());
             } else {
                 mImageView.setImageMatrix(mImageMatrix);
             }
@@ -1030,6 +2037,129 @@ public class CropImageView extends FrameLayout {
         }
     }
 
+    /**
+     * Move the image by the given distance in view pixels, clamped so the image keeps covering the
+     * view on the axes it is larger than the view (so the crop window stays on the image).<br>
+     * Only the translation of the current image matrix is updated, the zoom offset is kept in
+     * sync for the next full {@link #applyImageMatrix(float, float, boolean, boolean)}.
+     *
+     * @return true if the image moved
+     */
+    private boolean panImage(float dx, float dy) {
+        if (mBitmap == null) {
+            return false;
+        }
+        int width = getWidth();
+        int height = getHeight();
+        float left = RectUtils.getRectLeft(mImagePoints);
+        float right = RectUtils.getRectRight(mImagePoints);
+        float top = RectUtils.getRectTop(mImagePoints);
+        float bottom = RectUtils.getRectBottom(mImagePoints);
+        dx = right - left > width ? Math.max(width - right, Math.min(-left, dx)) : 0;
+        dy = bottom - top > height ? Math.max(height - bottom, Math.min(-top, dy)) : 0;
+        if (dx == 0 && dy == 0) {
+            return false;
+        }
+
+        translateImage(dx, dy);
+        mImageView.setImageMatrix(mImageMatrix);
+        mCropOverlayView.setBounds(mImagePoints, width, height);
+        mCropOverlayView.invalidate();
+        return true;
+    }
+
+    /**
+     * Zoom the image by the given factor keeping the given view point in place, clamped to {@link
+     * #mMaxZoom} and to keep the crop window on the image. A crop window that doesn't fit on the
+     * image at the max zoom is shrunk to the image instead.<br>
+     * Only the current image matrix is scaled, the zoom offset is updated so the next full {@link
+     * #applyImageMatrix(float, float, boolean, boolean)} results in the same matrix.
+     */
+    private void zoomImage(float scaleFactor, float focusX, float focusY) {
+        if (mBitmap == null) {
+            return;
+        }
+        int width = getWidth();
+        int height = getHeight();
+        RectF cropRect = mCropOverlayView.getCropWindowRect();
+
+        // the min zoom that keeps the crop window on the image, the max zoom is applied last so
+        // it always wins
+        float containZoom = mZoom * Math.max(
+                cropRect.width() / RectUtils.getRectWidth(mImagePoints),
+                cropRect.height() / RectUtils.getRectHeight(mImagePoints));
+        float newZoom = Math.min(mMaxZoom, Math.max(1, Math.max(containZoom, mZoom * scaleFactor)));
+        boolean capCropWindow = containZoom > newZoom;
+        float factor = newZoom / mZoom;
+        if (factor == 1) {
+            if (capCropWindow) {
+                mCropOverlayView.fixCurrentCropWindowRect();
+                mCropOverlayView.invalidate();
+            }
+            return;
+        }
+
+        // the full matrix scales by the zoom around the view center before the offset translation
+        float scaleX = mFlipHorizontally ? -mZoom : mZoom;
+        float scaleY = mFlipVertically ? -mZoom : mZoom;
+        mZoomOffsetX += (1 - factor) * (focusX - width / 2f) / (factor * scaleX);
+        mZoomOffsetY += (1 - factor) * (focusY - height / 2f) / (factor * scaleY);
+        mZoom = newZoom;
+
+        mImageMatrix.postScale(factor, factor, focusX, focusY);
+        mImageVersion++;
+        for (int i = 0; i < mImagePoints.length; i += 2) {
+            mImagePoints[i] = focusX + (mImagePoints[i] - focusX) * factor;
+            mImagePoints[i + 1] = focusY + (mImagePoints[i + 1] - focusY) * factor;
+        }
+
+        // keep the image covering the view, or inside the view when smaller, and the crop window
+        translateImage(getZoomCorrection(RectUtils.getRectLeft(mImagePoints),
+                RectUtils.getRectRight(mImagePoints), width, cropRect.left, cropRect.right),
+                getZoomCorrection(RectUtils.getRectTop(mImagePoints),
+                        RectUtils.getRectBottom(mImagePoints), height, cropRect.top,
+                        cropRect.bottom));
+
+        mImageView.setImageMatrix(mImageMatrix);
+        mCropOverlayView.setBounds(mImagePoints, width, height);
+        if (capCropWindow) {
+            mCropOverlayView.fixCurrentCropWindowRect();
+        }
+        mCropOverlayView.invalidate();
+    }
+
+    /**
+     * Get the distance to move the image on a single axis after a zoom, so it covers the view if
+     * larger than it, stays inside the view otherwise, and always contains the crop window.
+     */
+    private static float getZoomCorrection(float min, float max, float size, float cropMin,
+            float cropMax) {
+        float low;
+        float high;
+        if (max - min > size) {
+            low = size - max;
+            high = -min;
+        } else {
+            low = Math.max(-min, cropMax - max);
+            high = Math.min(size - max, cropMin - min);
+        }
+        return low > high ? (low + high) / 2 : Math.max(low, Math.min(high, 0));
+    }
+
+    /**
+     * Translate the current image matrix and image points, keeping the zoom offset in sync.
+     */
+    private void translateImage(float dx, float dy) {
+        mImageMatrix.postTranslate(dx, dy);
+        mImageVersion++;
+        for (int i = 0; i < mImagePoints.length; i += 2) {
+            mImagePoints[i] += dx;
+            mImagePoints[i + 1] += dy;
+        }
+        mZoomOffsetX += dx / (mFlipHorizontally ? -mZoom : mZoom);
+        mZoomOffsetY += dy / (mFlipVertically ? -mZoom : mZoom);
+    }
+
     /**
      * Adjust the given image rectangle by image transformation matrix to know the final rectangle
      * of the image.<br>
@@ -1047,6 +2177,22 @@ public class CropImageView extends FrameLayout {
         mImageMatrix.mapPoints(mImagePoints);
     }
 
+    /**
+     * The width of the source image the crop rectangle is relative to.
+     */
+    private int getSourceWidth() {
+        return mPixelBuffer != null ? mPixelBuffer.getWidth()
+                : (int) (mBitmap.getWidth() * mLoadedSampleSize);
+    }
+
+    /**
+     * The height of the source image the crop rectangle is relative to.
+     */
+    private int getSourceHeight() {
+        return mPixelBuffer != null ? mPixelBuffer.getHeight()
+                : (int) (mBitmap.getHeight() * mLoadedSampleSize);
+    }
+
     /**
      * Determines the specs for the onMeasure function. Calculates the width or height
      * depending on the mode.
@@ -1086,9 +2232,19 @@ public class CropImageView extends FrameLayout {
 
     /**
      * Update the scale factor between the actual image bitmap and the shown image.<br>
+     * Skipped if the image and view size didn't change since the last update.
      */
     private void updateImageBounds(boolean clear) {
+        int width = getWidth();
+        int height = getHeight();
         if (mBitmap != null && !clear) {
+            if (mImageBoundsVersion == mImageVersion && mImageBoundsWidth == width
+                    && mImageBoundsHeight == height) {
+                return;
+            }
+            mImageBoundsVersion = mImageVersion;
+            mImageBoundsWidth = width;
+            mImageBoundsHeight = height;
 
             // Get the scale factor between the actual Bitmap dimensions and the displayed
             // dimensions for width/height.
@@ -1097,12 +2253,65 @@ public class CropImageView extends FrameLayout {
             float scaleFactorHeight =
                     mBitmap.getHeight() * mLoadedSampleSize / RectUtils.getRectHeight(
                             mImagePoints);
-            mCropOverlayView.setCropWindowLimits(getWidth(), getHeight(), scaleFactorWidth,
+            mCropOverlayView.setCropWindowLimits(width, height, scaleFactorWidth,
                     scaleFactorHeight);
+        } else {
+            mImageBoundsVersion = -1;
         }
 
         // set the bitmap rectangle and update the crop window after scale factor is set
-        mCropOverlayView.setBounds(clear ? null : mImagePoints, getWidth(), getHeight());
+        mCropOverlayView.setBounds(clear ? null : mImagePoints, width, height);
+    }
+
+    /**
+     * Detects the tilt of an image in row steps on a background thread, straightens the image on
+     * the main thread unless cancelled or the image was replaced meanwhile.
+     */
+    private final class StraightenTask implements Runnable {
+
+        /**
+         * The rows voted between checks for cancellation.
+         */
+        private static final int STEP_ROWS = 16;
+
+        private final Bitmap mSourceBitmap;
+
+        private final StraightenDetector mDetector;
+
+        private volatile boolean mCancelled;
+
+        StraightenTask(Bitmap sourceBitmap, StraightenDetector detector) {
+            mSourceBitmap = sourceBitmap;
+            mDetector = detector;
+        }
+
+        void cancel() {
+            mCancelled = true;
+        }
+
+        @Override
+        public void run() {
+            boolean done = false;
+            while (!mCancelled && !done) {
+                done = mDetector.step(STEP_ROWS);
+            }
+            if (mCancelled) {
+                return;
+            }
+            final float angle = mDetector.getAngle();
+            post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mCancelled && mStraightenTask == StraightenTask.this
+                            && mBitmap == mSourceBitmap) {
+                        mStraightenTask = null;
+                        if (!Float.isNaN(angle)) {
+                            applyStraighten(angle);
+                        }
+                    }
+                }
+            });
+        }
     }
 
     /**
@@ -1117,4 +2326,17 @@ public class CropImageView extends FrameLayout {
          */
         void onCropOverlayReleased(Rect rect);
     }
+
+    /**
+     * Interface definition for a callback to be invoked with the metrics of a load or crop.
+     */
+    public interface OnCropMetricsListener {
+
+        /**
+         * Called when a load or crop is done, on the thread it ran on.
+         *
+         * @param metrics the time and memory spent in each stage
+         */
+        void onCropMetrics(CropMetrics metrics);
+    }
 }
@@ -0,0 +1,342 @@
+package com.thecarousell.cropimageview;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Debug;
+import android.os.Trace;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Timings and allocations of a single run of the load or crop pipeline, split by {@link Stage}.
+ * <br>
+ * Reported to {@link CropImageView.OnCropMetricsListener} on the thread that ran the pipeline.
+ * Nothing is measured when no listener is set and tracing is disabled.
+ */
+public final class CropMetrics {
+
+    /**
+     * The stages of the load and crop pipelines.
+     */
+    public enum Stage {
+
+        /**
+         * Reading the source header for its dimensions.
+         */
+        BOUNDS_READ,
+
+        /**
+         * Reading the EXIF orientation of the source.
+         */
+        EXIF_READ,
+
+        /**
+         * Decoding the source regions into pixels.
+         */
+        REGION_DECODE,
+
+        /**
+         * Copying the pixels under the crop window out of the loaded bitmap, a pixel buffer is
+         * sampled in place and skips this stage.
+         */
+        REGION_READ,
+
+        /**
+         * The single pass rotate, flip, crop, resample and mask of the cropped pixels, see {@link
+         * CropPixelTransform}.
+         */
+        TRANSFORM,
+
+        /**
+         * Compressing the cropped image, excluding the time spent in {@link #WRITE}.
+         */
+        ENCODE,
+
+        /**
+         * Writing the compressed bytes to the output uri.
+         */
+        WRITE
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+
+    /**
+     * If to emit {@link Trace} sections for the stages.
+     */
+    private static volatile boolean sTraceEnabled;
+
+    private final CropImageView.OnCropMetricsListener mListener;
+
+    private final boolean mTraceEnabled;
+
+    private final long[] mWallTimes = new long[STAGES.length];
+
+    private final long[] mCpuTimes = new long[STAGES.length];
+
+    private final long[] mAllocatedBytes = new long[STAGES.length];
+
+    /**
+     * The stage currently measured, null if none.
+     */
+    private Stage mStage;
+
+    /**
+     * The stage paused by a stage nested in it (e.g. {@link Stage#WRITE} in {@link
+     * Stage#ENCODE}).
+     */
+    private Stage mOuterStage;
+
+    private long mStageWallStart;
+
+    private long mStageCpuStart;
+
+    private int mSourceWidth;
+
+    private int mSourceHeight;
+
+    private float mLoadedSampleSize = 1;
+
+    private int mOutputWidth;
+
+    private int mOutputHeight;
+
+    private CropMetrics(CropImageView.OnCropMetricsListener listener, boolean traceEnabled) {
+        mListener = listener;
+        mTraceEnabled = traceEnabled;
+    }
+
+    /**
+     * Set if to emit {@link Trace} sections for every pipeline stage (API 18+), off by default.
+     * <br>
+     * Applies to all pipelines started afterwards, even if no metrics listener is set.
+     */
+    public static void setTraceEnabled(boolean traceEnabled) {
+        sTraceEnabled = traceEnabled;
+    }
+
+    /**
+     * Create the metrics for a new pipeline run.
+     *
+     * @return the metrics to record into, null if there is nothing to measure for
+     */
+    static CropMetrics create(CropImageView.OnCropMetricsListener listener) {
+        boolean traceEnabled = sTraceEnabled
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+        return listener != null || traceEnabled ? new CropMetrics(listener, traceEnabled) : null;
+    }
+
+    /**
+     * The wall time spent in the given stage, 0 if the stage was not part of the pipeline.
+     */
+    public long getWallTimeNanos(Stage stage) {
+        return mWallTimes[stage.ordinal()];
+    }
+
+    /**
+     * The CPU time the pipeline thread spent in the given stage.<br>
+     * Work done by parallel strip threads is only included in {@link #getWallTimeNanos(Stage)}.
+     */
+    public long getCpuTimeNanos(Stage stage) {
+        return mCpuTimes[stage.ordinal()];
+    }
+
+    /**
+     * The bytes allocated for pixel data (arrays and bitmaps) by the given stage.
+     */
+    public long getAllocatedBytes(Stage stage) {
+        return mAllocatedBytes[stage.ordinal()];
+    }
+
+    /**
+     * The wall time of all the stages.
+     */
+    public long getTotalWallTimeNanos() {
+        long total = 0;
+        for (long time : mWallTimes) {
+            total += time;
+        }
+        return total;
+    }
+
+    /**
+     * The width of the source the pipeline read from.
+     */
+    public int getSourceWidth() {
+        return mSourceWidth;
+    }
+
+    /**
+     * The height of the source the pipeline read from.
+     */
+    public int getSourceHeight() {
+        return mSourceHeight;
+    }
+
+    /**
+     * The sample size the source was loaded by, 1 for a full resolution source.
+     */
+    public float getLoadedSampleSize() {
+        return mLoadedSampleSize;
+    }
+
+    /**
+     * The width of the pipeline result.
+     */
+    public int getOutputWidth() {
+        return mOutputWidth;
+    }
+
+    /**
+     * The height of the pipeline result.
+     */
+    public int getOutputHeight() {
+        return mOutputHeight;
+    }
+
+    void setSource(int width, int height, float loadedSampleSize) {
+        mSourceWidth = width;
+        mSourceHeight = height;
+        mLoadedSampleSize = loadedSampleSize;
+    }
+
+    void setOutput(int width, int height) {
+        mOutputWidth = width;
+        mOutputHeight = height;
+    }
+
+    /**
+     * Start measuring the given stage.<br>
+     * A stage started while another is measured pauses the other until it ends.
+     */
+    void begin(Stage stage) {
+        if (mStage != null) {
+            accumulate();
+            mOuterStage = mStage;
+        }
+        if (mTraceEnabled) {
+            beginTraceSection(stage);
+        }
+        mStage = stage;
+        mStageWallStart = System.nanoTime();
+        mStageCpuStart = Debug.threadCpuTimeNanos();
+    }
+
+    /**
+     * Stop measuring the current stage, resuming the stage it was nested in.
+     */
+    void end() {
+        if (mStage == null) {
+            return;
+        }
+        accumulate();
+        if (mTraceEnabled) {
+            endTraceSection();
+        }
+        mStage = mOuterStage;
+        mOuterStage = null;
+        mStageWallStart = System.nanoTime();
+        mStageCpuStart = Debug.threadCpuTimeNanos();
+    }
+
+    /**
+     * Add to the bytes allocated by the current stage.
+     */
+    void addAllocatedBytes(long bytes) {
+        if (mStage != null) {
+            mAllocatedBytes[mStage.ordinal()] += bytes;
+        }
+    }
+
+    /**
+     * Wrap the given output stream so the time spent writing to it is measured as {@link
+     * Stage#WRITE}.
+     */
+    OutputStream wrapOutput(OutputStream stream) {
+        return new FilterOutputStream(stream) {
+            @Override
+            public void write(int b) throws IOException {
+                begin(Stage.WRITE);
+                try {
+                    out.write(b);
+                } finally {
+                    end();
+                }
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                begin(Stage.WRITE);
+                try {
+                    out.write(b, off, len);
+                } finally {
+                    end();
+                }
+            }
+
+            @Override
+            public void flush() throws IOException {
+                begin(Stage.WRITE);
+                try {
+                    out.flush();
+                } finally {
+                    end();
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                begin(Stage.WRITE);
+                try {
+                    out.close();
+                } finally {
+                    end();
+                }
+            }
+        };
+    }
+
+    /**
+     * Report the metrics to the listener, if set, ending the stage still measured.
+     */
+    void dispatch() {
+        endStages();
+        if (mListener != null) {
+            mListener.onCropMetrics(this);
+        }
+    }
+
+    /**
+     * End the stages still measured without reporting, for a pipeline that failed. This also
+     * closes their trace sections.
+     */
+    void abort() {
+        endStages();
+    }
+
+    private void endStages() {
+        while (mStage != null) {
+            end();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void beginTraceSection(Stage stage) {
+        Trace.beginSection("Crop:" + stage.name());
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
+    private static void endTraceSection() {
+        Trace.endSection();
+    }
+
+    private void accumulate() {
+        int index = mStage.ordinal();
+        mWallTimes[index] += System.nanoTime() - mStageWallStart;
+        long cpuTime = Debug.threadCpuTimeNanos();
+        if (cpuTime >= 0 && mStageCpuStart >= 0) {
+            mCpuTimes[index] += cpuTime - mStageCpuStart;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.thecarousell.cropimageview;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.net.Uri;
+
+/**
+ * A single output of {@link CropImage#cropRegions(android.content.Context, Uri,
+ * java.util.List)}: the region to cut out of the source and how to save it.<br>
+ * Initialized with the same default values as {@link CropImageOptions}.
+ */
+public class CropOutput {
+
+    /**
+     * The region to crop relative to the source image, before EXIF rotation.
+     */
+    public final Rect sourceRect;
+
+    /**
+     * The Android Uri to save the cropped image to.
+     */
+    public final Uri outputUri;
+
+    /**
+     * The compression format to use when writing the image.
+     */
+    public Bitmap.CompressFormat outputCompressFormat;
+
+    /**
+     * The quality (if applicable) to use when writing the image (0 - 100).
+     */
+    public int outputCompressQuality;
+
+    /**
+     * The width to resize the cropped image to (see {@link CropImageOptions#outputRequestWidth}).
+     */
+    public int outputRequestWidth;
+
+    /**
+     * The height to resize the cropped image to (see {@link CropImageOptions#outputRequestHeight}).
+     */
+    public int outputRequestHeight;
+
+    /**
+     * The shape of the crop, pixels outside of an oval are transparent.
+     */
+    public CropImage.CropShape cropShape;
+
+    /**
+     * @param sourceRect the region to crop relative to the source image, before EXIF rotation
+     * @param outputUri  the Android Uri to save the cropped image to
+     */
+    public CropOutput(Rect sourceRect, Uri outputUri) {
+        this.sourceRect = new Rect(sourceRect);
+        this.outputUri = outputUri;
+        outputCompressFormat = Bitmap.CompressFormat.JPEG;
+        outputCompressQuality = 90;
+        outputRequestWidth = 0;
+        outputRequestHeight = 0;
+        cropShape = CropImage.CropShape.RECTANGLE;
+    }
+}
@@ -12,9 +12,11 @@ import android.os.Build;
 import android.util.AttributeSet;
 import android.util.Log;
 import android.view.MotionEvent;
+import android.view.PointerIcon;
 import android.view.ScaleGestureDetector;
 import android.view.View;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 
 /**
@@ -42,6 +44,36 @@ public class CropOverlayView extends View {
      */
     private CropWindowChangeListener mCropWindowChangeListener;
 
+    /**
+     * Frame time histograms to record the touch interactions into, null if disabled.
+     */
+    private InteractionMetrics mInteractionMetrics;
+
+    /**
+     * The recording the touch events are appended to, null if not recording.
+     */
+    private GestureRecording mGestureRecording;
+
+    /**
+     * Handles gestures that start on the image outside of the crop window, null to ignore them.
+     */
+    private ImageGestureHandler mImageGestureHandler;
+
+    /**
+     * If the current touch gesture is handled by {@link #mImageGestureHandler}.
+     */
+    private boolean mImageGesture;
+
+    /**
+     * Extrapolates the pointer of crop window drags to hide touch latency, null if disabled.
+     */
+    private TouchPredictor mTouchPredictor;
+
+    /**
+     * Reusing array for the predicted pointer position.
+     */
+    private final float[] mPredictedPoint = new float[2];
+
     /**
      * Rectangle used for drawing
      */
@@ -77,11 +109,21 @@ public class CropOverlayView extends View {
      */
     private final float[] mBoundsPoints = new float[8];
 
+    /**
+     * The axis-aligned bounding rectangle of {@link #mBoundsPoints}, updated with them.
+     */
+    private final RectF mBoundsRect = new RectF();
+
     /**
      * The bounding box around the Bitmap that we are cropping.
      */
     private final RectF mCalcBounds = new RectF();
 
+    /**
+     * Reusing rect instance for the crop window calculated by {@link #initCropWindow()}.
+     */
+    private final RectF mInitRect = new RectF();
+
     /**
      * The bounding image view width used to know the crop overlay is at view edges.
      */
@@ -124,6 +166,11 @@ public class CropOverlayView extends View {
      */
     private CropWindowMoveHandler mMoveHandler;
 
+    /**
+     * The handle under a hovering mouse or stylus pointer; null if none.
+     */
+    private CropWindowMoveHandler.Type mHoverType;
+
     /**
      * Flag indicating if the crop area should always be a certain aspect ratio (indicated by
      * mTargetAspectRatio).
@@ -161,6 +208,11 @@ public class CropOverlayView extends View {
      */
     private final Rect mInitialCropWindowRect = new Rect();
 
+    /**
+     * The crop window suggested on the image content, used when no initial rectangle is set.
+     */
+    private final Rect mSuggestedCropWindowRect = new Rect();
+
     /**
      * Whether the Crop View has been initialized for the first time
      */
@@ -171,6 +223,86 @@ public class CropOverlayView extends View {
      */
     private Integer mOriginalLayerType;
 
+    /**
+     * All the crop windows when there is more than one, empty for a single crop window.<br>
+     * The active window is edited through {@link #mCropWindowHandler} and the aspect ratio
+     * fields, its entry is only updated when another window is activated.
+     */
+    private final ArrayList<CropRegion> mRegions = new ArrayList<>();
+
+    /**
+     * The index of the crop window edited through {@link #mCropWindowHandler}.
+     */
+    private int mActiveRegion;
+
+    /**
+     * The view rectangles (left, top, right, bottom) of the inactive crop windows, see {@link
+     * #updateRegionRects()}.
+     */
+    private float[] mRegionRects = new float[0];
+
+    /**
+     * Finds the inactive crop window under a touch.
+     */
+    private final CropRegionIndex mRegionIndex = new CropRegionIndex();
+
+    /**
+     * If {@link #mRegionRects} and {@link #mRegionIndex} must be updated before use.
+     */
+    private boolean mRegionsChanged;
+
+    /**
+     * The strong edges in the image content the crop window snaps to, null for none.
+     */
+    private ContentEdges mContentEdges;
+
+    /**
+     * {@link #mContentEdges} vertical/horizontal edges in view coordinates, ascending, see {@link
+     * #updateContentEdges()}.
+     */
+    private float[] mContentEdgesX;
+
+    private float[] mContentEdgesY;
+
+    /**
+     * If {@link #mContentEdgesX} and {@link #mContentEdgesY} must be updated before use.
+     */
+    private boolean mContentEdgesChanged;
+
+    /**
+     * The corners of the {@link CropImage.CropShape#QUAD} crop window as fractions of the image
+     * (u0,v0,u1,v1,u2,v2,u3,v3), so it follows the image when zoomed/moved.
+     */
+    private final float[] mQuadImagePoints = new float[8];
+
+    /**
+     * If {@link #mQuadImagePoints} is set, otherwise the quad starts from the crop window rect.
+     */
+    private boolean mQuadValid;
+
+    /**
+     * The corners of the quad crop window in the view ordered top-left, top-right, bottom-right,
+     * bottom-left, see {@link #updateQuad()}.
+     */
+    private final float[] mQuadPoints = new float[8];
+
+    /**
+     * If {@link #mQuadPoints} must be updated before use.
+     */
+    private boolean mQuadChanged;
+
+    /**
+     * The index of the quad corner moved by touch, 4 for the whole quad, -1 for none.
+     */
+    private int mQuadCorner = -1;
+
+    /**
+     * The last touch position of a quad move.
+     */
+    private float mQuadTouchX;
+
+    private float mQuadTouchY;
+
     public CropOverlayView(Context context) {
         this(context, null);
     }
@@ -186,6 +318,47 @@ public class CropOverlayView extends View {
         mCropWindowChangeListener = listener;
     }
 
+    /**
+     * Set the handler of gestures that start on the image outside of the crop window.
+     */
+    void setImageGestureHandler(ImageGestureHandler imageGestureHandler) {
+        mImageGestureHandler = imageGestureHandler;
+    }
+
+    /**
+     * Set how far ahead to predict the pointer position of crop window drags, 0 to disable.
+     */
+    void setTouchPredictionHorizon(long horizon) {
+        if (horizon <= 0) {
+            mTouchPredictor = null;
+        } else if (mTouchPredictor == null) {
+            mTouchPredictor = new TouchPredictor(horizon);
+        } else {
+            mTouchPredictor.setHorizon(horizon);
+        }
+    }
+
+    /**
+     * The errors of the pointer predictions in hundredths of a pixel, null if disabled.
+     */
+    LatencyHistogram getTouchPredictionError() {
+        return mTouchPredictor != null ? mTouchPredictor.getError() : null;
+    }
+
+    /**
+     * Set the frame time histograms to record the touch interactions into, null to disable.
+     */
+    void setInteractionMetrics(InteractionMetrics interactionMetrics) {
+        mInteractionMetrics = interactionMetrics;
+    }
+
+    /**
+     * Set the recording to append the touch events to, null to stop recording.
+     */
+    void setGestureRecording(GestureRecording gestureRecording) {
+        mGestureRecording = gestureRecording;
+    }
+
     /**
      * Get the left/top/right/bottom coordinates of the crop window.
      */
@@ -209,6 +382,131 @@ public class CropOverlayView extends View {
         mCropWindowHandler.setRect(rect);
     }
 
+    /**
+     * Add a crop window with its own aspect ratio, the crop window shown until now becomes the
+     * first of multiple crop windows.<br>
+     * Only the active crop window is moved/resized and returned by {@link #getCropWindowRect()},
+     * pressing another crop window activates it. The windows are kept relative to the image so they
+     * follow zoom, pan and rotation.
+     *
+     * @param imageRect the window rectangle as fractions (0-1) of the image width/height, before
+     *                  rotation and flip
+     * @return the index of the new crop window, -1 if there is no image to add it on
+     */
+    public int addCropWindow(RectF imageRect, boolean fixAspectRatio, int aspectRatioX,
+            int aspectRatioY) {
+        if (aspectRatioX <= 0 || aspectRatioY <= 0) {
+            throw new IllegalArgumentException(
+                    "Cannot set aspect ratio value to a number less than or equal to 0.");
+        }
+        if (!initializedCropWindow) {
+            return -1;
+        }
+        CropRegion region = new CropRegion();
+        RectF rect = new RectF();
+        mapImageRectToView(imageRect, rect);
+        fixCropWindowRectByRules(rect, fixAspectRatio, (float) aspectRatioX / aspectRatioY);
+        if (!mapViewRectToImage(rect, region.imageCorners)) {
+            return -1;
+        }
+        region.fixAspectRatio = fixAspectRatio;
+        region.aspectRatioX = aspectRatioX;
+        region.aspectRatioY = aspectRatioY;
+
+        if (mRegions.isEmpty()) {
+            mRegions.add(new CropRegion());
+            mActiveRegion = 0;
+            updateLayerType();
+        }
+        mRegions.add(region);
+        mRegionsChanged = true;
+        invalidate();
+        return mRegions.size() - 1;
+    }
+
+    /**
+     * Remove the crop window at the given index, if it is the active one the previous crop window
+     * is activated.
+     */
+    public void removeCropWindow(int index) {
+        if (index < 0 || index >= mRegions.size()) {
+            throw new IllegalArgumentException("Cannot remove crop window " + index + " of "
+                    + getCropWindowCount());
+        }
+        if (index == mActiveRegion) {
+            activateCropWindow(index > 0 ? index - 1 : 1);
+            callOnCropWindowChanged(false);
+        }
+        mRegions.remove(index);
+        if (mActiveRegion > index) {
+            mActiveRegion--;
+        }
+        if (mRegions.size() == 1) {
+            mRegions.clear();
+            mActiveRegion = 0;
+            updateLayerType();
+        }
+        mRegionsChanged = true;
+        invalidate();
+    }
+
+    /**
+     * Remove all the crop windows but the active one.
+     */
+    public void clearCropWindows() {
+        if (!mRegions.isEmpty()) {
+            mRegions.clear();
+            mActiveRegion = 0;
+            updateLayerType();
+            invalidate();
+        }
+    }
+
+    /**
+     * The number of crop windows, at least 1.
+     */
+    public int getCropWindowCount() {
+        return Math.max(1, mRegions.size());
+    }
+
+    /**
+     * The index of the crop window that is moved/resized by touch.
+     */
+    public int getActiveCropWindow() {
+        return mActiveRegion;
+    }
+
+    /**
+     * Make the crop window at the given index the one that is moved/resized by touch.
+     */
+    public void setActiveCropWindow(int index) {
+        if (index < 0 || index >= getCropWindowCount()) {
+            throw new IllegalArgumentException("Cannot activate crop window " + index + " of "
+                    + getCropWindowCount());
+        }
+        if (index != mActiveRegion) {
+            activateCropWindow(index);
+            invalidate();
+            callOnCropWindowChanged(false);
+        }
+    }
+
+    /**
+     * Get the left/top/right/bottom coordinates of the crop window at the given index.
+     */
+    public RectF getCropWindowRect(int index) {
+        if (index < 0 || index >= getCropWindowCount()) {
+            throw new IllegalArgumentException("No crop window " + index + " of "
+                    + getCropWindowCount());
+        }
+        if (index == mActiveRegion) {
+            return getCropWindowRect();
+        }
+        RectF rect = new RectF();
+        mapImageCornersToView(mRegions.get(index).imageCorners, rect);
+        return rect;
+    }
+
     /**
      * Informs the CropOverlayView of the image's position relative to the
      * ImageView. This is necessary to call in order to draw the crop window.
@@ -224,8 +522,14 @@ public class CropOverlayView extends View {
             } else {
                 System.arraycopy(boundsPoints, 0, mBoundsPoints, 0, boundsPoints.length);
             }
+            mBoundsRect.set(RectUtils.getRectLeft(mBoundsPoints),
+                    RectUtils.getRectTop(mBoundsPoints), RectUtils.getRectRight(mBoundsPoints),
+                    RectUtils.getRectBottom(mBoundsPoints));
             mViewWidth = viewWidth;
             mViewHeight = viewHeight;
+            mRegionsChanged = true;
+            mContentEdgesChanged = true;
+            mQuadChanged = true;
             RectF cropRect = mCropWindowHandler.getRect();
             if (cropRect.width() == 0 || cropRect.height() == 0) {
                 initCropWindow();
@@ -237,6 +541,7 @@ public class CropOverlayView extends View {
      * Resets the crop overlay view.
      */
     public void resetCropOverlayView() {
+        mQuadValid = false;
         if (initializedCropWindow) {
             setCropWindowRect(RectUtils.EMPTY_RECT_F);
             initCropWindow();
@@ -257,22 +562,29 @@ public class CropOverlayView extends View {
     public void setCropShape(CropImage.CropShape cropShape) {
         if (mCropShape != cropShape) {
             mCropShape = cropShape;
-            if (Build.VERSION.SDK_INT <= 17) {
-                if (mCropShape == CropImage.CropShape.OVAL) {
+            mQuadValid = false;
+            updateLayerType();
+            invalidate();
+        }
+    }
+
+    /**
+     * Oval, quad and multiple crop windows are drawn using path clipping that is not hardware
+     * accelerated up to API 17, use a software layer for them.
+     */
+    private void updateLayerType() {
+        if (Build.VERSION.SDK_INT <= 17) {
+            if (mCropShape != CropImage.CropShape.RECTANGLE || !mRegions.isEmpty()) {
+                if (mOriginalLayerType == null && getLayerType() != View.LAYER_TYPE_SOFTWARE) {
+                    // TURN off hardware acceleration
                     mOriginalLayerType = getLayerType();
-                    if (mOriginalLayerType != View.LAYER_TYPE_SOFTWARE) {
-                        // TURN off hardware acceleration
-                        setLayerType(View.LAYER_TYPE_SOFTWARE, null);
-                    } else {
-                        mOriginalLayerType = null;
-                    }
-                } else if (mOriginalLayerType != null) {
-                    // return hardware acceleration back
-                    setLayerType(mOriginalLayerType, null);
-                    mOriginalLayerType = null;
+                    setLayerType(View.LAYER_TYPE_SOFTWARE, null);
                 }
+            } else if (mOriginalLayerType != null) {
+                // return hardware acceleration back
+                setLayerType(mOriginalLayerType, null);
+                mOriginalLayerType = null;
             }
-            invalidate();
         }
     }
 
@@ -430,11 +742,19 @@ public class CropOverlayView extends View {
         return mInitialCropWindowRect;
     }
 
+    /**
+     * The initial crop window padding from image borders.
+     */
+    float getInitialCropWindowPaddingRatio() {
+        return mInitialCropWindowPaddingRatio;
+    }
+
     /**
      * Set crop window initial rectangle to be used instead of default.
      */
     public void setInitialCropWindowRect(Rect rect) {
         mInitialCropWindowRect.set(rect != null ? rect : RectUtils.EMPTY_RECT);
+        mQuadValid = false;
         if (initializedCropWindow) {
             initCropWindow();
             invalidate();
@@ -442,10 +762,20 @@ public class CropOverlayView extends View {
         }
     }
 
+    /**
+     * Set the crop window suggested on the image content for the next crop window initialization,
+     * null to clear it. An initial rectangle set by {@link #setInitialCropWindowRect(Rect)} takes
+     * precedence.
+     */
+    void setSuggestedCropWindowRect(Rect rect) {
+        mSuggestedCropWindowRect.set(rect != null ? rect : RectUtils.EMPTY_RECT);
+    }
+
     /**
      * Reset crop window to initial rectangle.
      */
     public void resetCropWindowRect() {
+        mQuadValid = false;
         if (initializedCropWindow) {
             initCropWindow();
             invalidate();
@@ -497,16 +827,17 @@ public class CropOverlayView extends View {
      */
     private void initCropWindow() {
 
-        float leftLimit = Math.max(RectUtils.getRectLeft(mBoundsPoints), 0);
-        float topLimit = Math.max(RectUtils.getRectTop(mBoundsPoints), 0);
-        float rightLimit = Math.min(RectUtils.getRectRight(mBoundsPoints), getWidth());
-        float bottomLimit = Math.min(RectUtils.getRectBottom(mBoundsPoints), getHeight());
+        float leftLimit = Math.max(mBoundsRect.left, 0);
+        float topLimit = Math.max(mBoundsRect.top, 0);
+        float rightLimit = Math.min(mBoundsRect.right, getWidth());
+        float bottomLimit = Math.min(mBoundsRect.bottom, getHeight());
 
         if (rightLimit <= leftLimit || bottomLimit <= topLimit) {
             return;
         }
 
-        RectF rect = new RectF();
+        RectF rect = mInitRect;
+        rect.setEmpty();
 
         // Tells the attribute functions the crop window has already been initialized
         initializedCropWindow = true;
@@ -514,16 +845,17 @@ public class CropOverlayView extends View {
         float horizontalPadding = mInitialCropWindowPaddingRatio * (rightLimit - leftLimit);
         float verticalPadding = mInitialCropWindowPaddingRatio * (bottomLimit - topLimit);
 
-        if (mInitialCropWindowRect.width() > 0 && mInitialCropWindowRect.height() > 0) {
+        // the rectangle set by the user wins over the one suggested on the content
+        Rect initialRect = !mInitialCropWindowRect.isEmpty()
+                ? mInitialCropWindowRect : mSuggestedCropWindowRect;
+        if (initialRect.width() > 0 && initialRect.height() > 0) {
             // Get crop window position relative to the displayed image.
-            rect.left = leftLimit
-                    + mInitialCropWindowRect.left / mCropWindowHandler.getScaleFactorWidth();
-            rect.top = topLimit
-                    + mInitialCropWindowRect.top / mCropWindowHandler.getScaleFactorHeight();
+            rect.left = leftLimit + initialRect.left / mCropWindowHandler.getScaleFactorWidth();
+            rect.top = topLimit + initialRect.top / mCropWindowHandler.getScaleFactorHeight();
             rect.right = rect.left
-                    + mInitialCropWindowRect.width() / mCropWindowHandler.getScaleFactorWidth();
+                    + initialRect.width() / mCropWindowHandler.getScaleFactorWidth();
             rect.bottom = rect.top
-                    + mInitialCropWindowRect.height() / mCropWindowHandler.getScaleFactorHeight();
+                    + initialRect.height() / mCropWindowHandler.getScaleFactorHeight();
 
             // Correct for floating point errors. Crop rect boundaries should not exceed the
             // source Bitmap bounds.
@@ -587,6 +919,15 @@ public class CropOverlayView extends View {
      * Fix the given rect to fit into bitmap rect and follow min, max and aspect ratio rules.
      */
     private void fixCropWindowRectByRules(RectF rect) {
+        fixCropWindowRectByRules(rect, mFixAspectRatio, mTargetAspectRatio);
+    }
+
+    /**
+     * Fix the given rect to fit into bitmap rect and follow min, max and the given aspect ratio
+     * rules.
+     */
+    private void fixCropWindowRectByRules(RectF rect, boolean fixAspectRatio,
+            float targetAspectRatio) {
         if (rect.width() < mCropWindowHandler.getMinCropWidth()) {
             float adj = (mCropWindowHandler.getMinCropWidth() - rect.width()) / 2;
             rect.left -= adj;
@@ -627,13 +968,13 @@ public class CropOverlayView extends View {
                 rect.bottom = bottomLimit;
             }
         }
-        if (mFixAspectRatio && Math.abs(rect.width() - rect.height() * mTargetAspectRatio) > 0.1) {
-            if (rect.width() > rect.height() * mTargetAspectRatio) {
-                float adj = Math.abs(rect.height() * mTargetAspectRatio - rect.width()) / 2;
+        if (fixAspectRatio && Math.abs(rect.width() - rect.height() * targetAspectRatio) > 0.1) {
+            if (rect.width() > rect.height() * targetAspectRatio) {
+                float adj = Math.abs(rect.height() * targetAspectRatio - rect.width()) / 2;
                 rect.left += adj;
                 rect.right -= adj;
             } else {
-                float adj = Math.abs(rect.width() / mTargetAspectRatio - rect.height()) / 2;
+                float adj = Math.abs(rect.width() / targetAspectRatio - rect.height()) / 2;
                 rect.top += adj;
                 rect.bottom -= adj;
             }
@@ -649,22 +990,107 @@ public class CropOverlayView extends View {
 
         super.onDraw(canvas);
 
+        if (mCropShape == CropImage.CropShape.QUAD) {
+            drawQuad(canvas);
+            if (mInteractionMetrics != null) {
+                mInteractionMetrics.onDrawn();
+            }
+            return;
+        }
+
         // Draw translucent background for the cropped area.
-        drawBackground(canvas);
+        if (mRegions.isEmpty()) {
+            drawBackground(canvas);
+        } else {
+            updateRegionRects();
+            drawRegionsBackground(canvas);
+        }
 
         if (mCropWindowHandler.showGuidelines()) {
             // Determines whether guidelines should be drawn or not
             if (mGuidelines == CropImage.Guidelines.ON) {
                 drawGuidelines(canvas);
-            } else if (mGuidelines == CropImage.Guidelines.ON_TOUCH && mMoveHandler != null) {
-                // Draw only when resizing
+            } else if (mGuidelines == CropImage.Guidelines.ON_TOUCH
+                    && (mMoveHandler != null || mHoverType != null)) {
+                // Draw only when resizing or hovering a handle
                 drawGuidelines(canvas);
             }
         }
 
-        drawBorders(canvas);
+        drawBorders(canvas, mCropWindowHandler.getRect());
+        for (int i = 0; i < mRegions.size(); i++) {
+            if (i != mActiveRegion) {
+                mDrawRect.set(mRegionRects[i * 4], mRegionRects[i * 4 + 1],
+                        mRegionRects[i * 4 + 2], mRegionRects[i * 4 + 3]);
+                drawBorders(canvas, mDrawRect);
+            }
+        }
 
         drawCorners(canvas);
+
+        if (mInteractionMetrics != null) {
+            mInteractionMetrics.onDrawn();
+        }
+    }
+
+    /**
+     * Draw the quad crop window: the shadow background outside of it, guidelines between the
+     * thirds of the opposite edges, borders and corners along the edges.
+     */
+    private void drawQuad(Canvas canvas) {
+        updateQuad();
+        float[] quad = mQuadPoints;
+
+        mPath.reset();
+        mPath.moveTo(quad[0], quad[1]);
+        mPath.lineTo(quad[2], quad[3]);
+        mPath.lineTo(quad[4], quad[5]);
+        mPath.lineTo(quad[6], quad[7]);
+        mPath.close();
+        canvas.save();
+        canvas.clipPath(mPath, Region.Op.DIFFERENCE);
+        canvas.drawRect(Math.max(mBoundsRect.left, 0), Math.max(mBoundsRect.top, 0),
+                Math.min(mBoundsRect.right, getWidth()), Math.min(mBoundsRect.bottom, getHeight()),
+                mBackgroundPaint);
+        canvas.restore();
+
+        if (mGuidelinePaint != null && mCropWindowHandler.showGuidelines()
+                && (mGuidelines == CropImage.Guidelines.ON
+                || (mGuidelines == CropImage.Guidelines.ON_TOUCH && mQuadCorner >= 0))) {
+            for (int i = 1; i < 3; i++) {
+                float t = i / 3f;
+                canvas.drawLine(lerp(quad[0], quad[2], t), lerp(quad[1], quad[3], t),
+                        lerp(quad[6], quad[4], t), lerp(quad[7], quad[5], t), mGuidelinePaint);
+                canvas.drawLine(lerp(quad[0], quad[6], t), lerp(quad[1], quad[7], t),
+                        lerp(quad[2], quad[4], t), lerp(quad[3], quad[5], t), mGuidelinePaint);
+            }
+        }
+
+        if (mBorderPaint != null) {
+            canvas.drawPath(mPath, mBorderPaint);
+        }
+
+        if (mBorderCornerPaint != null) {
+            for (int i = 0; i < 4; i++) {
+                float x = quad[i * 2];
+                float y = quad[i * 2 + 1];
+                for (int neighbour = 1; neighbour < 4; neighbour += 2) {
+                    int j = (i + neighbour) % 4;
+                    float dx = quad[j * 2] - x;
+                    float dy = quad[j * 2 + 1] - y;
+                    float length = (float) Math.hypot(dx, dy);
+                    if (length > 0) {
+                        float scale = Math.min(mBorderCornerLength, length / 2) / length;
+                        canvas.drawLine(x, y, x + dx * scale, y + dy * scale,
+                                mBorderCornerPaint);
+                    }
+                }
+            }
+        }
+    }
+
+    private static float lerp(float start, float end, float t) {
+        return start + (end - start) * t;
     }
 
     /**
@@ -674,10 +1100,10 @@ public class CropOverlayView extends View {
 
         RectF rect = mCropWindowHandler.getRect();
 
-        float left = Math.max(RectUtils.getRectLeft(mBoundsPoints), 0);
-        float top = Math.max(RectUtils.getRectTop(mBoundsPoints), 0);
-        float right = Math.min(RectUtils.getRectRight(mBoundsPoints), getWidth());
-        float bottom = Math.min(RectUtils.getRectBottom(mBoundsPoints), getHeight());
+        float left = Math.max(mBoundsRect.left, 0);
+        float top = Math.max(mBoundsRect.top, 0);
+        float right = Math.min(mBoundsRect.right, getWidth());
+        float bottom = Math.min(mBoundsRect.bottom, getHeight());
 
         if (mCropShape == CropImage.CropShape.RECTANGLE) {
             if (!isNonStraightAngleRotated() || Build.VERSION.SDK_INT <= 17) {
@@ -715,6 +1141,50 @@ public class CropOverlayView extends View {
         }
     }
 
+    /**
+     * Draw shadow background over the image not including any of the crop windows, as a single
+     * draw clipped by the union of the crop windows.
+     */
+    private void drawRegionsBackground(Canvas canvas) {
+        float left = Math.max(mBoundsRect.left, 0);
+        float top = Math.max(mBoundsRect.top, 0);
+        float right = Math.min(mBoundsRect.right, getWidth());
+        float bottom = Math.min(mBoundsRect.bottom, getHeight());
+
+        canvas.save();
+        if (isNonStraightAngleRotated()) {
+            mPath.reset();
+            mPath.moveTo(mBoundsPoints[0], mBoundsPoints[1]);
+            mPath.lineTo(mBoundsPoints[2], mBoundsPoints[3]);
+            mPath.lineTo(mBoundsPoints[4], mBoundsPoints[5]);
+            mPath.lineTo(mBoundsPoints[6], mBoundsPoints[7]);
+            mPath.close();
+            canvas.clipPath(mPath, Region.Op.INTERSECT);
+        }
+
+        // the windows are added in the same direction so overlapping windows form a union
+        mPath.reset();
+        addRegionPath(mCropWindowHandler.getRect());
+        for (int i = 0; i < mRegions.size(); i++) {
+            if (i != mActiveRegion) {
+                mDrawRect.set(mRegionRects[i * 4], mRegionRects[i * 4 + 1],
+                        mRegionRects[i * 4 + 2], mRegionRects[i * 4 + 3]);
+                addRegionPath(mDrawRect);
+            }
+        }
+        canvas.clipPath(mPath, Region.Op.DIFFERENCE);
+        canvas.drawRect(left, top, right, bottom, mBackgroundPaint);
+        canvas.restore();
+    }
+
+    private void addRegionPath(RectF rect) {
+        if (mCropShape == CropImage.CropShape.OVAL) {
+            mPath.addOval(rect, Path.Direction.CW);
+        } else {
+            mPath.addRect(rect, Path.Direction.CW);
+        }
+    }
+
     /**
      * Draw 2 veritcal and 2 horizontal guidelines inside the cropping area to split it into 9 equal
      * parts.
@@ -764,12 +1234,11 @@ public class CropOverlayView extends View {
     }
 
     /**
-     * Draw borders of the crop area.
+     * Draw borders of the given crop area.
      */
-    private void drawBorders(Canvas canvas) {
+    private void drawBorders(Canvas canvas, RectF rect) {
         if (mBorderPaint != null) {
             float w = mBorderPaint.getStrokeWidth();
-            RectF rect = mCropWindowHandler.getRect();
             rect.inset(w / 2, w / 2);
 
             if (mCropShape == CropImage.CropShape.RECTANGLE) {
@@ -858,8 +1327,15 @@ public class CropOverlayView extends View {
 
     @Override
     public boolean onTouchEvent(MotionEvent event) {
+        if (mGestureRecording != null) {
+            mGestureRecording.record(event);
+        }
         // If this View is not enabled, don't allow for touch interactions.
         if (isEnabled()) {
+            if (mImageGesture && event.getAction() != MotionEvent.ACTION_DOWN) {
+                return onImageGestureTouchEvent(event);
+            }
+
             if (mMultiTouchEnabled) {
                 mScaleDetector.onTouchEvent(event);
             }
@@ -867,14 +1343,29 @@ public class CropOverlayView extends View {
             switch (event.getAction()) {
                 case MotionEvent.ACTION_DOWN:
                     onActionDown(event.getX(), event.getY());
+                    if (mTouchPredictor != null) {
+                        mTouchPredictor.reset(event.getX(), event.getY(), event.getEventTime());
+                    }
+                    mImageGesture = mMoveHandler == null && mQuadCorner < 0
+                            && mImageGestureHandler != null;
+                    if (mImageGesture) {
+                        mImageGestureHandler.onTouchEvent(event);
+                    }
                     return true;
                 case MotionEvent.ACTION_UP:
                 case MotionEvent.ACTION_CANCEL:
                     getParent().requestDisallowInterceptTouchEvent(false);
+                    if (mTouchPredictor != null) {
+                        // commit the real pointer position instead of the last prediction
+                        onActionMove(event.getX(), event.getY());
+                    }
                     onActionUp();
                     return true;
                 case MotionEvent.ACTION_MOVE:
-                    onActionMove(event.getX(), event.getY());
+                    if (mInteractionMetrics != null) {
+                        mInteractionMetrics.onTouchMove();
+                    }
+                    onActionMove(event);
                     getParent().requestDisallowInterceptTouchEvent(true);
                     return true;
                 default:
@@ -885,13 +1376,108 @@ public class CropOverlayView extends View {
         }
     }
 
+    /**
+     * Show the guidelines and a resize pointer icon while a mouse or stylus hovers a handle.<br>
+     * Uses the same precomputed zones as touch, and only redraws when the hovered handle changes.
+     */
+    @Override
+    public boolean onHoverEvent(MotionEvent event) {
+        if (!isEnabled()) {
+            return super.onHoverEvent(event);
+        }
+        CropWindowMoveHandler.Type type = null;
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_HOVER_ENTER:
+            case MotionEvent.ACTION_HOVER_MOVE:
+                if (mCropShape != CropImage.CropShape.QUAD) {
+                    type = mCropWindowHandler.getPressedMoveType(event.getX(), event.getY(),
+                            mTouchRadius, mCropShape);
+                }
+                break;
+            case MotionEvent.ACTION_HOVER_EXIT:
+                break;
+            default:
+                return super.onHoverEvent(event);
+        }
+        if (mHoverType != type) {
+            mHoverType = type;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+                setHoverPointerIcon(type);
+            }
+            invalidate();
+        }
+        return true;
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void setHoverPointerIcon(CropWindowMoveHandler.Type type) {
+        if (type == null) {
+            setPointerIcon(null);
+            return;
+        }
+        int icon;
+        switch (type) {
+            case TOP_LEFT:
+            case BOTTOM_RIGHT:
+                icon = PointerIcon.TYPE_TOP_LEFT_DIAGONAL_DOUBLE_ARROW;
+                break;
+            case TOP_RIGHT:
+            case BOTTOM_LEFT:
+                icon = PointerIcon.TYPE_TOP_RIGHT_DIAGONAL_DOUBLE_ARROW;
+                break;
+            case LEFT:
+            case RIGHT:
+                icon = PointerIcon.TYPE_HORIZONTAL_DOUBLE_ARROW;
+                break;
+            case TOP:
+            case BOTTOM:
+                icon = PointerIcon.TYPE_VERTICAL_DOUBLE_ARROW;
+                break;
+            default:
+                icon = PointerIcon.TYPE_GRAB;
+                break;
+        }
+        setPointerIcon(PointerIcon.getSystemIcon(getContext(), icon));
+    }
+
+    /**
+     * Pass the touch event of a gesture that started outside of the crop window to the image
+     * gesture handler.
+     */
+    private boolean onImageGestureTouchEvent(MotionEvent event) {
+        mImageGestureHandler.onTouchEvent(event);
+        int action = event.getActionMasked();
+        if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) {
+            mImageGesture = false;
+            getParent().requestDisallowInterceptTouchEvent(false);
+        } else if (action == MotionEvent.ACTION_MOVE) {
+            getParent().requestDisallowInterceptTouchEvent(true);
+        }
+        return true;
+    }
+
     /**
      * On press down start crop window movment depending on the location of the press.<br>
      * if press is far from crop window then no move handler is returned (null).
      */
     private void onActionDown(float x, float y) {
+        if (mCropShape == CropImage.CropShape.QUAD) {
+            onQuadActionDown(x, y);
+            return;
+        }
         mMoveHandler = mCropWindowHandler.getMoveHandler(x, y, mTouchRadius, mCropShape);
+        if (mMoveHandler == null && !mRegions.isEmpty()) {
+            // pressing another crop window activates it, the change is notified on release
+            updateRegionRects();
+            int index = mRegionIndex.find(x, y);
+            if (index >= 0) {
+                activateCropWindow(index);
+                mMoveHandler = mCropWindowHandler.getMoveHandler(x, y, mTouchRadius, mCropShape);
+            }
+        }
         if (mMoveHandler != null) {
+            updateContentEdges();
+            mMoveHandler.setContentEdges(mContentEdgesX, mContentEdgesY);
             invalidate();
         }
     }
@@ -900,8 +1486,9 @@ public class CropOverlayView extends View {
      * Clear move handler starting in {@link #onActionDown(float, float)} if exists.
      */
     private void onActionUp() {
-        if (mMoveHandler != null) {
+        if (mMoveHandler != null || mQuadCorner >= 0) {
             mMoveHandler = null;
+            mQuadCorner = -1;
             callOnCropWindowChanged(false);
             invalidate();
         }
@@ -910,25 +1497,382 @@ public class CropOverlayView extends View {
     /**
      * Handle move of crop window using the move handler created in {@link #onActionDown(float,
      * float)}.<br>
-     * The move handler will do the proper move/resize of the crop window.
+     * All the samples batched in the event are applied in order, so snapping doesn't miss edges
+     * on fast drags and the result doesn't depend on the frame timing. Only the last sample
+     * notifies the change and invalidates. With touch prediction the last sample is replaced by
+     * the predicted pointer position.
+     */
+    private void onActionMove(MotionEvent event) {
+        int historySize = event.getHistorySize();
+        if (mTouchPredictor != null) {
+            for (int i = 0; i < historySize; i++) {
+                mTouchPredictor.addSample(event.getHistoricalX(i), event.getHistoricalY(i),
+                        event.getHistoricalEventTime(i));
+            }
+            mTouchPredictor.addSample(event.getX(), event.getY(), event.getEventTime());
+        }
+
+        if (mQuadCorner >= 0) {
+            if (mTouchPredictor != null) {
+                mTouchPredictor.predict(mPredictedPoint);
+                onActionMove(mPredictedPoint[0], mPredictedPoint[1]);
+            } else {
+                onActionMove(event.getX(), event.getY());
+            }
+        } else if (mMoveHandler != null) {
+            long start = mInteractionMetrics != null ? System.nanoTime() : 0;
+            RectF rect = mCropWindowHandler.getRect();
+            for (int i = 0; i < historySize; i++) {
+                moveCropWindow(rect, event.getHistoricalX(i), event.getHistoricalY(i));
+            }
+            if (mTouchPredictor != null) {
+                mTouchPredictor.predict(mPredictedPoint);
+                moveCropWindow(rect, mPredictedPoint[0], mPredictedPoint[1]);
+            } else {
+                moveCropWindow(rect, event.getX(), event.getY());
+            }
+            if (mInteractionMetrics != null) {
+                mInteractionMetrics.recordMove(System.nanoTime() - start);
+            }
+            mCropWindowHandler.setRect(rect);
+            callOnCropWindowChanged(true);
+            invalidate();
+        }
+    }
+
+    /**
+     * Handle move of crop window to a single pointer position.
+     *
+     * @see #onActionMove(MotionEvent)
      */
     private void onActionMove(float x, float y) {
-        if (mMoveHandler != null) {
-            float snapRadius = mSnapRadius;
+        if (mQuadCorner >= 0) {
+            moveQuad(x, y);
+            callOnCropWindowChanged(true);
+            invalidate();
+        } else if (mMoveHandler != null) {
             RectF rect = mCropWindowHandler.getRect();
+            moveCropWindow(rect, x, y);
+            mCropWindowHandler.setRect(rect);
+            callOnCropWindowChanged(true);
+            invalidate();
+        }
+    }
 
-            if (calculateBounds(rect)) {
-                snapRadius = 0;
+    /**
+     * Start moving the quad corner closest to the press within the touch radius, or the whole quad
+     * if pressed inside of it.
+     */
+    private void onQuadActionDown(float x, float y) {
+        updateQuad();
+        mQuadCorner = -1;
+        float closest = mTouchRadius;
+        for (int i = 0; i < 4; i++) {
+            float distance = (float) Math.hypot(x - mQuadPoints[i * 2], y - mQuadPoints[i * 2 + 1]);
+            if (distance <= closest) {
+                closest = distance;
+                mQuadCorner = i;
             }
+        }
+        if (mQuadCorner < 0 && isInsideQuad(x, y)) {
+            mQuadCorner = 4;
+        }
+        if (mQuadCorner >= 0) {
+            mQuadTouchX = x;
+            mQuadTouchY = y;
+            invalidate();
+        }
+    }
 
-            mMoveHandler.move(rect, x, y, mCalcBounds, mViewWidth, mViewHeight, snapRadius,
-                    mFixAspectRatio, mTargetAspectRatio);
-            mCropWindowHandler.setRect(rect);
-            callOnCropWindowChanged(true);
+    /**
+     * Move the pressed quad corner or the whole quad to the given pointer position, kept inside
+     * the image. A corner move that would make the quad concave is ignored.
+     */
+    private void moveQuad(float x, float y) {
+        if (mQuadCorner == 4) {
+            // move by the change in image fractions, limited by the image edges
+            float[] points = {mQuadTouchX, mQuadTouchY, x, y};
+            if (!mapViewPointsToImage(points)) {
+                return;
+            }
+            float du = points[2] - points[0];
+            float dv = points[3] - points[1];
+            for (int i = 0; i < 8; i += 2) {
+                du = Math.max(-mQuadImagePoints[i], Math.min(1 - mQuadImagePoints[i], du));
+                dv = Math.max(-mQuadImagePoints[i + 1], Math.min(1 - mQuadImagePoints[i + 1], dv));
+            }
+            for (int i = 0; i < 8; i += 2) {
+                mQuadImagePoints[i] += du;
+                mQuadImagePoints[i + 1] += dv;
+            }
+            mQuadTouchX = x;
+            mQuadTouchY = y;
+        } else {
+            float[] point = {x, y};
+            if (!mapViewPointsToImage(point)) {
+                return;
+            }
+            float[] points = mQuadPoints.clone();
+            points[mQuadCorner * 2] = x;
+            points[mQuadCorner * 2 + 1] = y;
+            if (!QuadDetector.isConvex(points)) {
+                return;
+            }
+            mQuadImagePoints[mQuadCorner * 2] = Math.max(0, Math.min(1, point[0]));
+            mQuadImagePoints[mQuadCorner * 2 + 1] = Math.max(0, Math.min(1, point[1]));
+        }
+        mQuadChanged = true;
+        updateQuad();
+    }
+
+    /**
+     * If the given view point is inside the quad crop window.
+     */
+    private boolean isInsideQuad(float x, float y) {
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) % 4;
+            float cross = (mQuadPoints[j * 2] - mQuadPoints[i * 2]) * (y - mQuadPoints[i * 2 + 1])
+                    - (mQuadPoints[j * 2 + 1] - mQuadPoints[i * 2 + 1]) * (x - mQuadPoints[i * 2]);
+            if (cross < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The corners of the quad crop window in the view ordered top-left, top-right, bottom-right,
+     * bottom-left (x0,y0,x1,y1,x2,y2,x3,y3).
+     *
+     * @return the corners, null if the crop shape is not {@link CropImage.CropShape#QUAD}
+     */
+    public float[] getCropQuad() {
+        if (mCropShape != CropImage.CropShape.QUAD) {
+            return null;
+        }
+        updateQuad();
+        return mQuadPoints.clone();
+    }
+
+    /**
+     * Set the corners of the quad crop window.
+     *
+     * @param imagePoints the 4 corners as fractions of the image (u0,v0,...,u3,v3) in any order,
+     *                    null to start from the crop window rectangle
+     */
+    void setCropQuad(float[] imagePoints) {
+        mQuadValid = imagePoints != null;
+        if (mQuadValid) {
+            for (int i = 0; i < 8; i++) {
+                mQuadImagePoints[i] = Math.max(0, Math.min(1, imagePoints[i]));
+            }
+        }
+        mQuadChanged = true;
+        if (mCropShape == CropImage.CropShape.QUAD) {
+            updateQuad();
             invalidate();
+            callOnCropWindowChanged(false);
+        }
+    }
+
+    /**
+     * Map the quad from image fractions to the view if the image bounds or the quad changed, and
+     * set the crop window rectangle to its bounds so zoom and the crop rect follow the quad.<br>
+     * Without a set quad it starts from the corners of the crop window rectangle.
+     */
+    private void updateQuad() {
+        if (!mQuadValid) {
+            RectF rect = mCropWindowHandler.getRect();
+            if (rect.width() <= 0 || rect.height() <= 0) {
+                return;
+            }
+            float[] corners = new float[8];
+            if (!mapViewRectToImage(rect, corners)) {
+                return;
+            }
+            System.arraycopy(corners, 0, mQuadImagePoints, 0, 8);
+            mQuadValid = true;
+            mQuadChanged = true;
+        }
+        if (!mQuadChanged) {
+            return;
+        }
+        mQuadChanged = false;
+
+        mapImagePointsToView(mQuadImagePoints, mQuadPoints);
+
+        // rotation and flip change which image corner is shown top-left
+        float[] sorted = mQuadPoints.clone();
+        QuadDetector.sortCorners(sorted);
+        if (!Arrays.equals(sorted, mQuadPoints)) {
+            System.arraycopy(sorted, 0, mQuadPoints, 0, 8);
+            if (mapViewPointsToImage(sorted)) {
+                System.arraycopy(sorted, 0, mQuadImagePoints, 0, 8);
+            }
+        }
+        mCropWindowHandler.setRect(new RectF(RectUtils.getRectLeft(mQuadPoints),
+                RectUtils.getRectTop(mQuadPoints), RectUtils.getRectRight(mQuadPoints),
+                RectUtils.getRectBottom(mQuadPoints)));
+    }
+
+    /**
+     * Move/resize the given crop window rectangle to the given pointer position, without
+     * notifying the change.
+     */
+    private void moveCropWindow(RectF rect, float x, float y) {
+        float snapRadius = mSnapRadius;
+        if (calculateBounds(rect)) {
+            snapRadius = 0;
+        }
+        mMoveHandler.move(rect, x, y, mCalcBounds, mViewWidth, mViewHeight, snapRadius,
+                mFixAspectRatio, mTargetAspectRatio);
+    }
+
+    /**
+     * Store the active crop window and its aspect ratio in its entry and load the crop window at
+     * the given index for editing.
+     */
+    private void activateCropWindow(int index) {
+        CropRegion active = mRegions.get(mActiveRegion);
+        mapViewRectToImage(mCropWindowHandler.getRect(), active.imageCorners);
+        active.fixAspectRatio = mFixAspectRatio;
+        active.aspectRatioX = mAspectRatioX;
+        active.aspectRatioY = mAspectRatioY;
+
+        CropRegion region = mRegions.get(index);
+        mFixAspectRatio = region.fixAspectRatio;
+        mAspectRatioX = region.aspectRatioX;
+        mAspectRatioY = region.aspectRatioY;
+        mTargetAspectRatio = (float) mAspectRatioX / mAspectRatioY;
+        RectF rect = new RectF();
+        mapImageCornersToView(region.imageCorners, rect);
+        // the image may have been rotated or zoomed since the window was stored
+        fixCropWindowRectByRules(rect);
+        mCropWindowHandler.setRect(rect);
+
+        mActiveRegion = index;
+        mRegionsChanged = true;
+    }
+
+    /**
+     * Update the view rectangles of the inactive crop windows and their touch index if the
+     * windows or the image bounds changed since the last update.
+     */
+    private void updateRegionRects() {
+        if (mRegionsChanged) {
+            int count = mRegions.size();
+            if (mRegionRects.length < count * 4) {
+                mRegionRects = new float[count * 4];
+            }
+            for (int i = 0; i < count; i++) {
+                if (i != mActiveRegion) {
+                    mapImageCornersToView(mRegions.get(i).imageCorners, mDrawRect);
+                    mRegionRects[i * 4] = mDrawRect.left;
+                    mRegionRects[i * 4 + 1] = mDrawRect.top;
+                    mRegionRects[i * 4 + 2] = mDrawRect.right;
+                    mRegionRects[i * 4 + 3] = mDrawRect.bottom;
+                }
+            }
+            mRegionIndex.set(mRegionRects, count, mActiveRegion, mTouchRadius, getWidth(),
+                    getHeight());
+            mRegionsChanged = false;
+        }
+    }
+
+    /**
+     * Map the given rectangle in fractions of the image to the view, using the image bounding
+     * points as the frame. For non-straight rotation the result is the bounding rectangle.
+     */
+    private void mapImageRectToView(RectF imageRect, RectF rect) {
+        float ux = mBoundsPoints[2] - mBoundsPoints[0];
+        float uy = mBoundsPoints[3] - mBoundsPoints[1];
+        float vx = mBoundsPoints[6] - mBoundsPoints[0];
+        float vy = mBoundsPoints[7] - mBoundsPoints[1];
+        rect.set(mBoundsPoints[0] + Math.min(ux * imageRect.left, ux * imageRect.right)
+                        + Math.min(vx * imageRect.top, vx * imageRect.bottom),
+                mBoundsPoints[1] + Math.min(uy * imageRect.left, uy * imageRect.right)
+                        + Math.min(vy * imageRect.top, vy * imageRect.bottom),
+                mBoundsPoints[0] + Math.max(ux * imageRect.left, ux * imageRect.right)
+                        + Math.max(vx * imageRect.top, vx * imageRect.bottom),
+                mBoundsPoints[1] + Math.max(uy * imageRect.left, uy * imageRect.right)
+                        + Math.max(vy * imageRect.top, vy * imageRect.bottom));
+    }
+
+    /**
+     * Map the given image corners to the view, the bounding rectangle of the mapped corners. An
+     * unchanged image frame maps the corners of {@link #mapViewRectToImage(RectF, float[])} back
+     * to the exact view rectangle.
+     */
+    private void mapImageCornersToView(float[] imageCorners, RectF rect) {
+        float[] points = new float[8];
+        mapImagePointsToView(imageCorners, points);
+        rect.set(RectUtils.getRectLeft(points), RectUtils.getRectTop(points),
+                RectUtils.getRectRight(points), RectUtils.getRectBottom(points));
+    }
+
+    /**
+     * Map the given points in fractions of the image (u0,v0,u1,v1,...) to the view, using the
+     * image bounding points as the frame.
+     *
+     * @param points the array to write the view points to, may be the given image points
+     */
+    private void mapImagePointsToView(float[] imagePoints, float[] points) {
+        float ux = mBoundsPoints[2] - mBoundsPoints[0];
+        float uy = mBoundsPoints[3] - mBoundsPoints[1];
+        float vx = mBoundsPoints[6] - mBoundsPoints[0];
+        float vy = mBoundsPoints[7] - mBoundsPoints[1];
+        for (int i = 0; i < imagePoints.length; i += 2) {
+            float u = imagePoints[i];
+            float v = imagePoints[i + 1];
+            points[i] = mBoundsPoints[0] + u * ux + v * vx;
+            points[i + 1] = mBoundsPoints[1] + u * uy + v * vy;
         }
     }
 
+    /**
+     * Map the 4 corners of the given view rectangle to fractions of the image, see {@link
+     * #mapViewPointsToImage(float[])}.
+     *
+     * @param imageCorners the array to write the top-left, top-right, bottom-right, bottom-left
+     *                     corners to
+     * @return false if there is no image to map to
+     */
+    private boolean mapViewRectToImage(RectF rect, float[] imageCorners) {
+        imageCorners[0] = rect.left;
+        imageCorners[1] = rect.top;
+        imageCorners[2] = rect.right;
+        imageCorners[3] = rect.top;
+        imageCorners[4] = rect.right;
+        imageCorners[5] = rect.bottom;
+        imageCorners[6] = rect.left;
+        imageCorners[7] = rect.bottom;
+        return mapViewPointsToImage(imageCorners);
+    }
+
+    /**
+     * Map the given view points (x0,y0,x1,y1,...) to fractions of the image in place, through the
+     * inverse of the image frame spanned by the bounds points.
+     *
+     * @return false if there is no image to map to, the points are unchanged
+     */
+    private boolean mapViewPointsToImage(float[] points) {
+        float ux = mBoundsPoints[2] - mBoundsPoints[0];
+        float uy = mBoundsPoints[3] - mBoundsPoints[1];
+        float vx = mBoundsPoints[6] - mBoundsPoints[0];
+        float vy = mBoundsPoints[7] - mBoundsPoints[1];
+        float det = ux * vy - uy * vx;
+        if (det == 0) {
+            return false;
+        }
+        for (int i = 0; i < points.length; i += 2) {
+            float x = points[i] - mBoundsPoints[0];
+            float y = points[i + 1] - mBoundsPoints[1];
+            points[i] = (vy * x - vx * y) / det;
+            points[i + 1] = (ux * y - uy * x) / det;
+        }
+        return true;
+    }
+
     /**
      * Calculate the bounding rectangle for current crop window, handle non-straight rotation
      * angles.<br>
@@ -941,10 +1885,10 @@ public class CropOverlayView extends View {
      */
     private boolean calculateBounds(RectF rect) {
 
-        float left = RectUtils.getRectLeft(mBoundsPoints);
-        float top = RectUtils.getRectTop(mBoundsPoints);
-        float right = RectUtils.getRectRight(mBoundsPoints);
-        float bottom = RectUtils.getRectBottom(mBoundsPoints);
+        float left = mBoundsRect.left;
+        float top = mBoundsRect.top;
+        float right = mBoundsRect.right;
+        float bottom = mBoundsRect.bottom;
 
         if (!isNonStraightAngleRotated()) {
             mCalcBounds.set(left, top, right, bottom);
@@ -1018,6 +1962,60 @@ public class CropOverlayView extends View {
         }
     }
 
+    /**
+     * Set the strong edges in the image content for the crop window edges to snap to when dragged
+     * within the snap radius, null to snap only to the image bounds.
+     */
+    void setContentEdges(ContentEdges contentEdges) {
+        mContentEdges = contentEdges;
+        mContentEdgesChanged = true;
+    }
+
+    /**
+     * Map the content edges to view coordinates if the image bounds changed since last time.<br>
+     * An image rotated by 90/270 degrees shows its vertical edges horizontally, an image rotated by
+     * a non-straight angle has no edges to snap to.
+     */
+    private void updateContentEdges() {
+        if (!mContentEdgesChanged) {
+            return;
+        }
+        mContentEdgesChanged = false;
+        mContentEdgesX = null;
+        mContentEdgesY = null;
+        if (mContentEdges != null && !isNonStraightAngleRotated()) {
+            float ux = mBoundsPoints[2] - mBoundsPoints[0];
+            float uy = mBoundsPoints[3] - mBoundsPoints[1];
+            float vx = mBoundsPoints[6] - mBoundsPoints[0];
+            float vy = mBoundsPoints[7] - mBoundsPoints[1];
+            if (Math.abs(ux) >= Math.abs(uy)) {
+                mContentEdgesX = mapContentEdges(mContentEdges.getVertical(), mBoundsPoints[0], ux);
+                mContentEdgesY =
+                        mapContentEdges(mContentEdges.getHorizontal(), mBoundsPoints[1], vy);
+            } else {
+                mContentEdgesX =
+                        mapContentEdges(mContentEdges.getHorizontal(), mBoundsPoints[0], vx);
+                mContentEdgesY = mapContentEdges(mContentEdges.getVertical(), mBoundsPoints[1], uy);
+            }
+        }
+    }
+
+    /**
+     * Map the given edges in fractions of an image side to view coordinates, ascending.
+     *
+     * @param origin the view coordinate of the image side start
+     * @param length the view length of the image side, negative if flipped
+     */
+    private static float[] mapContentEdges(float[] edges, float origin, float length) {
+        int count = edges.length;
+        float[] mapped = new float[count];
+        for (int i = 0; i < count; i++) {
+            int index = length < 0 ? count - 1 - i : i;
+            mapped[index] = origin + edges[i] * length;
+        }
+        return mapped;
+    }
+
     /**
      * Is the cropping image has been rotated by NOT 0,90,180 or 270 degrees.
      */
@@ -1038,6 +2036,27 @@ public class CropOverlayView extends View {
         }
     }
 
+    /**
+     * A crop window and its aspect ratio constraint, see {@link #addCropWindow(RectF, boolean,
+     * int, int)}.
+     */
+    private static final class CropRegion {
+
+        /**
+         * The 4 corners (top-left, top-right, bottom-right, bottom-left in the view) of the window
+         * as fractions of the image width/height, before rotation and flip.<br>
+         * Kept exactly so a window stored and shown again on an image rotated by a non-straight
+         * angle is not grown to its bounding rectangle on every round trip.
+         */
+        final float[] imageCorners = new float[8];
+
+        boolean fixAspectRatio;
+
+        int aspectRatioX = 1;
+
+        int aspectRatioY = 1;
+    }
+
     /**
      * Interface definition for a callback to be invoked when crop window rectangle is changing.
      */
@@ -1071,12 +2090,15 @@ public class CropOverlayView extends View {
             float newRight = x + dX;
             float newBottom = y + dY;
 
+            // the max crop size limits the size of the window, its position is limited by the view
             if (newLeft < newRight &&
                     newTop <= newBottom &&
                     newLeft >= 0 &&
-                    newRight <= mCropWindowHandler.getMaxCropWidth() &&
+                    newRight <= mViewWidth &&
                     newTop >= 0 &&
-                    newBottom <= mCropWindowHandler.getMaxCropHeight()) {
+                    newBottom <= mViewHeight &&
+                    newRight - newLeft <= mCropWindowHandler.getMaxCropWidth() &&
+                    newBottom - newTop <= mCropWindowHandler.getMaxCropHeight()) {
 
                 rect.set(newLeft, newTop, newRight, newBottom);
                 mCropWindowHandler.setRect(rect);
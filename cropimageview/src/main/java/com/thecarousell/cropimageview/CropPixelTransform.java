@@ -0,0 +1,565 @@
+package com.thecarousell.cropimageview;
+
+import java.util.Arrays;
+
+/**
+ * Single pass crop of ARGB pixels: rotation, flip, crop and scale are all expressed by the 4 crop
+ * points in the source, so every result pixel is mapped through one affine transform and sampled
+ * directly from the source.<br>
+ * Sampling is bilinear, when the result is smaller than the cropped area multiple bilinear samples
+ * per result pixel are averaged. Rows are processed in parallel strips.<br>
+ * A result larger than the cropped area, or more than {@link #MAX_SAMPLES} times smaller, is
+ * cropped at the nearest size the samples cover and then resized by {@link ImageResampler}, so
+ * up-scaling is bicubic and every source pixel counts in a large down-scale.<br>
+ * Oval crops are masked in the same pass, pixels outside the oval are never sampled.<br>
+ * Points that are not a parallelogram (a document photographed at an angle) are mapped through the
+ * perspective transform (homography) of the result rectangle to the quad instead, so the quad is
+ * warped upright in the same single pass.<br>
+ * Color adjustments are applied to every result pixel in the same pass too.<br>
+ * The source is sampled in place through a {@link Source} and the result is handed to an {@link
+ * Output} in strips of rows, so unless the result is resized neither is copied into an
+ * intermediate array.
+ */
+final class CropPixelTransform {
+
+    /**
+     * Max samples per axis averaged for a single result pixel when scaling down, a larger
+     * down-scale is finished by {@link ImageResampler}.
+     */
+    private static final int MAX_SAMPLES = 8;
+
+    /**
+     * Max number of result rows buffered before they are handed to the {@link Output}.
+     */
+    private static final int OUTPUT_ROWS = 16;
+
+    private CropPixelTransform() {
+    }
+
+    /**
+     * Source pixels sampled by the transform, safe to read concurrently.
+     */
+    interface Source {
+
+        int getWidth();
+
+        int getHeight();
+
+        /**
+         * Get the ARGB color (not premultiplied) of the pixel at the given position.
+         */
+        int getPixel(int x, int y);
+    }
+
+    /**
+     * Receives the result rows, called concurrently for different rows.
+     */
+    interface Output {
+
+        /**
+         * Take the given result rows, the pixels array is reused after the call returns.
+         *
+         * @param pixels the ARGB pixels of the rows, row-major without padding
+         * @param y      the first result row
+         * @param rows   the number of rows
+         */
+        void setRows(int[] pixels, int y, int rows);
+    }
+
+    /**
+     * Crop the given source pixels into the given result.
+     *
+     * @param src         the source ARGB pixels, row-major without padding
+     * @param srcWidth    the width of the source
+     * @param srcHeight   the height of the source
+     * @param points      the 4 crop points (x0,y0,x1,y1,x2,y2,x3,y3) in source pixels, ordered
+     *                    top-left, top-right, bottom-right, bottom-left of the result, any convex
+     *                    quad
+     * @param dst         the array to write the result ARGB pixels to
+     * @param dstWidth    the width of the result
+     * @param dstHeight   the height of the result
+     * @param oval        if to mask the result by the oval inscribed in it, pixels outside the
+     *                    oval are transparent and the edge is antialiased
+     * @param colorMatrix the 4x5 color matrix to apply to the result pixels (see {@link
+     *                    ColorAdjustments}), null for none
+     */
+    static void transform(final int[] src, final int srcWidth, final int srcHeight,
+            float[] points, final int[] dst, final int dstWidth, int dstHeight, boolean oval,
+            float[] colorMatrix) {
+        PixelUtils.checkPixels(src, srcWidth, srcHeight);
+        PixelUtils.checkPixels(dst, dstWidth, dstHeight);
+        Source source = new Source() {
+            @Override
+            public int getWidth() {
+                return srcWidth;
+            }
+
+            @Override
+            public int getHeight() {
+                return srcHeight;
+            }
+
+            @Override
+            public int getPixel(int x, int y) {
+                return src[y * srcWidth + x];
+            }
+        };
+        transform(source, points, dstWidth, dstHeight, oval, colorMatrix,
+                newArrayOutput(dst, dstWidth));
+    }
+
+    /**
+     * Crop the given source into a result of the given size, handed to the given output in strips
+     * of rows.
+     *
+     * @see #transform(int[], int, int, float[], int[], int, int, boolean, float[])
+     */
+    static void transform(Source src, float[] points, int dstWidth, int dstHeight, boolean oval,
+            float[] colorMatrix, Output output) {
+        if (src.getWidth() <= 0 || src.getHeight() <= 0 || dstWidth <= 0 || dstHeight <= 0) {
+            throw new IllegalArgumentException("Cannot transform to or from an empty size");
+        }
+
+        // a quad is warped upright to its longer opposite edges, a parallelogram has equal ones
+        int sampledWidth = getSampledSize(Math.max(getDistance(points, 0, 1),
+                getDistance(points, 3, 2)), dstWidth);
+        int sampledHeight = getSampledSize(Math.max(getDistance(points, 0, 3),
+                getDistance(points, 1, 2)), dstHeight);
+        if (sampledWidth == dstWidth && sampledHeight == dstHeight) {
+            transformSampled(src, points, dstWidth, dstHeight, oval, colorMatrix, output);
+        } else {
+            int[] sampled = new int[sampledWidth * sampledHeight];
+            transformSampled(src, points, sampledWidth, sampledHeight, false, null,
+                    newArrayOutput(sampled, sampledWidth));
+            int[] resized = ImageResampler.resize(sampled, sampledWidth, sampledHeight, dstWidth,
+                    dstHeight);
+            finish(resized, dstWidth, dstHeight, oval, colorMatrix, output);
+        }
+    }
+
+    /**
+     * Crop the given source into a result of the given size by sampling it directly.
+     */
+    private static void transformSampled(final Source src, float[] points, final int dstWidth,
+            final int dstHeight, final boolean oval, final float[] colorMatrix,
+            final Output output) {
+        // the source step for one result pixel to the right and one result pixel down
+        final float ux = (points[2] - points[0]) / dstWidth;
+        final float uy = (points[3] - points[1]) / dstWidth;
+        final float vx = (points[6] - points[0]) / dstHeight;
+        final float vy = (points[7] - points[1]) / dstHeight;
+
+        // (0, 0) of the result maps to the top-left point, samples are taken at pixel centers
+        // while source pixel i covers [i, i + 1)
+        final float originX = points[0] - 0.5f;
+        final float originY = points[1] - 0.5f;
+
+        final float[] homography = getHomography(points, dstWidth, dstHeight);
+        final int samplesU;
+        final int samplesV;
+        if (homography != null) {
+            // the longer of the opposite edges bounds the source step
+            samplesU = getSamples(Math.max(getDistance(points, 0, 1), getDistance(points, 3, 2))
+                    / dstWidth);
+            samplesV = getSamples(Math.max(getDistance(points, 0, 3), getDistance(points, 1, 2))
+                    / dstHeight);
+        } else {
+            samplesU = getSamples((float) Math.hypot(ux, uy));
+            samplesV = getSamples((float) Math.hypot(vx, vy));
+        }
+
+        ParallelStrips.run(dstHeight, new ParallelStrips.StripTask() {
+            @Override
+            public void run(int startRow, int endRow) {
+                int[] span = oval ? new int[4] : null;
+                int bufferRows = Math.min(OUTPUT_ROWS, endRow - startRow);
+                int[] dst = new int[bufferRows * dstWidth];
+                int bufferTop = startRow;
+                for (int y = startRow; y < endRow; y++) {
+                    int out = (y - bufferTop) * dstWidth;
+                    int start = 0;
+                    int end = dstWidth;
+                    if (oval) {
+                        getOvalSpan(dstWidth, dstHeight, y, span);
+                        start = span[0];
+                        end = span[3];
+                        Arrays.fill(dst, out, out + start, 0);
+                        Arrays.fill(dst, out + end, out + dstWidth, 0);
+                    }
+
+                    if (homography != null) {
+                        for (int x = start; x < end; x++) {
+                            dst[out + x] = samplePerspective(src, homography, x, y, samplesU,
+                                    samplesV);
+                        }
+                    } else if (samplesU == 1 && samplesV == 1) {
+                        float sx = originX + (y + 0.5f) * vx + (start + 0.5f) * ux;
+                        float sy = originY + (y + 0.5f) * vy + (start + 0.5f) * uy;
+                        for (int x = start; x < end; x++) {
+                            dst[out + x] = sample(src, sx, sy);
+                            sx += ux;
+                            sy += uy;
+                        }
+                    } else {
+                        for (int x = start; x < end; x++) {
+                            dst[out + x] = sampleArea(src, originX, originY, x, y, ux, uy, vx, vy,
+                                    samplesU, samplesV);
+                        }
+                    }
+
+                    finishRow(dst, out, y, start, end, dstWidth, dstHeight, span, true,
+                            colorMatrix);
+
+                    if (y + 1 - bufferTop == bufferRows || y + 1 == endRow) {
+                        output.setRows(dst, bufferTop, y + 1 - bufferTop);
+                        bufferTop = y + 1;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Mask the given resized result by the oval and apply the color matrix to it, handing it to
+     * the given output in strips of rows.
+     *
+     * @param pixels the ARGB pixels of the result, not premultiplied
+     */
+    private static void finish(final int[] pixels, final int dstWidth, final int dstHeight,
+            final boolean oval, final float[] colorMatrix, final Output output) {
+        ParallelStrips.run(dstHeight, new ParallelStrips.StripTask() {
+            @Override
+            public void run(int startRow, int endRow) {
+                int[] span = oval ? new int[4] : null;
+                int[] dst = new int[Math.min(OUTPUT_ROWS, endRow - startRow) * dstWidth];
+                for (int top = startRow; top < endRow; top += OUTPUT_ROWS) {
+                    int rows = Math.min(OUTPUT_ROWS, endRow - top);
+                    System.arraycopy(pixels, top * dstWidth, dst, 0, rows * dstWidth);
+                    for (int y = top; y < top + rows; y++) {
+                        int out = (y - top) * dstWidth;
+                        int start = 0;
+                        int end = dstWidth;
+                        if (oval) {
+                            getOvalSpan(dstWidth, dstHeight, y, span);
+                            start = span[0];
+                            end = span[3];
+                            Arrays.fill(dst, out, out + start, 0);
+                            Arrays.fill(dst, out + end, out + dstWidth, 0);
+                        }
+                        finishRow(dst, out, y, start, end, dstWidth, dstHeight, span, false,
+                                colorMatrix);
+                    }
+                    output.setRows(dst, top, rows);
+                }
+            }
+        });
+    }
+
+    /**
+     * Finish the pixels from start to end of the result row y, which starts at out in the given
+     * array: mask the oval edge, un-premultiply and apply the color matrix.
+     *
+     * @param span          the oval spans of the row, see {@link #getOvalSpan}, null for no oval
+     * @param premultiplied if the given pixels are premultiplied
+     */
+    private static void finishRow(int[] dst, int out, int y, int start, int end, int dstWidth,
+            int dstHeight, int[] span, boolean premultiplied, float[] colorMatrix) {
+        // only the pixels between the outer and inner span are on the oval edge
+        for (int x = start; x < end; x++) {
+            int color = dst[out + x];
+            if (span != null && (x < span[1] || x >= span[2])) {
+                if (!premultiplied) {
+                    color = ImageResampler.premultiply(color);
+                }
+                color = ImageResampler.unpremultiply(
+                        applyCoverage(color, getOvalCoverage(dstWidth, dstHeight, x, y)));
+            } else if (premultiplied) {
+                color = ImageResampler.unpremultiply(color);
+            }
+            dst[out + x] = colorMatrix != null ? ColorAdjustments.apply(colorMatrix, color) : color;
+        }
+    }
+
+    /**
+     * Get an output writing the result rows into the given array.
+     */
+    private static Output newArrayOutput(final int[] dst, final int dstWidth) {
+        return new Output() {
+            @Override
+            public void setRows(int[] pixels, int y, int rows) {
+                System.arraycopy(pixels, 0, dst, y * dstWidth, rows * dstWidth);
+            }
+        };
+    }
+
+    /**
+     * Crop the given source pixels into the given result without color adjustments.
+     *
+     * @see #transform(int[], int, int, float[], int[], int, int, boolean, float[])
+     */
+    static void transform(int[] src, int srcWidth, int srcHeight, float[] points, int[] dst,
+            int dstWidth, int dstHeight, boolean oval) {
+        transform(src, srcWidth, srcHeight, points, dst, dstWidth, dstHeight, oval, null);
+    }
+
+    /**
+     * Crop the given source pixels into the given result without masking.
+     *
+     * @see #transform(int[], int, int, float[], int[], int, int, boolean, float[])
+     */
+    static void transform(int[] src, int srcWidth, int srcHeight, float[] points, int[] dst,
+            int dstWidth, int dstHeight) {
+        transform(src, srcWidth, srcHeight, points, dst, dstWidth, dstHeight, false, null);
+    }
+
+    /**
+     * Get the perspective transform from result pixel coordinates to source pixel coordinates
+     * that maps the corners of the result to the given points, see {@link
+     * #mapPerspective(float[], float, float, float[])}.<br>
+     * Solved in closed form for the unit square (Heckbert) and scaled to the result size.
+     *
+     * @return the 8 coefficients {a, b, c, d, e, f, g, h}, null if the points are a parallelogram
+     * (or degenerate) that the affine transform maps exactly
+     */
+    static float[] getHomography(float[] points, int dstWidth, int dstHeight) {
+        float x0 = points[0], y0 = points[1], x1 = points[2], y1 = points[3];
+        float x2 = points[4], y2 = points[5], x3 = points[6], y3 = points[7];
+        float dx3 = x0 - x1 + x2 - x3;
+        float dy3 = y0 - y1 + y2 - y3;
+        float size = Math.abs(x2 - x0) + Math.abs(y2 - y0) + Math.abs(x3 - x1)
+                + Math.abs(y3 - y1);
+        if (Math.abs(dx3) + Math.abs(dy3) <= size * 1e-4f) {
+            return null;
+        }
+        float dx1 = x1 - x2;
+        float dy1 = y1 - y2;
+        float dx2 = x3 - x2;
+        float dy2 = y3 - y2;
+        float det = dx1 * dy2 - dx2 * dy1;
+        if (det == 0) {
+            return null;
+        }
+        float g = (dx3 * dy2 - dx2 * dy3) / det;
+        float h = (dx1 * dy3 - dx3 * dy1) / det;
+        return new float[]{
+                (x1 - x0 + g * x1) / dstWidth, (x3 - x0 + h * x3) / dstHeight, x0,
+                (y1 - y0 + g * y1) / dstWidth, (y3 - y0 + h * y3) / dstHeight, y0,
+                g / dstWidth, h / dstHeight
+        };
+    }
+
+    /**
+     * Map the given result position through the given perspective transform.
+     *
+     * @param point the array to write the source position (x, y) to
+     */
+    static void mapPerspective(float[] homography, float x, float y, float[] point) {
+        float w = homography[6] * x + homography[7] * y + 1;
+        point[0] = (homography[0] * x + homography[1] * y + homography[2]) / w;
+        point[1] = (homography[3] * x + homography[4] * y + homography[5]) / w;
+    }
+
+    /**
+     * Average a grid of samples spread evenly inside the result pixel at (x, y), each mapped
+     * through the given perspective transform.
+     */
+    private static int samplePerspective(Source src, float[] homography, int x, int y,
+            int samplesU, int samplesV) {
+        float a = homography[0], b = homography[1], c = homography[2];
+        float d = homography[3], e = homography[4], f = homography[5];
+        float g = homography[6], h = homography[7];
+        if (samplesU == 1 && samplesV == 1) {
+            float u = x + 0.5f;
+            float v = y + 0.5f;
+            float w = g * u + h * v + 1;
+            return sample(src, (a * u + b * v + c) / w - 0.5f, (d * u + e * v + f) / w - 0.5f);
+        }
+        int sa = 0, sr = 0, sg = 0, sb = 0;
+        for (int j = 0; j < samplesV; j++) {
+            float v = y + (j + 0.5f) / samplesV;
+            for (int i = 0; i < samplesU; i++) {
+                float u = x + (i + 0.5f) / samplesU;
+                float w = g * u + h * v + 1;
+                int color = sample(src, (a * u + b * v + c) / w - 0.5f,
+                        (d * u + e * v + f) / w - 0.5f);
+                sa += color >>> 24;
+                sr += (color >> 16) & 0xFF;
+                sg += (color >> 8) & 0xFF;
+                sb += color & 0xFF;
+            }
+        }
+        int count = samplesU * samplesV;
+        int half = count / 2;
+        return (((sa + half) / count) << 24) | (((sr + half) / count) << 16)
+                | (((sg + half) / count) << 8) | ((sb + half) / count);
+    }
+
+    /**
+     * Get the distance between the points at the given indices.
+     */
+    static float getDistance(float[] points, int first, int second) {
+        return (float) Math.hypot(points[second * 2] - points[first * 2],
+                points[second * 2 + 1] - points[first * 2 + 1]);
+    }
+
+    /**
+     * Get the horizontal spans of the given row of the oval inscribed in a width x height result,
+     * computed analytically from the half width of the oval at the top and bottom of the row.<br>
+     * The result is {outer start, inner start, inner end, outer end}: pixels outside the outer
+     * span are fully transparent, pixels inside the inner span are fully covered.
+     */
+    static void getOvalSpan(int width, int height, int y, int[] span) {
+        float a = width / 2f;
+        float b = height / 2f;
+        float dy = Math.abs(y + 0.5f - b);
+
+        // a margin of a pixel on both sides keeps the spans conservative for the edge coverage
+        float near = Math.max(0, dy - 1);
+        if (near >= b) {
+            span[0] = span[1] = span[2] = span[3] = 0;
+            return;
+        }
+        float outer = a * (float) Math.sqrt(1 - (near / b) * (near / b)) + 1;
+        span[0] = Math.max(0, (int) Math.floor(a - outer));
+        span[3] = Math.min(width, (int) Math.ceil(a + outer));
+
+        float far = dy + 1;
+        float inner = far < b ? a * (float) Math.sqrt(1 - (far / b) * (far / b)) - 1 : -1;
+        if (inner > 0) {
+            span[1] = Math.max(span[0], (int) Math.ceil(a - inner - 0.5f));
+            span[2] = Math.max(span[1], Math.min(span[3], (int) Math.floor(a + inner - 0.5f) + 1));
+        } else {
+            span[1] = span[2] = span[3];
+        }
+    }
+
+    /**
+     * Get the part of the result pixel at (x, y) covered by the inscribed oval, from the distance
+     * of the pixel center to the oval edge (first order approximation).
+     *
+     * @return the coverage from 0 (outside) to 256 (inside)
+     */
+    static int getOvalCoverage(int width, int height, int x, int y) {
+        float a = width / 2f;
+        float b = height / 2f;
+        float dx = x + 0.5f - a;
+        float dy = y + 0.5f - b;
+        float nx = dx / (a * a);
+        float ny = dy / (b * b);
+        float gradient = 2 * (float) Math.sqrt(nx * nx + ny * ny);
+        if (gradient == 0) {
+            return 256;
+        }
+        float distance = (dx * nx + dy * ny - 1) / gradient;
+        float coverage = 0.5f - distance;
+        return coverage <= 0 ? 0 : coverage >= 1 ? 256 : (int) (coverage * 256 + 0.5f);
+    }
+
+    /**
+     * Scale all channels of the given premultiplied color by the given coverage out of 256.
+     */
+    private static int applyCoverage(int color, int coverage) {
+        if (coverage >= 256) {
+            return color;
+        } else if (coverage <= 0) {
+            return 0;
+        }
+        int a = ((color >>> 24) * coverage + 128) >> 8;
+        int r = (((color >> 16) & 0xFF) * coverage + 128) >> 8;
+        int g = (((color >> 8) & 0xFF) * coverage + 128) >> 8;
+        int b = ((color & 0xFF) * coverage + 128) >> 8;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Get the size to sample the given source size at for a result of the given size: the
+     * source size when scaling up, the size {@link #MAX_SAMPLES} samples per pixel cover when
+     * scaling down further than that, the result size otherwise.
+     */
+    static int getSampledSize(float srcSize, int dstSize) {
+        if (Math.round(srcSize) < dstSize) {
+            return Math.max(1, Math.round(srcSize));
+        }
+        int minSize = (int) Math.ceil(srcSize / MAX_SAMPLES - 0.01f);
+        return Math.max(dstSize, minSize);
+    }
+
+    /**
+     * Get the number of samples per axis for the given source distance between result pixels.
+     */
+    private static int getSamples(float step) {
+        return Math.max(1, Math.min(MAX_SAMPLES, (int) Math.ceil(step - 0.01f)));
+    }
+
+    /**
+     * Average a grid of samples spread evenly inside the result pixel at (x, y).
+     */
+    private static int sampleArea(Source src, float originX, float originY, int x, int y,
+            float ux, float uy, float vx, float vy, int samplesU, int samplesV) {
+        int a = 0, r = 0, g = 0, b = 0;
+        for (int j = 0; j < samplesV; j++) {
+            float v = y + (j + 0.5f) / samplesV;
+            for (int i = 0; i < samplesU; i++) {
+                float u = x + (i + 0.5f) / samplesU;
+                int color = sample(src, originX + u * ux + v * vx, originY + u * uy + v * vy);
+                a += color >>> 24;
+                r += (color >> 16) & 0xFF;
+                g += (color >> 8) & 0xFF;
+                b += color & 0xFF;
+            }
+        }
+        int count = samplesU * samplesV;
+        int half = count / 2;
+        return (((a + half) / count) << 24) | (((r + half) / count) << 16)
+                | (((g + half) / count) << 8) | ((b + half) / count);
+    }
+
+    /**
+     * Bilinear sample of the source at the given position (in pixel center coordinates), edges are
+     * clamped.
+     *
+     * @return the premultiplied color
+     */
+    static int sample(Source src, float x, float y) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+        if (x < 0) {
+            x = 0;
+        } else if (x > width - 1) {
+            x = width - 1;
+        }
+        if (y < 0) {
+            y = 0;
+        } else if (y > height - 1) {
+            y = height - 1;
+        }
+
+        int x0 = (int) x;
+        int y0 = (int) y;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+
+        // 8 bit fixed point weights
+        int fx = (int) ((x - x0) * 256);
+        int fy = (int) ((y - y0) * 256);
+        int w00 = (256 - fx) * (256 - fy);
+        int w10 = fx * (256 - fy);
+        int w01 = (256 - fx) * fy;
+        int w11 = fx * fy;
+
+        int c00 = ImageResampler.premultiply(src.getPixel(x0, y0));
+        int c10 = ImageResampler.premultiply(src.getPixel(x1, y0));
+        int c01 = ImageResampler.premultiply(src.getPixel(x0, y1));
+        int c11 = ImageResampler.premultiply(src.getPixel(x1, y1));
+
+        int a = ((c00 >>> 24) * w00 + (c10 >>> 24) * w10 + (c01 >>> 24) * w01
+                + (c11 >>> 24) * w11 + 32768) >>> 16;
+        int r = (((c00 >> 16) & 0xFF) * w00 + ((c10 >> 16) & 0xFF) * w10
+                + ((c01 >> 16) & 0xFF) * w01 + ((c11 >> 16) & 0xFF) * w11 + 32768) >>> 16;
+        int g = (((c00 >> 8) & 0xFF) * w00 + ((c10 >> 8) & 0xFF) * w10
+                + ((c01 >> 8) & 0xFF) * w01 + ((c11 >> 8) & 0xFF) * w11 + 32768) >>> 16;
+        int b = ((c00 & 0xFF) * w00 + (c10 & 0xFF) * w10 + (c01 & 0xFF) * w01
+                + (c11 & 0xFF) * w11 + 32768) >>> 16;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+}
@@ -0,0 +1,126 @@
+package com.thecarousell.cropimageview;
+
+import java.util.Arrays;
+
+/**
+ * Uniform grid over the view to find the crop window under a touch without testing all of them.
+ * <br>
+ * Every cell lists the windows whose touch area overlaps it, stored compactly as one array of
+ * window indices per cell range, so rebuilding after the windows moved does not allocate once the
+ * arrays are large enough.
+ */
+final class CropRegionIndex {
+
+    /**
+     * The number of cells on each axis.
+     */
+    private static final int GRID_SIZE = 8;
+
+    /**
+     * The window rectangles (left, top, right, bottom) the index was built for.
+     */
+    private float[] mRects = new float[0];
+
+    private float mMargin;
+
+    private float mCellWidth;
+
+    private float mCellHeight;
+
+    /**
+     * The start of the windows of each cell in {@link #mCellRegions}, the last entry is the end.
+     */
+    private final int[] mCellStart = new int[GRID_SIZE * GRID_SIZE + 1];
+
+    /**
+     * The window indices of all the cells, ascending in each cell.
+     */
+    private int[] mCellRegions = new int[0];
+
+    /**
+     * Build the index for the given windows.
+     *
+     * @param rects  the rectangles (left, top, right, bottom) of the windows
+     * @param count  the number of windows in the given rectangles
+     * @param skip   the window to ignore (e.g. the one that is handled separately), -1 for none
+     * @param margin the distance around a window that still touches it
+     * @param width  the width of the area to index
+     * @param height the height of the area to index
+     */
+    void set(float[] rects, int count, int skip, float margin, float width, float height) {
+        if (mRects.length < count * 4) {
+            mRects = new float[count * 4];
+        }
+        System.arraycopy(rects, 0, mRects, 0, count * 4);
+        mMargin = margin;
+        mCellWidth = Math.max(1, width / GRID_SIZE);
+        mCellHeight = Math.max(1, height / GRID_SIZE);
+
+        // count the windows of every cell, then fill them in at the cell offsets
+        Arrays.fill(mCellStart, 0);
+        for (int i = 0; i < count; i++) {
+            if (i != skip) {
+                for (int row = getRow(i, 1); row <= getRow(i, 3); row++) {
+                    for (int column = getColumn(i, 0); column <= getColumn(i, 2); column++) {
+                        mCellStart[row * GRID_SIZE + column + 1]++;
+                    }
+                }
+            }
+        }
+        for (int cell = 0; cell < GRID_SIZE * GRID_SIZE; cell++) {
+            mCellStart[cell + 1] += mCellStart[cell];
+        }
+        if (mCellRegions.length < mCellStart[GRID_SIZE * GRID_SIZE]) {
+            mCellRegions = new int[mCellStart[GRID_SIZE * GRID_SIZE]];
+        }
+        for (int i = 0; i < count; i++) {
+            if (i != skip) {
+                for (int row = getRow(i, 1); row <= getRow(i, 3); row++) {
+                    for (int column = getColumn(i, 0); column <= getColumn(i, 2); column++) {
+                        int cell = row * GRID_SIZE + column;
+                        mCellRegions[mCellStart[cell]++] = i;
+                    }
+                }
+            }
+        }
+        // the fill advanced every cell start to its end, which is the start of the next cell
+        for (int cell = GRID_SIZE * GRID_SIZE - 1; cell > 0; cell--) {
+            mCellStart[cell] = mCellStart[cell - 1];
+        }
+        mCellStart[0] = 0;
+    }
+
+    /**
+     * Find the window touched at the given point, the last added window wins on overlap.
+     *
+     * @return the index of the window, -1 if none
+     */
+    int find(float x, float y) {
+        int column = clamp((int) (x / mCellWidth));
+        int row = clamp((int) (y / mCellHeight));
+        int cell = row * GRID_SIZE + column;
+        for (int i = mCellStart[cell + 1] - 1; i >= mCellStart[cell]; i--) {
+            int region = mCellRegions[i];
+            int offset = region * 4;
+            if (x >= mRects[offset] - mMargin && x <= mRects[offset + 2] + mMargin
+                    && y >= mRects[offset + 1] - mMargin && y <= mRects[offset + 3] + mMargin) {
+                return region;
+            }
+        }
+        return -1;
+    }
+
+    private int getColumn(int region, int edge) {
+        float margin = edge == 0 ? -mMargin : mMargin;
+        return clamp((int) ((mRects[region * 4 + edge] + margin) / mCellWidth));
+    }
+
+    private int getRow(int region, int edge) {
+        float margin = edge == 1 ? -mMargin : mMargin;
+        return clamp((int) ((mRects[region * 4 + edge] + margin) / mCellHeight));
+    }
+
+    private static int clamp(int cell) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, cell));
+    }
+}
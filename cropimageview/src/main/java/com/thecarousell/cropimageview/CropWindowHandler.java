@@ -2,6 +2,8 @@ package com.thecarousell.cropimageview;
 
 import android.graphics.RectF;
 
+import java.util.Arrays;
+
 /**
  * Handler from crop window stuff, moving and knowing possition.
  */
@@ -62,6 +64,35 @@ final class CropWindowHandler {
      */
     private float mMaxCropResultHeight;
 
+    /**
+     * The x-coordinates where the hit-test zones of the crop window change, sorted.
+     */
+    private final float[] mZoneXs = new float[6];
+
+    /**
+     * The y-coordinates where the hit-test zones of the crop window change, sorted.
+     */
+    private final float[] mZoneYs = new float[6];
+
+    /**
+     * The move type of every cell between the zone coordinates, row by row, null for no handle.
+     */
+    private final CropWindowMoveHandler.Type[] mZones = new CropWindowMoveHandler.Type[7 * 7];
+
+    /**
+     * The number of used coordinates in {@link #mZoneXs} and {@link #mZoneYs}.
+     */
+    private int mZoneCount;
+
+    /**
+     * If the hit-test zones match the current edges, radius and shape.
+     */
+    private boolean mZonesValid;
+
+    private float mZonesTargetRadius;
+
+    private CropImage.CropShape mZonesCropShape;
+
     /**
      * The width scale factor of shown image and actual image
      */
@@ -72,6 +103,18 @@ final class CropWindowHandler {
      */
     private float mScaleFactorHeight = 1;
 
+    /**
+     * The min/max crop window size by both the window and the result limits, recalculated only
+     * when a limit or scale factor changes as they are read on every move and fix of the window.
+     */
+    private float mMinCropWidth;
+
+    private float mMinCropHeight;
+
+    private float mMaxCropWidth;
+
+    private float mMaxCropHeight;
+
     /**
      * Get the left/top/right/bottom coordinates of the crop window.
      */
@@ -84,28 +127,28 @@ final class CropWindowHandler {
      * Minimum width in pixels that the crop window can get.
      */
     float getMinCropWidth() {
-        return Math.max(mMinCropWindowWidth, mMinCropResultWidth / mScaleFactorWidth);
+        return mMinCropWidth;
     }
 
     /**
      * Minimum height in pixels that the crop window can get.
      */
     float getMinCropHeight() {
-        return Math.max(mMinCropWindowHeight, mMinCropResultHeight / mScaleFactorHeight);
+        return mMinCropHeight;
     }
 
     /**
      * Maximum width in pixels that the crop window can get.
      */
     float getMaxCropWidth() {
-        return Math.min(mMaxCropWindowWidth, mMaxCropResultWidth / mScaleFactorWidth);
+        return mMaxCropWidth;
     }
 
     /**
      * Maximum height in pixels that the crop window can get.
      */
     float getMaxCropHeight() {
-        return Math.min(mMaxCropWindowHeight, mMaxCropResultHeight / mScaleFactorHeight);
+        return mMaxCropHeight;
     }
 
     /**
@@ -130,6 +173,7 @@ final class CropWindowHandler {
     void setMinCropResultSize(int minCropResultWidth, int minCropResultHeight) {
         mMinCropResultWidth = minCropResultWidth;
         mMinCropResultHeight = minCropResultHeight;
+        updateCropLimits();
     }
 
     /**
@@ -140,6 +184,7 @@ final class CropWindowHandler {
     void setMaxCropResultSize(int maxCropResultWidth, int maxCropResultHeight) {
         mMaxCropResultWidth = maxCropResultWidth;
         mMaxCropResultHeight = maxCropResultHeight;
+        updateCropLimits();
     }
 
     /**
@@ -149,10 +194,15 @@ final class CropWindowHandler {
      */
     void setCropWindowLimits(float maxWidth, float maxHeight, float scaleFactorWidth,
             float scaleFactorHeight) {
-        mMaxCropWindowWidth = maxWidth;
-        mMaxCropWindowHeight = maxHeight;
-        mScaleFactorWidth = scaleFactorWidth;
-        mScaleFactorHeight = scaleFactorHeight;
+        if (mMaxCropWindowWidth != maxWidth || mMaxCropWindowHeight != maxHeight
+                || mScaleFactorWidth != scaleFactorWidth
+                || mScaleFactorHeight != scaleFactorHeight) {
+            mMaxCropWindowWidth = maxWidth;
+            mMaxCropWindowHeight = maxHeight;
+            mScaleFactorWidth = scaleFactorWidth;
+            mScaleFactorHeight = scaleFactorHeight;
+            updateCropLimits();
+        }
     }
 
     /**
@@ -165,13 +215,24 @@ final class CropWindowHandler {
         mMinCropResultHeight = options.minCropResultHeight;
         mMaxCropResultWidth = options.maxCropResultWidth;
         mMaxCropResultHeight = options.maxCropResultHeight;
+        updateCropLimits();
+    }
+
+    private void updateCropLimits() {
+        mMinCropWidth = Math.max(mMinCropWindowWidth, mMinCropResultWidth / mScaleFactorWidth);
+        mMinCropHeight = Math.max(mMinCropWindowHeight, mMinCropResultHeight / mScaleFactorHeight);
+        mMaxCropWidth = Math.min(mMaxCropWindowWidth, mMaxCropResultWidth / mScaleFactorWidth);
+        mMaxCropHeight = Math.min(mMaxCropWindowHeight, mMaxCropResultHeight / mScaleFactorHeight);
     }
 
     /**
      * Set the left/top/right/bottom coordinates of the crop window.
      */
     void setRect(RectF rect) {
-        mEdges.set(rect);
+        if (!mEdges.equals(rect)) {
+            mEdges.set(rect);
+            mZonesValid = false;
+        }
     }
 
     /**
@@ -196,12 +257,106 @@ final class CropWindowHandler {
      */
     CropWindowMoveHandler getMoveHandler(float x, float y, float targetRadius,
             CropImage.CropShape cropShape) {
-        CropWindowMoveHandler.Type type = cropShape == CropImage.CropShape.OVAL
-                ? getOvalPressedMoveType(x, y)
-                : getRectanglePressedMoveType(x, y, targetRadius);
+        CropWindowMoveHandler.Type type = getPressedMoveType(x, y, targetRadius, cropShape);
         return type != null ? new CropWindowMoveHandler(type, this, x, y) : null;
     }
 
+    /**
+     * Determines which, if any, of the handles are at the given coordinates, used for both touch
+     * and hover.<br>
+     * Answered from precomputed zones that are rebuilt only after the edges, radius or shape
+     * changed, so repeated calls (e.g. hover moves) cost a few comparisons.
+     *
+     * @return the handle type at the coordinates; null if none
+     */
+    CropWindowMoveHandler.Type getPressedMoveType(float x, float y, float targetRadius,
+            CropImage.CropShape cropShape) {
+        if (!mZonesValid || mZonesTargetRadius != targetRadius || mZonesCropShape != cropShape) {
+            buildZones(targetRadius, cropShape);
+        }
+        int column = getZoneIndex(mZoneXs, x);
+        int row = getZoneIndex(mZoneYs, y);
+        return mZones[row * (mZoneCount + 1) + column];
+    }
+
+    /**
+     * Split the plane into cells at every coordinate where a handle zone starts or ends, and find
+     * the handle type of each cell by testing a point inside of it.
+     */
+    private void buildZones(float targetRadius, CropImage.CropShape cropShape) {
+        boolean oval = cropShape == CropImage.CropShape.OVAL;
+        if (oval) {
+            // the oval grid handles cover its bounds and the touch radius around, not further
+            mZoneCount = 4;
+            mZoneXs[0] = mEdges.left - targetRadius;
+            mZoneXs[1] = mEdges.left + mEdges.width() / 6;
+            mZoneXs[2] = mEdges.left + 5 * mEdges.width() / 6;
+            mZoneXs[3] = mEdges.right + targetRadius;
+            mZoneYs[0] = mEdges.top - targetRadius;
+            mZoneYs[1] = mEdges.top + mEdges.height() / 6;
+            mZoneYs[2] = mEdges.top + 5 * mEdges.height() / 6;
+            mZoneYs[3] = mEdges.bottom + targetRadius;
+        } else {
+            mZoneCount = 6;
+            setZoneCoordinates(mZoneXs, mEdges.left, mEdges.right, targetRadius);
+            setZoneCoordinates(mZoneYs, mEdges.top, mEdges.bottom, targetRadius);
+        }
+
+        for (int row = 0; row <= mZoneCount; row++) {
+            float y = getZoneCenter(mZoneYs, row);
+            for (int column = 0; column <= mZoneCount; column++) {
+                float x = getZoneCenter(mZoneXs, column);
+                CropWindowMoveHandler.Type type;
+                if (!oval) {
+                    type = getRectanglePressedMoveType(x, y, targetRadius);
+                } else if (row == 0 || row == mZoneCount || column == 0
+                        || column == mZoneCount) {
+                    type = null;
+                } else {
+                    type = getOvalPressedMoveType(x, y);
+                }
+                mZones[row * (mZoneCount + 1) + column] = type;
+            }
+        }
+        mZonesTargetRadius = targetRadius;
+        mZonesCropShape = cropShape;
+        mZonesValid = true;
+    }
+
+    private void setZoneCoordinates(float[] coordinates, float start, float end,
+            float targetRadius) {
+        coordinates[0] = start - targetRadius;
+        coordinates[1] = start;
+        coordinates[2] = start + targetRadius;
+        coordinates[3] = end - targetRadius;
+        coordinates[4] = end;
+        coordinates[5] = end + targetRadius;
+        Arrays.sort(coordinates, 0, mZoneCount);
+    }
+
+    /**
+     * Get a coordinate inside the given cell, the outer cells are unbounded.
+     */
+    private float getZoneCenter(float[] coordinates, int index) {
+        if (index == 0) {
+            return coordinates[0] - 1;
+        } else if (index == mZoneCount) {
+            return coordinates[mZoneCount - 1] + 1;
+        }
+        return (coordinates[index - 1] + coordinates[index]) / 2;
+    }
+
+    /**
+     * Get the cell of the given coordinate, the number of zone coordinates before it.
+     */
+    private int getZoneIndex(float[] coordinates, float value) {
+        int index = 0;
+        while (index < mZoneCount && value >= coordinates[index]) {
+            index++;
+        }
+        return index;
+    }
+
     /**
      * Determines which, if any, of the handles are pressed given the touch
      * coordinates, the bounding box, and the touch radius.
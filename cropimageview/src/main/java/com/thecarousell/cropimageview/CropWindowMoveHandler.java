@@ -51,6 +51,16 @@ final class CropWindowMoveHandler {
      */
     private final PointF mTouchOffset = new PointF();
 
+    /**
+     * The x-coordinates of the vertical image content edges the crop window snaps to, ascending.
+     */
+    private float[] mContentEdgesX;
+
+    /**
+     * The y-coordinates of the horizontal image content edges the crop window snaps to, ascending.
+     */
+    private float[] mContentEdgesY;
+
     /**
      * @param cropWindowHandler main crop window handle to get and update the crop window edges
      * @param touchX            the location of the initial toch possition to measure move distance
@@ -66,6 +76,18 @@ final class CropWindowMoveHandler {
         calculateTouchOffset(cropWindowHandler.getRect(), touchX, touchY);
     }
 
+    /**
+     * Set the image content edges (in view pixels) the moved crop window edges snap to within the
+     * snap margin, in addition to the image bounds.
+     *
+     * @param edgesX the x-coordinates of the vertical edges, ascending, null for none
+     * @param edgesY the y-coordinates of the horizontal edges, ascending, null for none
+     */
+    void setContentEdges(float[] edgesX, float[] edgesY) {
+        mContentEdgesX = edgesX;
+        mContentEdgesY = edgesY;
+    }
+
     /**
      * Updates the crop window by change in the toch location.<br>
      * Move type handled by this instance, as initialized in creation, affects how the change in
@@ -346,6 +368,8 @@ final class CropWindowMoveHandler {
 
         if (newLeft - bounds.left < snapMargin) {
             newLeft = bounds.left;
+        } else {
+            newLeft = ContentEdges.snap(mContentEdgesX, newLeft, snapMargin);
         }
 
         // Checks if the window is too small horizontally
@@ -427,6 +451,8 @@ final class CropWindowMoveHandler {
         // If close to the edge
         if (bounds.right - newRight < snapMargin) {
             newRight = bounds.right;
+        } else {
+            newRight = ContentEdges.snap(mContentEdgesX, newRight, snapMargin);
         }
 
         // Checks if the window is too small horizontally
@@ -508,6 +534,8 @@ final class CropWindowMoveHandler {
 
         if (newTop - bounds.top < snapMargin) {
             newTop = bounds.top;
+        } else {
+            newTop = ContentEdges.snap(mContentEdgesY, newTop, snapMargin);
         }
 
         // Checks if the window is too small vertically
@@ -588,6 +616,8 @@ final class CropWindowMoveHandler {
 
         if (bounds.bottom - newBottom < snapMargin) {
             newBottom = bounds.bottom;
+        } else {
+            newBottom = ContentEdges.snap(mContentEdgesY, newBottom, snapMargin);
         }
 
         // Checks if the window is too small vertically
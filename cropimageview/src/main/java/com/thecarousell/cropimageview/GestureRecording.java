@@ -0,0 +1,239 @@
+package com.thecarousell.cropimageview;
+
+import android.os.Debug;
+import android.os.SystemClock;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The touch events delivered to the crop overlay, with their timestamps and historical samples,
+ * and the view/image geometry they were recorded on, to replay a gesture exactly in a test.<br>
+ * Started by {@link CropImageView#startGestureRecording()}, replayed by {@link
+ * CropImageView#replayGestureRecording(GestureRecording)} on a view of the same size with an image
+ * of the same size.<br>
+ * Written as a compact binary file: a header with the geometry and the crop state at the start,
+ * then every event as its action, pointer ids and samples of event time (relative to the first
+ * down) and pointer positions.
+ */
+public final class GestureRecording {
+
+    /**
+     * The file header, "CIVG".
+     */
+    private static final int MAGIC = 0x43495647;
+
+    private static final int VERSION = 1;
+
+    private final int mViewWidth;
+
+    private final int mViewHeight;
+
+    private final int mBitmapWidth;
+
+    private final int mBitmapHeight;
+
+    /**
+     * The crop window and image transformation at the start of the recording.
+     */
+    private final float[] mState;
+
+    /**
+     * The encoded events.
+     */
+    private final ByteArrayOutputStream mEvents = new ByteArrayOutputStream();
+
+    private final DataOutputStream mEventsOut = new DataOutputStream(mEvents);
+
+    private int mEventCount;
+
+    /**
+     * The down time of the first event, the event times are recorded relative to it.
+     */
+    private long mStartTime;
+
+    GestureRecording(int viewWidth, int viewHeight, int bitmapWidth, int bitmapHeight,
+            float[] state) {
+        mViewWidth = viewWidth;
+        mViewHeight = viewHeight;
+        mBitmapWidth = bitmapWidth;
+        mBitmapHeight = bitmapHeight;
+        mState = state;
+    }
+
+    /**
+     * Read a recording written by {@link #write(OutputStream)}.
+     */
+    public static GestureRecording read(InputStream inputStream) throws IOException {
+        DataInputStream in = new DataInputStream(inputStream);
+        if (in.readInt() != MAGIC || in.readUnsignedShort() != VERSION) {
+            throw new IOException("Not a gesture recording");
+        }
+        int viewWidth = in.readInt();
+        int viewHeight = in.readInt();
+        int bitmapWidth = in.readInt();
+        int bitmapHeight = in.readInt();
+        float[] state = new float[in.readUnsignedByte()];
+        for (int i = 0; i < state.length; i++) {
+            state[i] = in.readFloat();
+        }
+        GestureRecording recording =
+                new GestureRecording(viewWidth, viewHeight, bitmapWidth, bitmapHeight, state);
+        recording.mEventCount = in.readInt();
+        byte[] events = new byte[in.readInt()];
+        in.readFully(events);
+        recording.mEvents.write(events);
+        return recording;
+    }
+
+    /**
+     * Write the recording to the given stream, the stream is not closed.
+     */
+    public void write(OutputStream outputStream) throws IOException {
+        DataOutputStream out = new DataOutputStream(outputStream);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeInt(mViewWidth);
+        out.writeInt(mViewHeight);
+        out.writeInt(mBitmapWidth);
+        out.writeInt(mBitmapHeight);
+        out.writeByte(mState.length);
+        for (float value : mState) {
+            out.writeFloat(value);
+        }
+        out.writeInt(mEventCount);
+        out.writeInt(mEvents.size());
+        mEvents.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * The number of recorded touch events.
+     */
+    public int getEventCount() {
+        return mEventCount;
+    }
+
+    /**
+     * Whether the recording was made on a view and image of the given sizes.
+     */
+    boolean matches(int viewWidth, int viewHeight, int bitmapWidth, int bitmapHeight) {
+        return mViewWidth == viewWidth && mViewHeight == viewHeight
+                && mBitmapWidth == bitmapWidth && mBitmapHeight == bitmapHeight;
+    }
+
+    float[] getState() {
+        return mState;
+    }
+
+    /**
+     * Append the given event delivered to the crop overlay.
+     */
+    void record(MotionEvent event) {
+        if (mEventCount == 0) {
+            mStartTime = event.getDownTime();
+        }
+        int pointerCount = event.getPointerCount();
+        int historySize = event.getHistorySize();
+        DataOutputStream out = mEventsOut;
+        try {
+            out.writeByte(event.getActionMasked());
+            out.writeByte(event.getActionIndex());
+            out.writeByte(pointerCount);
+            out.writeShort(historySize);
+            out.writeInt((int) (event.getDownTime() - mStartTime));
+            for (int p = 0; p < pointerCount; p++) {
+                out.writeByte(event.getPointerId(p));
+            }
+            for (int h = 0; h < historySize; h++) {
+                out.writeInt((int) (event.getHistoricalEventTime(h) - mStartTime));
+                for (int p = 0; p < pointerCount; p++) {
+                    out.writeFloat(event.getHistoricalX(p, h));
+                    out.writeFloat(event.getHistoricalY(p, h));
+                }
+            }
+            out.writeInt((int) (event.getEventTime() - mStartTime));
+            for (int p = 0; p < pointerCount; p++) {
+                out.writeFloat(event.getX(p));
+                out.writeFloat(event.getY(p));
+            }
+        } catch (IOException e) {
+            // writing to memory doesn't fail
+            throw new IllegalStateException(e);
+        }
+        mEventCount++;
+    }
+
+    /**
+     * Dispatch the recorded events to the given view, the event times are shifted to now.
+     *
+     * @return the CPU time (in nanoseconds) of the thread spent in dispatching every event
+     */
+    long[] replay(View view) {
+        long[] durations = new long[mEventCount];
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(mEvents.toByteArray()));
+        long startTime = SystemClock.uptimeMillis();
+        try {
+            for (int i = 0; i < mEventCount; i++) {
+                int action = in.readUnsignedByte();
+                int actionIndex = in.readUnsignedByte();
+                int pointerCount = in.readUnsignedByte();
+                int historySize = in.readUnsignedShort();
+                long downTime = startTime + in.readInt();
+
+                MotionEvent.PointerProperties[] properties =
+                        new MotionEvent.PointerProperties[pointerCount];
+                MotionEvent.PointerCoords[] coords = new MotionEvent.PointerCoords[pointerCount];
+                for (int p = 0; p < pointerCount; p++) {
+                    properties[p] = new MotionEvent.PointerProperties();
+                    properties[p].id = in.readUnsignedByte();
+                    properties[p].toolType = MotionEvent.TOOL_TYPE_FINGER;
+                    coords[p] = new MotionEvent.PointerCoords();
+                    coords[p].pressure = 1;
+                    coords[p].size = 1;
+                }
+
+                // the first sample creates the event, the next ones push it to the history
+                MotionEvent event = null;
+                for (int h = 0; h <= historySize; h++) {
+                    long eventTime = startTime + in.readInt();
+                    for (int p = 0; p < pointerCount; p++) {
+                        coords[p].x = in.readFloat();
+                        coords[p].y = in.readFloat();
+                    }
+                    if (event == null) {
+                        event = MotionEvent.obtain(downTime, eventTime,
+                                action | actionIndex << MotionEvent.ACTION_POINTER_INDEX_SHIFT,
+                                pointerCount, properties, coords, 0, 0, 1, 1, 0, 0, 0, 0);
+                    } else {
+                        event.addBatch(eventTime, coords, 0);
+                    }
+                }
+
+                long start = getThreadTime();
+                view.dispatchTouchEvent(event);
+                durations[i] = getThreadTime() - start;
+                event.recycle();
+            }
+        } catch (IOException e) {
+            // only a recording corrupted after the header ends early
+            throw new IllegalStateException("Corrupt gesture recording", e);
+        }
+        return durations;
+    }
+
+    /**
+     * The CPU time of the current thread, the wall time where it is not supported.
+     */
+    private static long getThreadTime() {
+        long time = Debug.threadCpuTimeNanos();
+        return time != -1 ? time : System.nanoTime();
+    }
+}
@@ -0,0 +1,196 @@
+package com.thecarousell.cropimageview;
+
+import android.content.Context;
+import android.os.Build;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
+import android.view.View;
+import android.widget.OverScroller;
+
+/**
+ * Handles touch gestures on the image outside of the crop window: dragging pans the image, a
+ * fling keeps panning it with deceleration and pinching zooms it around the gesture focal point.
+ * <br>
+ * The fling runs on an {@link OverScroller} stepped once per display frame, every step only passes
+ * the distance moved since the previous step to the {@link Listener}. The end of the panning, at
+ * the release or at the end of the fling, is notified once.
+ */
+final class ImageGestureHandler implements Runnable {
+
+    /**
+     * Fallback frame delay when frame synced callbacks are not available (below API 16).
+     */
+    private static final long FRAME_DELAY = 16;
+
+    private final View mView;
+
+    private final Listener mListener;
+
+    private final GestureDetector mGestureDetector;
+
+    private final ScaleGestureDetector mScaleGestureDetector;
+
+    private final OverScroller mScroller;
+
+    /**
+     * The scroller position handled by the previous fling step.
+     */
+    private int mFlingLastX;
+
+    private int mFlingLastY;
+
+    /**
+     * If the image was panned since the last notified pan end.
+     */
+    private boolean mPanned;
+
+    ImageGestureHandler(Context context, View view, Listener listener) {
+        mView = view;
+        mListener = listener;
+        mScroller = new OverScroller(context);
+        mGestureDetector = new GestureDetector(context,
+                new GestureDetector.SimpleOnGestureListener() {
+                    @Override
+                    public boolean onDown(MotionEvent e) {
+                        stopFling();
+                        endPan();
+                        return true;
+                    }
+
+                    @Override
+                    public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX,
+                            float distanceY) {
+                        boolean moved = mListener.onPan(-distanceX, -distanceY);
+                        mPanned |= moved;
+                        return moved;
+                    }
+
+                    @Override
+                    public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX,
+                            float velocityY) {
+                        startFling(velocityX, velocityY);
+                        return true;
+                    }
+                });
+        mScaleGestureDetector = new ScaleGestureDetector(context,
+                new ScaleGestureDetector.SimpleOnScaleGestureListener() {
+                    @Override
+                    public boolean onScale(ScaleGestureDetector detector) {
+                        mListener.onZoom(detector.getScaleFactor(), detector.getFocusX(),
+                                detector.getFocusY());
+                        return true;
+                    }
+
+                    @Override
+                    public void onScaleEnd(ScaleGestureDetector detector) {
+                        mListener.onZoomEnd();
+                    }
+                });
+    }
+
+    /**
+     * Handle a touch event of a gesture that started on the image outside of the crop window.
+     */
+    boolean onTouchEvent(MotionEvent event) {
+        mScaleGestureDetector.onTouchEvent(event);
+        boolean handled = mGestureDetector.onTouchEvent(event);
+        int action = event.getActionMasked();
+        if ((action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL)
+                && mScroller.isFinished()) {
+            // released without a fling
+            endPan();
+        }
+        return handled;
+    }
+
+    /**
+     * Stop a running fling where it is, this ends the panning.
+     */
+    void stopFling() {
+        if (!mScroller.isFinished()) {
+            mScroller.forceFinished(true);
+            mView.removeCallbacks(this);
+            endPan();
+        }
+    }
+
+    private void startFling(float velocityX, float velocityY) {
+        stopFling();
+        mFlingLastX = 0;
+        mFlingLastY = 0;
+        // the listener clamps the panning, so the fling range itself is unbounded
+        mScroller.fling(0, 0, (int) velocityX, (int) velocityY, Integer.MIN_VALUE,
+                Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MAX_VALUE);
+        postFrame();
+    }
+
+    /**
+     * Step the running fling by a single frame.
+     */
+    @Override
+    public void run() {
+        if (!mScroller.computeScrollOffset()) {
+            endPan();
+            return;
+        }
+        int x = mScroller.getCurrX();
+        int y = mScroller.getCurrY();
+        boolean moved = mListener.onPan(x - mFlingLastX, y - mFlingLastY);
+        mPanned |= moved;
+        mFlingLastX = x;
+        mFlingLastY = y;
+        if (moved && !mScroller.isFinished()) {
+            postFrame();
+        } else {
+            mScroller.forceFinished(true);
+            endPan();
+        }
+    }
+
+    /**
+     * Notify the end of the panning if the image was panned.
+     */
+    private void endPan() {
+        if (mPanned) {
+            mPanned = false;
+            mListener.onPanEnd();
+        }
+    }
+
+    private void postFrame() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            mView.postOnAnimation(this);
+        } else {
+            mView.postDelayed(this, FRAME_DELAY);
+        }
+    }
+
+    /**
+     * Interface definition for callbacks of the image gestures.
+     */
+    interface Listener {
+
+        /**
+         * Move the image by the given distance in view pixels.
+         *
+         * @return true if the image moved, false if it is already at its bounds
+         */
+        boolean onPan(float dx, float dy);
+
+        /**
+         * Called when the image stopped panning, at the release or at the end of the fling.
+         */
+        void onPanEnd();
+
+        /**
+         * Zoom the image by the given factor keeping the given view point in place.
+         */
+        void onZoom(float scaleFactor, float focusX, float focusY);
+
+        /**
+         * Called when a pinch zoom ended.
+         */
+        void onZoomEnd();
+    }
+}
@@ -0,0 +1,322 @@
+package com.thecarousell.cropimageview;
+
+import java.util.Arrays;
+
+/**
+ * High quality resizing of ARGB pixel arrays (as returned by {@code Bitmap.getPixels}).<br>
+ * Each axis is resampled separately: down-scaling averages the area of source pixels covered by
+ * every result pixel, up-scaling uses bicubic (Catmull-Rom) interpolation clamped to the range of
+ * the interpolated source pixels, so hard edges don't ring.<br>
+ * Colors are weighted by alpha so transparent pixels don't bleed, rows are processed in parallel
+ * strips.
+ */
+final class ImageResampler {
+
+    private ImageResampler() {
+    }
+
+    /**
+     * Resize the given pixels to a new array of the requested size.
+     *
+     * @param src       the source ARGB pixels, row-major without padding
+     * @param srcWidth  the width of the source
+     * @param srcHeight the height of the source
+     * @param dstWidth  the width to resize to
+     * @param dstHeight the height to resize to
+     * @return the resized ARGB pixels
+     */
+    static int[] resize(int[] src, int srcWidth, int srcHeight, int dstWidth, int dstHeight) {
+        int[] dst = new int[dstWidth * dstHeight];
+        resize(src, srcWidth, srcHeight, dst, dstWidth, dstHeight);
+        return dst;
+    }
+
+    /**
+     * Resize the given pixels into the given result array.
+     *
+     * @see #resize(int[], int, int, int, int)
+     */
+    static void resize(int[] src, int srcWidth, int srcHeight, int[] dst, int dstWidth,
+            int dstHeight) {
+        if (srcWidth <= 0 || srcHeight <= 0 || dstWidth <= 0 || dstHeight <= 0) {
+            throw new IllegalArgumentException("Cannot resize to or from an empty size");
+        }
+        PixelUtils.checkPixels(src, srcWidth, srcHeight);
+        PixelUtils.checkPixels(dst, dstWidth, dstHeight);
+
+        if (srcWidth == dstWidth && srcHeight == dstHeight) {
+            System.arraycopy(src, 0, dst, 0, dstWidth * dstHeight);
+            return;
+        }
+
+        // horizontal pass into a premultiplied intermediate of dstWidth x srcHeight
+        final int[] tmp = new int[dstWidth * srcHeight];
+        if (srcWidth == dstWidth) {
+            premultiply(src, tmp, srcWidth * srcHeight);
+        } else {
+            final Filter filter = new Filter(srcWidth, dstWidth);
+            final int[] source = src;
+            final int sw = srcWidth;
+            final int dw = dstWidth;
+            ParallelStrips.run(srcHeight, new ParallelStrips.StripTask() {
+                @Override
+                public void run(int startRow, int endRow) {
+                    for (int y = startRow; y < endRow; y++) {
+                        filter.apply(source, y * sw, tmp, y * dw);
+                    }
+                }
+            });
+        }
+
+        // vertical pass from the intermediate into the result
+        if (srcHeight == dstHeight) {
+            unpremultiply(tmp, dst, dstWidth * dstHeight);
+        } else {
+            final Filter filter = new Filter(srcHeight, dstHeight);
+            final int[] result = dst;
+            final int dw = dstWidth;
+            ParallelStrips.run(dstHeight, new ParallelStrips.StripTask() {
+                @Override
+                public void run(int startRow, int endRow) {
+                    filter.applyRows(tmp, dw, startRow, endRow, result);
+                }
+            });
+        }
+    }
+
+    /**
+     * Premultiply the color channels by alpha.
+     */
+    static int premultiply(int color) {
+        int a = color >>> 24;
+        if (a == 255) {
+            return color;
+        } else if (a == 0) {
+            return 0;
+        }
+        int r = ((color >> 16) & 0xFF) * a / 255;
+        int g = ((color >> 8) & 0xFF) * a / 255;
+        int b = (color & 0xFF) * a / 255;
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Revert {@link #premultiply(int)}, color channels are clamped to alpha.
+     */
+    static int unpremultiply(int color) {
+        int a = color >>> 24;
+        if (a == 255) {
+            return color;
+        } else if (a == 0) {
+            return 0;
+        }
+        int r = Math.min(255, Math.min(a, (color >> 16) & 0xFF) * 255 / a);
+        int g = Math.min(255, Math.min(a, (color >> 8) & 0xFF) * 255 / a);
+        int b = Math.min(255, Math.min(a, color & 0xFF) * 255 / a);
+        return (a << 24) | (r << 16) | (g << 8) | b;
+    }
+
+    private static void premultiply(int[] src, int[] dst, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[i] = premultiply(src[i]);
+        }
+    }
+
+    private static void unpremultiply(int[] src, int[] dst, int count) {
+        for (int i = 0; i < count; i++) {
+            dst[i] = unpremultiply(src[i]);
+        }
+    }
+
+    /**
+     * Pack the given channel sums into a color, rounding and clamping each channel.
+     */
+    private static int pack(float a, float r, float g, float b) {
+        int ia = clamp(a);
+        return (ia << 24) | (Math.min(ia, clamp(r)) << 16) | (Math.min(ia, clamp(g)) << 8)
+                | Math.min(ia, clamp(b));
+    }
+
+    /**
+     * Get the per channel min of the given colors.
+     */
+    private static int minChannels(int first, int second) {
+        return (Math.min(first >>> 24, second >>> 24) << 24)
+                | (Math.min((first >> 16) & 0xFF, (second >> 16) & 0xFF) << 16)
+                | (Math.min((first >> 8) & 0xFF, (second >> 8) & 0xFF) << 8)
+                | Math.min(first & 0xFF, second & 0xFF);
+    }
+
+    /**
+     * Get the per channel max of the given colors.
+     */
+    private static int maxChannels(int first, int second) {
+        return (Math.max(first >>> 24, second >>> 24) << 24)
+                | (Math.max((first >> 16) & 0xFF, (second >> 16) & 0xFF) << 16)
+                | (Math.max((first >> 8) & 0xFF, (second >> 8) & 0xFF) << 8)
+                | Math.max(first & 0xFF, second & 0xFF);
+    }
+
+    private static int clamp(float value) {
+        int v = (int) (value + 0.5f);
+        return v < 0 ? 0 : v > 255 ? 255 : v;
+    }
+
+    /**
+     * Precomputed source indices and weights for every result pixel of a single axis.
+     */
+    private static final class Filter {
+
+        /**
+         * The number of source pixels contributing to each result pixel.
+         */
+        private final int mTaps;
+
+        /**
+         * The source index of each tap, {@code mTaps} entries per result pixel.
+         */
+        private final int[] mIndices;
+
+        /**
+         * The weight of each tap, {@code mTaps} entries per result pixel, summing to 1.
+         */
+        private final float[] mWeights;
+
+        private final int mDstSize;
+
+        /**
+         * If the weights can be negative (bicubic), so the result must be clamped to the range of
+         * its taps.
+         */
+        private final boolean mClamp;
+
+        Filter(int srcSize, int dstSize) {
+            mDstSize = dstSize;
+            float scale = (float) srcSize / dstSize;
+            mClamp = scale <= 1;
+            if (scale > 1) {
+                mTaps = (int) Math.ceil(scale) + 1;
+            } else {
+                mTaps = 4;
+            }
+            mIndices = new int[dstSize * mTaps];
+            mWeights = new float[dstSize * mTaps];
+
+            for (int i = 0; i < dstSize; i++) {
+                int offset = i * mTaps;
+                float sum = 0;
+                if (scale > 1) {
+                    // area average: weight by the covered part of each source pixel
+                    float start = i * scale;
+                    float end = Math.min(srcSize, start + scale);
+                    int first = (int) start;
+                    for (int t = 0; t < mTaps; t++) {
+                        int index = first + t;
+                        float weight = index < end
+                                ? Math.min(end, index + 1) - Math.max(start, index) : 0;
+                        mIndices[offset + t] = Math.min(index, srcSize - 1);
+                        mWeights[offset + t] = Math.max(0, weight);
+                        sum += mWeights[offset + t];
+                    }
+                } else {
+                    // bicubic around the center of the result pixel mapped to the source
+                    float center = (i + 0.5f) * scale - 0.5f;
+                    int first = (int) Math.floor(center) - 1;
+                    for (int t = 0; t < mTaps; t++) {
+                        int index = first + t;
+                        mIndices[offset + t] = Math.max(0, Math.min(srcSize - 1, index));
+                        mWeights[offset + t] = cubic(center - index);
+                        sum += mWeights[offset + t];
+                    }
+                }
+                for (int t = 0; t < mTaps; t++) {
+                    mWeights[offset + t] /= sum;
+                }
+            }
+        }
+
+        /**
+         * Catmull-Rom cubic kernel.
+         */
+        private static float cubic(float x) {
+            x = Math.abs(x);
+            if (x < 1) {
+                return (1.5f * x - 2.5f) * x * x + 1;
+            } else if (x < 2) {
+                return ((-0.5f * x + 2.5f) * x - 4) * x + 2;
+            }
+            return 0;
+        }
+
+        /**
+         * Resample a single row of pixels, the result is premultiplied.
+         */
+        void apply(int[] src, int srcOffset, int[] dst, int dstOffset) {
+            for (int i = 0; i < mDstSize; i++) {
+                float a = 0, r = 0, g = 0, b = 0;
+                int low = 0xFFFFFFFF;
+                int high = 0;
+                int offset = i * mTaps;
+                for (int t = 0; t < mTaps; t++) {
+                    float weight = mWeights[offset + t];
+                    if (weight != 0) {
+                        int color = premultiply(src[srcOffset + mIndices[offset + t]]);
+                        a += weight * (color >>> 24);
+                        r += weight * ((color >> 16) & 0xFF);
+                        g += weight * ((color >> 8) & 0xFF);
+                        b += weight * (color & 0xFF);
+                        if (mClamp) {
+                            low = minChannels(low, color);
+                            high = maxChannels(high, color);
+                        }
+                    }
+                }
+                int color = pack(a, r, g, b);
+                dst[dstOffset + i] = mClamp ? minChannels(maxChannels(color, low), high) : color;
+            }
+        }
+
+        /**
+         * Resample the given result rows from full premultiplied source rows, accessing the source
+         * row by row for cache friendly reads.
+         */
+        void applyRows(int[] src, int width, int startRow, int endRow, int[] dst) {
+            float[] sums = new float[width * 4];
+            int[] lows = mClamp ? new int[width] : null;
+            int[] highs = mClamp ? new int[width] : null;
+            for (int y = startRow; y < endRow; y++) {
+                Arrays.fill(sums, 0);
+                if (mClamp) {
+                    Arrays.fill(lows, 0xFFFFFFFF);
+                    Arrays.fill(highs, 0);
+                }
+                int offset = y * mTaps;
+                for (int t = 0; t < mTaps; t++) {
+                    float weight = mWeights[offset + t];
+                    if (weight != 0) {
+                        int row = mIndices[offset + t] * width;
+                        for (int x = 0, s = 0; x < width; x++, s += 4) {
+                            int color = src[row + x];
+                            sums[s] += weight * (color >>> 24);
+                            sums[s + 1] += weight * ((color >> 16) & 0xFF);
+                            sums[s + 2] += weight * ((color >> 8) & 0xFF);
+                            sums[s + 3] += weight * (color & 0xFF);
+                            if (mClamp) {
+                                lows[x] = minChannels(lows[x], color);
+                                highs[x] = maxChannels(highs[x], color);
+                            }
+                        }
+                    }
+                }
+                int out = y * width;
+                for (int x = 0, s = 0; x < width; x++, s += 4) {
+                    int color = pack(sums[s], sums[s + 1], sums[s + 2], sums[s + 3]);
+                    if (mClamp) {
+                        color = minChannels(maxChannels(color, lows[x]), highs[x]);
+                    }
+                    dst[out + x] = unpremultiply(color);
+                }
+            }
+        }
+    }
+}
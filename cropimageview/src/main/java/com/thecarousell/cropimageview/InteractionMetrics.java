@@ -0,0 +1,124 @@
+package com.thecarousell.cropimageview;
+
+/**
+ * Frame time histograms of crop window interactions, enabled by {@link
+ * CropImageView#setInteractionMetricsEnabled(boolean)}.<br>
+ * A frame starts at the first touch move after the previous frame was drawn and ends when the crop
+ * overlay finished drawing it. All durations are in nanoseconds.
+ */
+public final class InteractionMetrics {
+
+    private final LatencyHistogram mTouchToDraw = new LatencyHistogram();
+
+    private final LatencyHistogram mMoveDuration = new LatencyHistogram();
+
+    private final LatencyHistogram mCropWindowChangedDuration = new LatencyHistogram();
+
+    private final LatencyHistogram mImageMatrixCalls = new LatencyHistogram();
+
+    /**
+     * The start time of the frame currently pending a draw, 0 if none.
+     */
+    private long mFrameStart;
+
+    /**
+     * The number of image matrix calculations in the frame pending a draw.
+     */
+    private int mFrameImageMatrixCalls;
+
+    /**
+     * The number of image matrix calculations since created or reset.
+     */
+    private int mImageMatrixCallCount;
+
+    InteractionMetrics() {
+    }
+
+    /**
+     * Time from the touch move event to the end of the crop overlay draw showing it.
+     */
+    public LatencyHistogram getTouchToDraw() {
+        return mTouchToDraw;
+    }
+
+    /**
+     * Time spent moving/resizing the crop window for a single touch move.
+     */
+    public LatencyHistogram getMoveDuration() {
+        return mMoveDuration;
+    }
+
+    /**
+     * Time spent updating the image for a single crop window change (e.g. auto-zoom).
+     */
+    public LatencyHistogram getCropWindowChangedDuration() {
+        return mCropWindowChangedDuration;
+    }
+
+    /**
+     * Number of image matrix calculations (and image view updates) per frame.
+     */
+    public LatencyHistogram getImageMatrixCallsPerFrame() {
+        return mImageMatrixCalls;
+    }
+
+    /**
+     * Total number of image matrix calculations since enabled or {@link #reset()}, including the
+     * ones outside of touch frames (layout, rotation, new image).
+     */
+    public int getImageMatrixCallCount() {
+        return mImageMatrixCallCount;
+    }
+
+    /**
+     * Remove all the recorded values.
+     */
+    public void reset() {
+        mTouchToDraw.reset();
+        mMoveDuration.reset();
+        mCropWindowChangedDuration.reset();
+        mImageMatrixCalls.reset();
+        mFrameStart = 0;
+        mFrameImageMatrixCalls = 0;
+        mImageMatrixCallCount = 0;
+    }
+
+    /**
+     * Called on a touch move, starts a frame if none is pending.
+     */
+    void onTouchMove() {
+        if (mFrameStart == 0) {
+            mFrameStart = System.nanoTime();
+            mFrameImageMatrixCalls = 0;
+        }
+    }
+
+    /**
+     * Called after the crop overlay was drawn, ends the pending frame.
+     */
+    void onDrawn() {
+        if (mFrameStart != 0) {
+            mTouchToDraw.record(System.nanoTime() - mFrameStart);
+            mImageMatrixCalls.record(mFrameImageMatrixCalls);
+            mFrameStart = 0;
+        }
+    }
+
+    /**
+     * Called on every image matrix calculation, counted in total and for the pending frame.
+     */
+    void onImageMatrixApplied() {
+        mImageMatrixCallCount++;
+        if (mFrameStart != 0) {
+            mFrameImageMatrixCalls++;
+        }
+    }
+
+    void recordMove(long duration) {
+        mMoveDuration.record(duration);
+    }
+
+    void recordCropWindowChanged(long duration) {
+        mCropWindowChangedDuration.record(duration);
+    }
+}
@@ -0,0 +1,144 @@
+package com.thecarousell.cropimageview;
+
+import java.util.Arrays;
+
+/**
+ * Fixed size histogram of non-negative values (e.g. durations in nanoseconds) for percentile
+ * queries.<br>
+ * Values below {@link #EXACT_VALUES} are counted exactly, larger values are grouped into {@link
+ * #SUB_BUCKETS} buckets per power of two, so any percentile is within ~3% of the recorded value.
+ * Recording never allocates.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Values below this are counted in their own bucket.
+     */
+    private static final int EXACT_VALUES = 64;
+
+    /**
+     * Log2 of {@link #EXACT_VALUES}.
+     */
+    private static final int EXACT_BITS = 6;
+
+    /**
+     * Buckets per power of two above the exact values.
+     */
+    private static final int SUB_BUCKETS = 32;
+
+    /**
+     * Log2 of {@link #SUB_BUCKETS}.
+     */
+    private static final int SUB_BUCKET_BITS = 5;
+
+    private final long[] mCounts = new long[EXACT_VALUES + (63 - EXACT_BITS) * SUB_BUCKETS];
+
+    private long mCount;
+
+    private long mMax;
+
+    /**
+     * Add a single value, negative values are counted as 0.
+     */
+    public synchronized void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        mCounts[getIndex(value)]++;
+        mCount++;
+        mMax = Math.max(mMax, value);
+    }
+
+    /**
+     * The number of recorded values.
+     */
+    public synchronized long getCount() {
+        return mCount;
+    }
+
+    /**
+     * The largest recorded value, 0 if empty.
+     */
+    public synchronized long getMax() {
+        return mMax;
+    }
+
+    /**
+     * Get the value at or below which the given percent of the recorded values are.
+     *
+     * @param percentile the percentile in (0, 100], e.g. 95 for p95
+     * @return the value, 0 if empty
+     */
+    public synchronized long getPercentile(double percentile) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be in (0, 100]");
+        }
+        if (mCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(mCount * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < mCounts.length; i++) {
+            seen += mCounts[i];
+            if (seen >= rank) {
+                return Math.min(mMax, getValue(i));
+            }
+        }
+        return mMax;
+    }
+
+    /**
+     * The median of the recorded values.
+     */
+    public long getP50() {
+        return getPercentile(50);
+    }
+
+    /**
+     * The 95th percentile of the recorded values.
+     */
+    public long getP95() {
+        return getPercentile(95);
+    }
+
+    /**
+     * The 99th percentile of the recorded values.
+     */
+    public long getP99() {
+        return getPercentile(99);
+    }
+
+    /**
+     * Remove all the recorded values.
+     */
+    public synchronized void reset() {
+        Arrays.fill(mCounts, 0);
+        mCount = 0;
+        mMax = 0;
+    }
+
+    /**
+     * Get the bucket of the given value.
+     */
+    static int getIndex(long value) {
+        if (value < EXACT_VALUES) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return EXACT_VALUES + (exponent - EXACT_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Get the highest value counted in the given bucket.
+     */
+    static long getValue(int index) {
+        if (index < EXACT_VALUES) {
+            return index;
+        }
+        int exponent = (index - EXACT_VALUES) / SUB_BUCKETS + EXACT_BITS;
+        int sub = (index - EXACT_VALUES) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return (1L << exponent) + (sub + 1) * width - 1;
+    }
+}
@@ -0,0 +1,264 @@
+package com.thecarousell.cropimageview;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Raw ARGB pixels of a decoded image stored in a memory-mapped file, used for sources that are
+ * too large to keep decoded on the heap.<br>
+ * Pixels are stored row-major, one int per pixel, so any source position maps directly to a file
+ * offset (see {@link #getOffset(int, int)}) and region reads never go through the compressed
+ * source again.<br>
+ * The file is mapped in chunks of whole rows, each mapped on its first access, so only the rows in
+ * use take address space (which is scarce in 32-bit processes).
+ */
+public final class MappedPixelBuffer implements Closeable {
+
+    /**
+     * The size of a single stored pixel.
+     */
+    static final int BYTES_PER_PIXEL = 4;
+
+    /**
+     * Max size of a single mapped chunk, {@link FileChannel#map} is limited to int sized regions.
+     */
+    static final long MAX_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    private final RandomAccessFile mFile;
+
+    private final FileChannel mChannel;
+
+    /**
+     * The mapped chunks of the file, each holding {@link #mRowsPerChunk} full rows, null until
+     * first accessed.
+     */
+    private final AtomicReferenceArray<IntBuffer> mChunks;
+
+    private final int mRowsPerChunk;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    /**
+     * How much the source should be rotated clockwise to be shown upright (from EXIF).
+     */
+    private int mDegreesRotated;
+
+    private MappedPixelBuffer(RandomAccessFile file, int width, int height, long chunkSize) {
+        mFile = file;
+        mChannel = file.getChannel();
+        mWidth = width;
+        mHeight = height;
+
+        long rowSize = (long) width * BYTES_PER_PIXEL;
+        mRowsPerChunk = (int) Math.max(1, Math.min(height, chunkSize / rowSize));
+        mChunks = new AtomicReferenceArray<>((height + mRowsPerChunk - 1) / mRowsPerChunk);
+    }
+
+    /**
+     * Create a new pixel buffer of the given dimensions backed by the given file.<br>
+     * The file is created or truncated to the required size.
+     *
+     * @param file   the file to map, should be on internal storage (e.g. cache dir)
+     * @param width  the width of the image in pixels
+     * @param height the height of the image in pixels
+     */
+    public static MappedPixelBuffer create(File file, int width, int height) throws IOException {
+        return create(file, width, height, MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * Create a new pixel buffer mapped in chunks of at most the given size, at least a row.
+     *
+     * @see #create(File, int, int)
+     */
+    static MappedPixelBuffer create(File file, int width, int height, long chunkSize)
+            throws IOException {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("Cannot create pixel buffer of size <= 0");
+        }
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength((long) width * height * BYTES_PER_PIXEL);
+            return new MappedPixelBuffer(raf, width, height, chunkSize);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+    }
+
+    /**
+     * The number of rows in every mapped chunk, the last chunk may have less.
+     */
+    int getRowsPerChunk() {
+        return mRowsPerChunk;
+    }
+
+    /**
+     * The number of chunks mapped so far.
+     */
+    int getMappedChunkCount() {
+        int count = 0;
+        for (int i = 0; i < mChunks.length(); i++) {
+            if (mChunks.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * The width of the stored image in pixels.
+     */
+    public int getWidth() {
+        return mWidth;
+    }
+
+    /**
+     * The height of the stored image in pixels.
+     */
+    public int getHeight() {
+        return mHeight;
+    }
+
+    /**
+     * How much the stored image should be rotated clockwise to be shown upright.
+     */
+    public int getDegreesRotated() {
+        return mDegreesRotated;
+    }
+
+    /**
+     * Set how much the stored image should be rotated clockwise to be shown upright.
+     */
+    void setDegreesRotated(int degreesRotated) {
+        mDegreesRotated = degreesRotated;
+    }
+
+    /**
+     * Get the byte offset in the backing file of the pixel at the given position, e.g. the top-left
+     * of {@link CropImageView#getCropRect()}.
+     */
+    public long getOffset(int x, int y) {
+        return ((long) y * mWidth + x) * BYTES_PER_PIXEL;
+    }
+
+    /**
+     * Get the ARGB color of a single pixel.
+     */
+    public int getPixel(int x, int y) {
+        return getChunk(y / mRowsPerChunk).get((y % mRowsPerChunk) * mWidth + x);
+    }
+
+    /**
+     * Copy pixels into the buffer, same arguments as {@code Bitmap.setPixels}.
+     */
+    public void writePixels(int[] pixels, int offset, int stride, int x, int y, int width,
+            int height) {
+        checkRegion(x, y, width, height);
+        for (int row = 0; row < height; row++) {
+            IntBuffer buffer = rowBuffer(x, y + row);
+            buffer.put(pixels, offset + row * stride, width);
+        }
+    }
+
+    /**
+     * Copy pixels out of the buffer, same arguments as {@code Bitmap.getPixels}.<br>
+     * Safe to call concurrently from multiple threads.
+     */
+    public void readPixels(int[] pixels, int offset, int stride, int x, int y, int width,
+            int height) {
+        checkRegion(x, y, width, height);
+        for (int row = 0; row < height; row++) {
+            IntBuffer buffer = rowBuffer(x, y + row);
+            buffer.get(pixels, offset + row * stride, width);
+        }
+    }
+
+    /**
+     * Copy every {@code sampleSize} pixel of the given source region out of the buffer, used to
+     * create down-sampled previews without decoding the source again.
+     *
+     * @param pixels     the array to write the sampled pixels into
+     * @param stride     the number of entries in pixels to skip between rows
+     * @param x          the left of the source region
+     * @param y          the top of the source region
+     * @param width      the width of the sampled result
+     * @param height     the height of the sampled result
+     * @param sampleSize the step between sampled source pixels
+     */
+    public void readSampledPixels(int[] pixels, int offset, int stride, int x, int y, int width,
+            int height, int sampleSize) {
+        checkRegion(x, y, (width - 1) * sampleSize + 1, (height - 1) * sampleSize + 1);
+        for (int row = 0; row < height; row++) {
+            int srcY = y + row * sampleSize;
+            IntBuffer chunk = getChunk(srcY / mRowsPerChunk);
+            int index = (srcY % mRowsPerChunk) * mWidth + x;
+            int out = offset + row * stride;
+            for (int col = 0; col < width; col++) {
+                pixels[out + col] = chunk.get(index);
+                index += sampleSize;
+            }
+        }
+    }
+
+    /**
+     * Flush the written pixels and release the backing file.<br>
+     * The buffer must not be used after it was closed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            mChannel.close();
+        } finally {
+            mFile.close();
+        }
+    }
+
+    /**
+     * Get a buffer positioned at the given pixel, duplicated so concurrent callers don't share a
+     * position.
+     */
+    private IntBuffer rowBuffer(int x, int y) {
+        IntBuffer buffer = getChunk(y / mRowsPerChunk).duplicate();
+        buffer.position((y % mRowsPerChunk) * mWidth + x);
+        return buffer;
+    }
+
+    /**
+     * Get the chunk at the given index, mapping it on first access. Concurrent first accesses may
+     * both map it, only one mapping is kept.
+     */
+    private IntBuffer getChunk(int index) {
+        IntBuffer chunk = mChunks.get(index);
+        if (chunk == null) {
+            long rowSize = (long) mWidth * BYTES_PER_PIXEL;
+            int rows = Math.min(mRowsPerChunk, mHeight - index * mRowsPerChunk);
+            try {
+                chunk = mChannel.map(FileChannel.MapMode.READ_WRITE,
+                        (long) index * mRowsPerChunk * rowSize, rows * rowSize)
+                        .order(ByteOrder.nativeOrder()).asIntBuffer();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to map rows of the pixel buffer", e);
+            }
+            if (!mChunks.compareAndSet(index, null, chunk)) {
+                chunk = mChunks.get(index);
+            }
+        }
+        return chunk;
+    }
+
+    private void checkRegion(int x, int y, int width, int height) {
+        if (x < 0 || y < 0 || width < 0 || height < 0 || x + width > mWidth
+                || y + height > mHeight) {
+            throw new IllegalArgumentException("Region is outside of the pixel buffer");
+        }
+    }
+}
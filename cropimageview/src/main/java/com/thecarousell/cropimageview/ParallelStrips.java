@@ -0,0 +1,147 @@
+package com.thecarousell.cropimageview;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs row based pixel work split into horizontal strips on a shared pool of worker threads.<br>
+ * The calling thread takes part in the work, strips are handed out one by one so faster threads
+ * pick up more strips.
+ */
+final class ParallelStrips {
+
+    /**
+     * The number of threads (including the calling thread) working on strips.
+     */
+    private static final int THREADS = Math.max(1, Runtime.getRuntime().availableProcessors());
+
+    /**
+     * The min number of rows in a strip, so small images are not split into tiny tasks.
+     */
+    private static final int MIN_STRIP_ROWS = 16;
+
+    /**
+     * Strips per thread, more strips than threads balance uneven rows (e.g. masked areas).
+     */
+    private static final int STRIPS_PER_THREAD = 4;
+
+    private static ExecutorService sExecutor;
+
+    private ParallelStrips() {
+    }
+
+    /**
+     * Run the given task on all the rows in [0, rows), split into strips that run in parallel.<br>
+     * Returns after all the strips are done, rethrowing any exception thrown by a strip.
+     */
+    static void run(final int rows, final StripTask task) {
+        run(rows, MIN_STRIP_ROWS, task);
+    }
+
+    /**
+     * Run the given task on all the rows in [0, rows) in parallel strips of at least the given
+     * number of rows.
+     *
+     * @param minStripRows the min number of rows in a strip, 1 when every row is a large work item
+     *                     (e.g. a whole image)
+     */
+    static void run(final int rows, int minStripRows, final StripTask task) {
+        final int stripRows = Math.max(minStripRows,
+                (rows + THREADS * STRIPS_PER_THREAD - 1) / (THREADS * STRIPS_PER_THREAD));
+        final int strips = (rows + stripRows - 1) / stripRows;
+        int workers = Math.min(THREADS, strips) - 1;
+
+        // nested calls from a worker run inline so workers never wait on each other
+        if (workers <= 0 || Thread.currentThread() instanceof Worker) {
+            if (rows > 0) {
+                task.run(0, rows);
+            }
+            return;
+        }
+
+        final AtomicInteger nextStrip = new AtomicInteger();
+        Runnable runner = new Runnable() {
+            @Override
+            public void run() {
+                int strip;
+                while ((strip = nextStrip.getAndIncrement()) < strips) {
+                    task.run(strip * stripRows, Math.min(rows, (strip + 1) * stripRows));
+                }
+            }
+        };
+
+        ExecutorService executor = getExecutor();
+        Future<?>[] futures = new Future<?>[workers];
+        for (int i = 0; i < workers; i++) {
+            futures[i] = executor.submit(runner);
+        }
+        runner.run();
+
+        boolean interrupted = false;
+        try {
+            for (Future<?> future : futures) {
+                while (true) {
+                    try {
+                        future.get();
+                        break;
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        if (cause instanceof RuntimeException) {
+                            throw (RuntimeException) cause;
+                        } else if (cause instanceof Error) {
+                            throw (Error) cause;
+                        }
+                        throw new RuntimeException(cause);
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (sExecutor == null) {
+            sExecutor = Executors.newFixedThreadPool(THREADS - 1, new ThreadFactory() {
+                private final AtomicInteger mCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Worker(runnable, "CropStrip-" + mCount.incrementAndGet());
+                }
+            });
+        }
+        return sExecutor;
+    }
+
+    /**
+     * Work on a range of rows.
+     */
+    interface StripTask {
+
+        /**
+         * @param startRow the first row to handle (inclusive)
+         * @param endRow   the last row to handle (exclusive)
+         */
+        void run(int startRow, int endRow);
+    }
+
+    /**
+     * Pool thread, marked so nested strip runs can be detected.
+     */
+    private static final class Worker extends Thread {
+
+        Worker(Runnable runnable, String name) {
+            super(runnable, name);
+            setDaemon(true);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package com.thecarousell.cropimageview;
+
+/**
+ * Utility methods shared by the analysis of ARGB pixel arrays, e.g. {@link QuadDetector} and
+ * {@link StraightenDetector}.
+ */
+final class PixelUtils {
+
+    private PixelUtils() {
+    }
+
+    /**
+     * Check that the given size is not empty and the given pixel array holds all of its pixels.
+     *
+     * @throws IllegalArgumentException if the array is smaller than the given size
+     */
+    static void checkPixels(int[] pixels, int width, int height) {
+        if (width <= 0 || height <= 0 || pixels.length < width * height) {
+            throw new IllegalArgumentException("Pixel array is smaller than the given size");
+        }
+    }
+
+    /**
+     * Get the luma (0-255) of the given ARGB color, Rec. 601 weights in 8 bit fixed point.
+     */
+    static int getLuma(int color) {
+        return (((color >> 16) & 0xff) * 77 + ((color >> 8) & 0xff) * 150 + (color & 0xff) * 29)
+                >> 8;
+    }
+
+    /**
+     * Get the luma of the first count pixels of the given ARGB pixels.
+     */
+    static int[] getLuma(int[] pixels, int count) {
+        int[] luma = new int[count];
+        for (int i = 0; i < count; i++) {
+            luma[i] = getLuma(pixels[i]);
+        }
+        return luma;
+    }
+}
@@ -0,0 +1,224 @@
+package com.thecarousell.cropimageview;
+
+/**
+ * Finds the quad of a document (a receipt, a box face) photographed at an angle, to start a
+ * {@link CropImage.CropShape#QUAD} crop from.<br>
+ * Works on a small down-sampled copy of the image in linear time: the luma is split into a bright
+ * and a dark class by the Otsu threshold of its histogram, the largest connected bright area is the
+ * document and its corners are its extreme pixels along the diagonals.
+ */
+final class QuadDetector {
+
+    /**
+     * The max width/height of the image to find the quad on.
+     */
+    static final int MAX_SIZE = 256;
+
+    /**
+     * The min area of a found quad relative to the image.
+     */
+    private static final float MIN_AREA = 0.1f;
+
+    private QuadDetector() {
+    }
+
+    /**
+     * Find the document quad in the given pixels.
+     *
+     * @param pixels the ARGB pixels of the image, row-major without padding
+     * @return the 4 corners (x0,y0,x1,y1,x2,y2,x3,y3) in the given pixels ordered top-left,
+     * top-right, bottom-right, bottom-left, null if no document was found
+     */
+    static float[] find(int[] pixels, int width, int height) {
+        PixelUtils.checkPixels(pixels, width, height);
+        int size = width * height;
+        int[] luma = new int[size];
+        int[] histogram = new int[256];
+        for (int i = 0; i < size; i++) {
+            luma[i] = PixelUtils.getLuma(pixels[i]);
+            histogram[luma[i]]++;
+        }
+        int threshold = getOtsuThreshold(histogram, size);
+        if (threshold < 0) {
+            return null;
+        }
+
+        // label the 4-connected bright areas, keeping the extremes of the largest
+        int[] labels = new int[size];
+        int[] stack = new int[size];
+        float[] best = null;
+        int bestCount = 0;
+        int label = 0;
+        for (int start = 0; start < size; start++) {
+            if (labels[start] != 0 || luma[start] <= threshold) {
+                continue;
+            }
+            label++;
+            int top = 0;
+            stack[top++] = start;
+            labels[start] = label;
+            int count = 0;
+            int minSum = Integer.MAX_VALUE, maxSum = Integer.MIN_VALUE;
+            int minDiff = Integer.MAX_VALUE, maxDiff = Integer.MIN_VALUE;
+            int topLeft = start, bottomRight = start, topRight = start, bottomLeft = start;
+            while (top > 0) {
+                int index = stack[--top];
+                int x = index % width;
+                int y = index / width;
+                count++;
+                if (x + y < minSum) {
+                    minSum = x + y;
+                    topLeft = index;
+                }
+                if (x + y > maxSum) {
+                    maxSum = x + y;
+                    bottomRight = index;
+                }
+                if (x - y > maxDiff) {
+                    maxDiff = x - y;
+                    topRight = index;
+                }
+                if (x - y < minDiff) {
+                    minDiff = x - y;
+                    bottomLeft = index;
+                }
+                if (x > 0 && labels[index - 1] == 0 && luma[index - 1] > threshold) {
+                    labels[index - 1] = label;
+                    stack[top++] = index - 1;
+                }
+                if (x + 1 < width && labels[index + 1] == 0 && luma[index + 1] > threshold) {
+                    labels[index + 1] = label;
+                    stack[top++] = index + 1;
+                }
+                if (y > 0 && labels[index - width] == 0 && luma[index - width] > threshold) {
+                    labels[index - width] = label;
+                    stack[top++] = index - width;
+                }
+                if (y + 1 < height && labels[index + width] == 0
+                        && luma[index + width] > threshold) {
+                    labels[index + width] = label;
+                    stack[top++] = index + width;
+                }
+            }
+            if (count > bestCount) {
+                bestCount = count;
+                // the corner pixels cover up to their far sides
+                best = new float[]{
+                        topLeft % width, topLeft / width,
+                        topRight % width + 1, topRight / width,
+                        bottomRight % width + 1, bottomRight / width + 1,
+                        bottomLeft % width, bottomLeft / width + 1
+                };
+            }
+        }
+        if (best == null || getArea(best) < MIN_AREA * size || !isConvex(best)) {
+            return null;
+        }
+        return best;
+    }
+
+    /**
+     * Order the given 4 corners top-left, top-right, bottom-right, bottom-left (clockwise on
+     * screen from the corner closest to the top-left).
+     */
+    static void sortCorners(float[] points) {
+        float centerX = (points[0] + points[2] + points[4] + points[6]) / 4;
+        float centerY = (points[1] + points[3] + points[5] + points[7]) / 4;
+        float[] angles = new float[4];
+        for (int i = 0; i < 4; i++) {
+            angles[i] = (float) Math.atan2(points[i * 2 + 1] - centerY, points[i * 2] - centerX);
+        }
+
+        // insertion sort by angle, increasing angles go clockwise when y points down
+        for (int i = 1; i < 4; i++) {
+            for (int j = i; j > 0 && angles[j - 1] > angles[j]; j--) {
+                swap(angles, j - 1, j, 1);
+                swap(points, j - 1, j, 2);
+            }
+        }
+        int first = 0;
+        for (int i = 1; i < 4; i++) {
+            if (points[i * 2] + points[i * 2 + 1] < points[first * 2] + points[first * 2 + 1]) {
+                first = i;
+            }
+        }
+        float[] sorted = new float[8];
+        for (int i = 0; i < 8; i++) {
+            sorted[i] = points[(first * 2 + i) % 8];
+        }
+        System.arraycopy(sorted, 0, points, 0, 8);
+    }
+
+    /**
+     * If the given corners in clockwise order form a convex quad.
+     */
+    static boolean isConvex(float[] points) {
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) % 4;
+            int k = (i + 2) % 4;
+            float cross = (points[j * 2] - points[i * 2]) * (points[k * 2 + 1] - points[j * 2 + 1])
+                    - (points[j * 2 + 1] - points[i * 2 + 1]) * (points[k * 2] - points[j * 2]);
+            if (cross <= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the area of the given quad (shoelace formula).
+     */
+    static float getArea(float[] points) {
+        float area = 0;
+        for (int i = 0; i < 4; i++) {
+            int j = (i + 1) % 4;
+            area += points[i * 2] * points[j * 2 + 1] - points[j * 2] * points[i * 2 + 1];
+        }
+        return Math.abs(area) / 2;
+    }
+
+    /**
+     * Get the luma threshold that best separates the histogram into two classes (max between
+     * class variance).
+     *
+     * @return the threshold, luma above it is bright, -1 for a flat image
+     */
+    private static int getOtsuThreshold(int[] histogram, int count) {
+        double sum = 0;
+        for (int i = 0; i < 256; i++) {
+            sum += (double) i * histogram[i];
+        }
+        double sumDark = 0;
+        int countDark = 0;
+        double bestVariance = 0;
+        int threshold = -1;
+        for (int i = 0; i < 255; i++) {
+            countDark += histogram[i];
+            if (countDark == 0) {
+                continue;
+            }
+            int countBright = count - countDark;
+            if (countBright == 0) {
+                break;
+            }
+            sumDark += (double) i * histogram[i];
+            double meanDark = sumDark / countDark;
+            double meanBright = (sum - sumDark) / countBright;
+            double variance = (double) countDark * countBright * (meanDark - meanBright)
+                    * (meanDark - meanBright);
+            if (variance > bestVariance) {
+                bestVariance = variance;
+                threshold = i;
+            }
+        }
+        return threshold;
+    }
+
+    private static void swap(float[] array, int first, int second, int stride) {
+        for (int i = 0; i < stride; i++) {
+            float value = array[first * stride + i];
+            array[first * stride + i] = array[second * stride + i];
+            array[second * stride + i] = value;
+        }
+    }
+}
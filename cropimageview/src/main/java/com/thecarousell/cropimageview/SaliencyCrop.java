@@ -0,0 +1,207 @@
+package com.thecarousell.cropimageview;
+
+/**
+ * Suggests a crop window around the content of an image, to start cropping from instead of a
+ * centered window.<br>
+ * Works on a small down-sampled copy of the image: the energy of every pixel is its gradient
+ * magnitude weighted by a bias to the center, computed in parallel rows. A summed-area table of the
+ * energy then gives the energy of any window in constant time, so the best window is found in a
+ * single scan of the positions.
+ */
+final class SaliencyCrop {
+
+    /**
+     * The max width/height of the image to compute the energy on.
+     */
+    static final int MAX_SIZE = 128;
+
+    /**
+     * How much less energy the image corners have than the center.
+     */
+    private static final float CENTER_BIAS = 0.5f;
+
+    /**
+     * The fraction of the energy on each axis a free aspect ratio window keeps.
+     */
+    private static final float ENERGY_MASS = 0.9f;
+
+    /**
+     * The min size of a free aspect ratio window relative to the image.
+     */
+    private static final float MIN_WINDOW_SIZE = 0.5f;
+
+    private SaliencyCrop() {
+    }
+
+    /**
+     * Find the crop window with the most content in the given pixels.<br>
+     * For a fixed aspect ratio the window has the size the initial crop window would have and is
+     * moved to the content, otherwise it is the bounds of the content.
+     *
+     * @param pixels       the ARGB pixels of the image, row-major without padding
+     * @param aspectRatio  the width/height ratio of the window, 0 for free aspect ratio
+     * @param paddingRatio the padding of the window from the image borders when it doesn't move
+     * @return the window in the given pixels as left, top, right, bottom
+     */
+    static int[] findCropRect(int[] pixels, int width, int height, float aspectRatio,
+            float paddingRatio) {
+        PixelUtils.checkPixels(pixels, width, height);
+        double[] table = getSummedEnergyTable(getEnergy(pixels, width, height), width, height);
+        return aspectRatio > 0
+                ? findFixedWindow(table, width, height, aspectRatio, paddingRatio)
+                : findFreeWindow(table, width, height, paddingRatio);
+    }
+
+    /**
+     * Compute the center biased gradient magnitude of every pixel, in parallel rows.
+     */
+    private static float[] getEnergy(final int[] pixels, final int width, final int height) {
+        final int[] luma = new int[width * height];
+        ParallelStrips.run(height, new ParallelStrips.StripTask() {
+            @Override
+            public void run(int startRow, int endRow) {
+                for (int i = startRow * width; i < endRow * width; i++) {
+                    luma[i] = PixelUtils.getLuma(pixels[i]);
+                }
+            }
+        });
+
+        final float[] energy = new float[width * height];
+        final float centerX = (width - 1) / 2f;
+        final float centerY = (height - 1) / 2f;
+        ParallelStrips.run(height, new ParallelStrips.StripTask() {
+            @Override
+            public void run(int startRow, int endRow) {
+                for (int y = startRow; y < endRow; y++) {
+                    int up = Math.max(0, y - 1) * width;
+                    int down = Math.min(height - 1, y + 1) * width;
+                    float dy = centerY > 0 ? (y - centerY) / centerY : 0;
+                    for (int x = 0; x < width; x++) {
+                        int left = Math.max(0, x - 1);
+                        int right = Math.min(width - 1, x + 1);
+                        int gradient = Math.abs(luma[y * width + right] - luma[y * width + left])
+                                + Math.abs(luma[down + x] - luma[up + x]);
+                        float dx = centerX > 0 ? (x - centerX) / centerX : 0;
+                        float bias = 1 - CENTER_BIAS * (dx * dx + dy * dy) / 2;
+                        energy[y * width + x] = gradient * bias;
+                    }
+                }
+            }
+        });
+        return energy;
+    }
+
+    /**
+     * Build the summed-area table of the energy, entry (x, y) is the energy of the pixels above and
+     * left of it, with an extra first row and column of 0.
+     */
+    private static double[] getSummedEnergyTable(float[] energy, int width, int height) {
+        int stride = width + 1;
+        double[] table = new double[stride * (height + 1)];
+        for (int y = 0; y < height; y++) {
+            double row = 0;
+            for (int x = 0; x < width; x++) {
+                row += energy[y * width + x];
+                table[(y + 1) * stride + x + 1] = table[y * stride + x + 1] + row;
+            }
+        }
+        return table;
+    }
+
+    private static double getWindowEnergy(double[] table, int stride, int left, int top,
+            int right, int bottom) {
+        return table[bottom * stride + right] - table[top * stride + right]
+                - table[bottom * stride + left] + table[top * stride + left];
+    }
+
+    /**
+     * Find the position of the window of the initial size with the most energy, the one closest to
+     * the center on ties.
+     */
+    private static int[] findFixedWindow(double[] table, int width, int height, float aspectRatio,
+            float paddingRatio) {
+        int windowWidth;
+        int windowHeight;
+        if ((float) width / height > aspectRatio) {
+            windowHeight = Math.max(1, Math.round(height * (1 - 2 * paddingRatio)));
+            windowWidth = Math.min(width, Math.max(1, Math.round(windowHeight * aspectRatio)));
+        } else {
+            windowWidth = Math.max(1, Math.round(width * (1 - 2 * paddingRatio)));
+            windowHeight = Math.min(height, Math.max(1, Math.round(windowWidth / aspectRatio)));
+        }
+
+        int stride = width + 1;
+        int centerLeft = (width - windowWidth) / 2;
+        int centerTop = (height - windowHeight) / 2;
+        int bestLeft = centerLeft;
+        int bestTop = centerTop;
+        double bestEnergy = getWindowEnergy(table, stride, bestLeft, bestTop,
+                bestLeft + windowWidth, bestTop + windowHeight);
+        int bestDistance = 0;
+        for (int top = 0; top + windowHeight <= height; top++) {
+            for (int left = 0; left + windowWidth <= width; left++) {
+                double energy = getWindowEnergy(table, stride, left, top, left + windowWidth,
+                        top + windowHeight);
+                int distance = Math.abs(left - centerLeft) + Math.abs(top - centerTop);
+                if (energy > bestEnergy || (energy == bestEnergy && distance < bestDistance)) {
+                    bestEnergy = energy;
+                    bestDistance = distance;
+                    bestLeft = left;
+                    bestTop = top;
+                }
+            }
+        }
+        return new int[]{bestLeft, bestTop, bestLeft + windowWidth, bestTop + windowHeight};
+    }
+
+    /**
+     * Find the bounds of the central {@link #ENERGY_MASS} of the energy on each axis, no smaller
+     * than {@link #MIN_WINDOW_SIZE} of the image.
+     */
+    private static int[] findFreeWindow(double[] table, int width, int height,
+            float paddingRatio) {
+        int stride = width + 1;
+        double total = table[height * stride + width];
+        if (total <= 0) {
+            int paddingX = Math.round(width * paddingRatio);
+            int paddingY = Math.round(height * paddingRatio);
+            return new int[]{paddingX, paddingY, width - paddingX, height - paddingY};
+        }
+
+        // the last row/column of the table are the cumulative column/row energies
+        double low = total * (1 - ENERGY_MASS) / 2;
+        double high = total * (1 + ENERGY_MASS) / 2;
+        int left = 0;
+        while (left < width - 1 && table[height * stride + left + 1] <= low) {
+            left++;
+        }
+        int right = left + 1;
+        while (right < width && table[height * stride + right] < high) {
+            right++;
+        }
+        int top = 0;
+        while (top < height - 1 && table[(top + 1) * stride + width] <= low) {
+            top++;
+        }
+        int bottom = top + 1;
+        while (bottom < height && table[bottom * stride + width] < high) {
+            bottom++;
+        }
+
+        int[] horizontal = grow(left, right, Math.round(width * MIN_WINDOW_SIZE), width);
+        int[] vertical = grow(top, bottom, Math.round(height * MIN_WINDOW_SIZE), height);
+        return new int[]{horizontal[0], vertical[0], horizontal[1], vertical[1]};
+    }
+
+    /**
+     * Grow the given range around its center to the given min size, kept inside [0, size].
+     */
+    private static int[] grow(int start, int end, int minSize, int size) {
+        if (end - start < minSize) {
+            int center = (start + end) / 2;
+            start = Math.max(0, Math.min(size - minSize, center - minSize / 2));
+            end = start + minSize;
+        }
+        return new int[]{start, end};
+    }
+}
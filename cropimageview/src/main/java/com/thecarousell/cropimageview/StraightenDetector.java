@@ -0,0 +1,163 @@
+package com.thecarousell.cropimageview;
+
+/**
+ * Finds how much an image is tilted from the dominant near-horizontal/vertical lines in it (a
+ * horizon, a table edge, a wall), to straighten it by rotation.<br>
+ * Works on a small down-sampled grayscale copy of the image: every pixel with a strong Sobel
+ * gradient votes with its gradient magnitude for its edge orientation folded to the nearest axis,
+ * the peak of the smoothed orientation histogram is the tilt.<br>
+ * The histogram is accumulated incrementally in row steps so a background detection can be
+ * cancelled between steps.
+ */
+final class StraightenDetector {
+
+    /**
+     * The max width/height of the image to detect the tilt on.
+     */
+    static final int MAX_SIZE = 256;
+
+    /**
+     * The max tilt (in degrees) that is detected, steeper lines are not a tilt of the axis.
+     */
+    static final float MAX_ANGLE = 15;
+
+    /**
+     * The histogram bins per degree.
+     */
+    private static final int BINS_PER_DEGREE = 10;
+
+    /**
+     * The half width (in bins) of the histogram smoothing window.
+     */
+    private static final int SMOOTH_RADIUS = 3;
+
+    /**
+     * The min gradient magnitude (Sobel, 0-255 luma) of a voting pixel.
+     */
+    private static final int MIN_GRADIENT = 64;
+
+    /**
+     * The min part of the pixels that must vote for a tilt to be detected.
+     */
+    private static final float MIN_VOTES = 0.01f;
+
+    private final int[] mLuma;
+
+    private final int mWidth;
+
+    private final int mHeight;
+
+    /**
+     * The magnitude weighted votes by orientation, from -{@link #MAX_ANGLE} to {@link #MAX_ANGLE}.
+     */
+    private final float[] mHistogram;
+
+    /**
+     * The number of votes in {@link #mHistogram}.
+     */
+    private int mVotes;
+
+    /**
+     * The next row to vote, rows at the image edge have no full Sobel neighbourhood.
+     */
+    private int mRow = 1;
+
+    /**
+     * @param pixels the ARGB pixels of the image, row-major without padding
+     */
+    StraightenDetector(int[] pixels, int width, int height) {
+        PixelUtils.checkPixels(pixels, width, height);
+        mWidth = width;
+        mHeight = height;
+        mLuma = PixelUtils.getLuma(pixels, width * height);
+        mHistogram = new float[(int) (2 * MAX_ANGLE * BINS_PER_DEGREE) + 1];
+    }
+
+    /**
+     * Detect the tilt of the given pixels in a single call.
+     *
+     * @see #getAngle()
+     */
+    static float detect(int[] pixels, int width, int height) {
+        StraightenDetector detector = new StraightenDetector(pixels, width, height);
+        while (!detector.step(height)) {
+        }
+        return detector.getAngle();
+    }
+
+    /**
+     * Vote the next rows of the image.
+     *
+     * @param rows the max number of rows to vote
+     * @return true if all the rows have voted
+     */
+    boolean step(int rows) {
+        int width = mWidth;
+        int[] luma = mLuma;
+        int end = Math.min(mHeight - 1, mRow + rows);
+        for (int y = mRow; y < end; y++) {
+            for (int x = 1; x < width - 1; x++) {
+                int i = y * width + x;
+                int topLeft = luma[i - width - 1];
+                int topRight = luma[i - width + 1];
+                int bottomLeft = luma[i + width - 1];
+                int bottomRight = luma[i + width + 1];
+                int gx = topRight + 2 * luma[i + 1] + bottomRight
+                        - topLeft - 2 * luma[i - 1] - bottomLeft;
+                int gy = bottomLeft + 2 * luma[i + width] + bottomRight
+                        - topLeft - 2 * luma[i - width] - topRight;
+                int magnitudeSquared = gx * gx + gy * gy;
+                if (magnitudeSquared < MIN_GRADIENT * MIN_GRADIENT * 16) {
+                    continue;
+                }
+
+                // the edge is perpendicular to the gradient, both fold to the same axis tilt
+                float angle = (float) Math.toDegrees(Math.atan2(gy, gx));
+                angle -= 90 * (float) Math.floor((angle + 45) / 90);
+                if (Math.abs(angle) <= MAX_ANGLE) {
+                    int bin = Math.round((angle + MAX_ANGLE) * BINS_PER_DEGREE);
+                    mHistogram[bin] += (float) Math.sqrt(magnitudeSquared);
+                    mVotes++;
+                }
+            }
+        }
+        mRow = end;
+        return mRow >= mHeight - 1;
+    }
+
+    /**
+     * Get the tilt of the lines in the rows voted so far.
+     *
+     * @return the angle (in degrees) of the dominant lines from the nearest axis, clockwise on
+     * screen, NaN if there are too few lines
+     */
+    float getAngle() {
+        if (mVotes < MIN_VOTES * mWidth * mHeight) {
+            return Float.NaN;
+        }
+        int count = mHistogram.length;
+        float[] smooth = new float[count];
+        int peak = 0;
+        for (int i = 0; i < count; i++) {
+            for (int j = Math.max(0, i - SMOOTH_RADIUS);
+                    j <= Math.min(count - 1, i + SMOOTH_RADIUS); j++) {
+                smooth[i] += mHistogram[j];
+            }
+            if (smooth[i] > smooth[peak]) {
+                peak = i;
+            }
+        }
+
+        // parabolic interpolation of the peak between its neighbour bins
+        float offset = 0;
+        if (peak > 0 && peak < count - 1) {
+            float left = smooth[peak - 1];
+            float right = smooth[peak + 1];
+            float curvature = left - 2 * smooth[peak] + right;
+            if (curvature < 0) {
+                offset = (left - right) / (2 * curvature);
+            }
+        }
+        return (peak + offset) / BINS_PER_DEGREE - MAX_ANGLE;
+    }
+}
@@ -0,0 +1,155 @@
+package com.thecarousell.cropimageview;
+
+/**
+ * Extrapolates the pointer position a short time ahead to hide the touch to display latency.<br>
+ * Position and velocity are tracked by an alpha-beta filter (a steady state Kalman filter for
+ * constant velocity motion) fed with every touch sample, including the historical samples batched
+ * in a single {@code MotionEvent}.<br>
+ * Accuracy is measured by comparing every prediction with the real pointer position at the time
+ * it predicted, interpolated between the samples around it.
+ */
+final class TouchPredictor {
+
+    /**
+     * How much of the difference between the measured and expected position is taken.
+     */
+    private static final float ALPHA = 0.8f;
+
+    /**
+     * How much of the difference between the measured and expected position corrects the
+     * velocity.
+     */
+    private static final float BETA = 0.3f;
+
+    /**
+     * Samples further apart than this are treated as a new gesture (in milliseconds).
+     */
+    private static final long MAX_SAMPLE_GAP = 100;
+
+    /**
+     * Prediction errors in hundredths of a pixel.
+     */
+    private final LatencyHistogram mError = new LatencyHistogram();
+
+    /**
+     * How far ahead to predict in milliseconds.
+     */
+    private long mHorizon;
+
+    private boolean mHasSample;
+
+    private long mTime;
+
+    private float mX;
+
+    private float mY;
+
+    /**
+     * The filtered velocity in pixels per millisecond.
+     */
+    private float mVelocityX;
+
+    private float mVelocityY;
+
+    /**
+     * The last measured sample, used to interpolate the real position for accuracy.
+     */
+    private float mSampleX;
+
+    private float mSampleY;
+
+    private long mPredictionTime;
+
+    private float mPredictionX;
+
+    private float mPredictionY;
+
+    TouchPredictor(long horizon) {
+        setHorizon(horizon);
+    }
+
+    long getHorizon() {
+        return mHorizon;
+    }
+
+    void setHorizon(long horizon) {
+        if (horizon < 0) {
+            throw new IllegalArgumentException("Prediction horizon must not be negative");
+        }
+        mHorizon = horizon;
+    }
+
+    /**
+     * The distance between predicted and real pointer positions, in hundredths of a pixel.
+     */
+    LatencyHistogram getError() {
+        return mError;
+    }
+
+    /**
+     * Start tracking a new gesture at the given sample.
+     */
+    void reset(float x, float y, long time) {
+        mHasSample = true;
+        mTime = time;
+        mX = mSampleX = x;
+        mY = mSampleY = y;
+        mVelocityX = 0;
+        mVelocityY = 0;
+        mPredictionTime = 0;
+    }
+
+    /**
+     * Add a measured pointer sample, samples must be added in time order.
+     *
+     * @param time the sample time in milliseconds (e.g. {@code MotionEvent.getEventTime()})
+     */
+    void addSample(float x, float y, long time) {
+        long dt = time - mTime;
+        if (!mHasSample || dt > MAX_SAMPLE_GAP) {
+            reset(x, y, time);
+            return;
+        } else if (dt <= 0) {
+            return;
+        }
+
+        if (mPredictionTime != 0 && time >= mPredictionTime) {
+            float t = (float) (mPredictionTime - mTime) / dt;
+            float realX = mSampleX + (x - mSampleX) * t;
+            float realY = mSampleY + (y - mSampleY) * t;
+            float error = (float) Math.hypot(realX - mPredictionX, realY - mPredictionY);
+            mError.record(Math.round(error * 100));
+            mPredictionTime = 0;
+        }
+
+        float expectedX = mX + mVelocityX * dt;
+        float expectedY = mY + mVelocityY * dt;
+        float residualX = x - expectedX;
+        float residualY = y - expectedY;
+        mX = expectedX + ALPHA * residualX;
+        mY = expectedY + ALPHA * residualY;
+        mVelocityX += BETA * residualX / dt;
+        mVelocityY += BETA * residualY / dt;
+
+        mTime = time;
+        mSampleX = x;
+        mSampleY = y;
+    }
+
+    /**
+     * Predict the pointer position {@link #getHorizon()} after the last sample.
+     *
+     * @param point the array to write the predicted x, y into
+     */
+    void predict(float[] point) {
+        point[0] = mX + mVelocityX * mHorizon;
+        point[1] = mY + mVelocityY * mHorizon;
+
+        // only a single prediction is checked at a time, so the checks don't need a queue
+        if (mPredictionTime == 0 && mHorizon > 0) {
+            mPredictionTime = mTime + mHorizon;
+            mPredictionX = point[0];
+            mPredictionY = point[1];
+        }
+    }
+}
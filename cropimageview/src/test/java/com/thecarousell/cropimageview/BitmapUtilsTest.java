@@ -0,0 +1,87 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests for the size calculations of {@link BitmapUtils}: the decode planning of {@link
+ * BitmapUtils#cropRegions} (the sample size, the decoded bounds and the size of every output) and
+ * the preview size of a pixel buffer.
+ */
+public class BitmapUtilsTest {
+
+    @Test
+    public void getRegionSampleSize_unconstrained_isOne() {
+        assertEquals(1, BitmapUtils.getRegionSampleSize(4000, 3000, 0, 0));
+    }
+
+    @Test
+    public void getRegionSampleSize_keepsRequestedResolution() {
+        // 1000x500 fits into 200x200 as 200x100, a sample of 8 would leave only 125x62
+        assertEquals(4, BitmapUtils.getRegionSampleSize(1000, 500, 200, 200));
+        assertEquals(4, BitmapUtils.getRegionSampleSize(1000, 500, 250, 0));
+        assertEquals(1, BitmapUtils.getRegionSampleSize(1000, 500, 0, 400));
+        assertEquals(8, BitmapUtils.getRegionSampleSize(4096, 4096, 512, 512));
+    }
+
+    @Test
+    public void getDecodeBounds_unionAlignedToSampleGrid() {
+        int[][] regions = {{10, 30, 100, 90}, {50, 5, 130, 60}};
+        assertArrayEquals(new int[]{10, 5, 130, 90}, BitmapUtils.getDecodeBounds(regions, 1));
+        assertArrayEquals(new int[]{8, 4, 130, 90}, BitmapUtils.getDecodeBounds(regions, 4));
+    }
+
+    @Test
+    public void getSampledPoints_relativeToBounds() {
+        int[] bounds = {8, 4, 130, 90};
+        float[] points = BitmapUtils.getSampledPoints(new int[]{12, 8, 52, 28}, bounds, 4);
+        assertArrayEquals(new float[]{1, 1, 11, 1, 11, 6, 1, 6}, points, 0);
+    }
+
+    @Test
+    public void getCropSize_outputsFitRequest() {
+        int[][] regions = {{0, 0, 1000, 500}, {600, 200, 1000, 600}};
+        int sampleSize = Math.min(BitmapUtils.getRegionSampleSize(1000, 500, 200, 200),
+                BitmapUtils.getRegionSampleSize(400, 400, 100, 100));
+        assertEquals(4, sampleSize);
+
+        int[] bounds = BitmapUtils.getDecodeBounds(regions, sampleSize);
+        assertArrayEquals(new int[]{0, 0, 1000, 600}, bounds);
+        assertArrayEquals(new int[]{200, 100}, BitmapUtils.getCropSize(
+                BitmapUtils.getSampledPoints(regions[0], bounds, sampleSize), 200, 200));
+        assertArrayEquals(new int[]{100, 100}, BitmapUtils.getCropSize(
+                BitmapUtils.getSampledPoints(regions[1], bounds, sampleSize), 100, 100));
+    }
+
+    @Test
+    public void getCropSize_rotatedPoints_swapsDimensions() {
+        // the crop window rotated by 90 degrees, the top-left is the bottom-left of the region
+        float[] points = {0, 300, 0, 0, 200, 0, 200, 300};
+        assertArrayEquals(new int[]{300, 200}, BitmapUtils.getCropSize(points, 0, 0));
+        assertArrayEquals(new int[]{150, 100}, BitmapUtils.getCropSize(points, 150, 150));
+    }
+
+    @Test
+    public void calculatePreviewSampleSize_roundedPreviewFits() {
+        assertEquals(1, BitmapUtils.calculatePreviewSampleSize(2048, 1000));
+        // truncated 4097 / 2 is 2048, rounded it is 2049 and needs a sample of 4
+        assertEquals(4, BitmapUtils.calculatePreviewSampleSize(4097, 100));
+        assertEquals(1024, BitmapUtils.getPreviewSize(4097, 4));
+        assertEquals(2, BitmapUtils.calculatePreviewSampleSize(4096, 4096));
+    }
+
+    @Test
+    public void getPreviewSize_lastSampleInsideSource() {
+        for (int sampleSize = 1; sampleSize <= 16; sampleSize *= 2) {
+            for (int size = 1; size < 100; size++) {
+                int previewSize = BitmapUtils.getPreviewSize(size, sampleSize);
+                assertTrue((previewSize - 1) * sampleSize < size);
+                assertTrue(Math.abs(previewSize * sampleSize - size) <= sampleSize / 2
+                        || previewSize == 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Host tests for {@link ColorAdjustments}.
+ */
+public class ColorAdjustmentsTest {
+
+    @Test
+    public void getMatrix_noAdjustments_returnsNull() {
+        assertNull(ColorAdjustments.getMatrix(0, 1, 1));
+    }
+
+    @Test
+    public void apply_zeroSaturation_returnsGray() {
+        float[] matrix = ColorAdjustments.getMatrix(0, 1, 0);
+        int gray = ColorAdjustments.apply(matrix, 0xFFFF0000);
+        assertEquals(0xFF363636, gray);
+    }
+
+    @Test
+    public void apply_brightnessAndContrast_clampsChannels() {
+        float[] matrix = ColorAdjustments.getMatrix(0.5f, 2, 1);
+        assertEquals(0x80FFFFFF, ColorAdjustments.apply(matrix, 0x80808080));
+        assertEquals(0xFF404040, ColorAdjustments.apply(
+                ColorAdjustments.getMatrix(0, 2, 1), 0xFF606060));
+    }
+}
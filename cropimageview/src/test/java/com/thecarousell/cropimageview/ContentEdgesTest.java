@@ -0,0 +1,54 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Host tests for {@link ContentEdges}.
+ */
+public class ContentEdgesTest {
+
+    private static final int WIDTH = 100;
+
+    private static final int HEIGHT = 80;
+
+    @Test
+    public void find_flatImage_hasNoEdges() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xff808080);
+        ContentEdges edges = ContentEdges.find(pixels, WIDTH, HEIGHT);
+        assertEquals(0, edges.getVertical().length);
+        assertEquals(0, edges.getHorizontal().length);
+    }
+
+    @Test
+    public void find_boxOnPlainBackground_returnsBoxEdges() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xffffffff);
+        for (int y = 20; y < 60; y++) {
+            for (int x = 30; x < 70; x++) {
+                pixels[y * WIDTH + x] = 0xff202020;
+            }
+        }
+        ContentEdges edges = ContentEdges.find(pixels, WIDTH, HEIGHT);
+        assertArrayEquals(new float[]{0.3f, 0.7f}, edges.getVertical(), 0.0001f);
+        assertArrayEquals(new float[]{0.25f, 0.75f}, edges.getHorizontal(), 0.0001f);
+    }
+
+    @Test
+    public void snap_returnsNearestEdgeWithinRadius() {
+        float[] edges = {10, 20, 40};
+        assertEquals(20, ContentEdges.snap(edges, 17, 5), 0);
+        assertEquals(20, ContentEdges.snap(edges, 24, 5), 0);
+        assertEquals(10, ContentEdges.snap(edges, 14, 5), 0);
+        assertEquals(30, ContentEdges.snap(edges, 30, 5), 0);
+        assertEquals(40, ContentEdges.snap(edges, 40, 5), 0);
+        assertEquals(50, ContentEdges.snap(edges, 50, 5), 0);
+        assertEquals(17, ContentEdges.snap(edges, 17, 0), 0);
+        assertEquals(17, ContentEdges.snap(null, 17, 5), 0);
+    }
+}
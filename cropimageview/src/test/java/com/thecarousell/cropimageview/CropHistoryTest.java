@@ -0,0 +1,65 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests for {@link CropHistory}.
+ */
+public class CropHistoryTest {
+
+    @Test
+    public void undoRedo_movesBetweenStates() {
+        CropHistory history = new CropHistory(4, 2);
+        history.push(new float[]{1, 1});
+        history.push(new float[]{2, 2});
+        history.push(new float[]{3, 3});
+
+        float[] record = new float[2];
+        assertTrue(history.undo(record));
+        assertArrayEquals(new float[]{2, 2}, record, 0);
+        assertTrue(history.undo(record));
+        assertArrayEquals(new float[]{1, 1}, record, 0);
+        assertFalse(history.undo(record));
+        assertTrue(history.redo(record));
+        assertArrayEquals(new float[]{2, 2}, record, 0);
+    }
+
+    @Test
+    public void push_afterUndo_dropsRedoStates() {
+        CropHistory history = new CropHistory(4, 1);
+        history.push(new float[]{1});
+        history.push(new float[]{2});
+        float[] record = new float[1];
+        history.undo(record);
+        history.push(new float[]{3});
+        assertFalse(history.canRedo());
+        assertTrue(history.undo(record));
+        assertArrayEquals(new float[]{1}, record, 0);
+    }
+
+    @Test
+    public void push_full_dropsOldestState() {
+        CropHistory history = new CropHistory(3, 1);
+        for (int i = 1; i <= 5; i++) {
+            history.push(new float[]{i});
+        }
+        float[] record = new float[1];
+        assertTrue(history.undo(record));
+        assertArrayEquals(new float[]{4}, record, 0);
+        assertTrue(history.undo(record));
+        assertArrayEquals(new float[]{3}, record, 0);
+        assertFalse(history.undo(record));
+    }
+
+    @Test
+    public void push_sameState_isIgnored() {
+        CropHistory history = new CropHistory(3, 1);
+        history.push(new float[]{1});
+        history.push(new float[]{1});
+        assertFalse(history.canUndo());
+    }
+}
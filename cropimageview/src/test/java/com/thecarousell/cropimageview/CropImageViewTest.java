@@ -0,0 +1,216 @@
+package com.thecarousell.cropimageview;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.View;
+import android.widget.FrameLayout;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests of the {@link CropImageView} layout and image matrix, checking the crop rectangle and
+ * points against the expected image region and counting the image matrix and layout requests so
+ * redundant work fails the test.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class CropImageViewTest {
+
+    private static final int WIDTH = 480;
+
+    private static final int HEIGHT = 640;
+
+    /**
+     * The max distance (in bitmap pixels) from the expected crop, rounding of the view/bitmap
+     * scale.
+     */
+    private static final float TOLERANCE = 2;
+
+    private static final int[][] BITMAP_SIZES = {
+            {100, 100}, {1200, 900}, {900, 1200}, {4000, 1000}, {300, 2000}, {640, 480}
+    };
+
+    @Test
+    public void layout_bitmapSizesAndOrientations_cropRectIsPaddedImage() {
+        for (int[] size : BITMAP_SIZES) {
+            for (int degrees = 0; degrees < 360; degrees += 90) {
+                CountingCropImageView view = createView();
+                view.setImageBitmap(createBitmap(size[0], size[1]), 1, degrees);
+                view.getInteractionMetrics().reset();
+                view.mRequestLayoutCount = 0;
+                layout(view);
+
+                int left = Math.round(size[0] * 0.1f);
+                int top = Math.round(size[1] * 0.1f);
+                int right = Math.round(size[0] * 0.9f);
+                int bottom = Math.round(size[1] * 0.9f);
+                assertRect(left, top, right, bottom, view.getCropRect());
+                if (degrees == 0) {
+                    assertPoints(new float[]{left, top, right, top, right, bottom, left, bottom},
+                            view.getCropPoints());
+                }
+                assertEquals(1, view.getInteractionMetrics().getImageMatrixCallCount());
+                assertEquals(0, view.mRequestLayoutCount);
+            }
+        }
+    }
+
+    @Test
+    public void setImageBitmap_singleLayoutPass() {
+        CountingCropImageView view = createView();
+        view.setImageBitmap(createBitmap(1200, 900));
+        layout(view);
+        assertFalse(view.isLayoutRequested());
+
+        for (int[] size : BITMAP_SIZES) {
+            view.setImageBitmap(createBitmap(size[0], size[1]));
+            view.getInteractionMetrics().reset();
+            view.mRequestLayoutCount = 0;
+            layout(view);
+
+            // the layout must not request another measure/layout pass of its own
+            assertFalse(view.isLayoutRequested());
+            assertEquals(0, view.mRequestLayoutCount);
+            assertEquals(1, view.getInteractionMetrics().getImageMatrixCallCount());
+        }
+    }
+
+    @Test
+    public void rotateImage_quarterTurns_keepsCropRect() {
+        CountingCropImageView view = createView();
+        view.setAutoZoomEnabled(false);
+        view.setImageBitmap(createBitmap(1200, 900));
+        layout(view);
+        view.setCropRect(new Rect(300, 225, 900, 675));
+        assertRect(300, 225, 900, 675, view.getCropRect());
+
+        for (int i = 0; i < 4; i++) {
+            view.getInteractionMetrics().reset();
+            view.rotateImage(90);
+            assertRect(300, 225, 900, 675, view.getCropRect());
+            if (i == 0) {
+                // the bottom-left of the region is now at the top-left of the view
+                assertPoints(new float[]{300, 675, 300, 225, 900, 225, 900, 675},
+                        view.getCropPoints());
+            }
+            assertTrue(view.getInteractionMetrics().getImageMatrixCallCount() <= 3);
+        }
+        assertPoints(new float[]{300, 225, 900, 225, 900, 675, 300, 675}, view.getCropPoints());
+    }
+
+    @Test
+    public void flipImage_mirrorsCropPoints() {
+        CountingCropImageView view = createView();
+        view.setAutoZoomEnabled(false);
+        view.setImageBitmap(createBitmap(1200, 900));
+        layout(view);
+        view.setCropRect(new Rect(100, 200, 500, 600));
+
+        view.getInteractionMetrics().reset();
+        view.flipImageHorizontally();
+        assertRect(100, 200, 500, 600, view.getCropRect());
+        assertPoints(new float[]{500, 200, 100, 200, 100, 600, 500, 600}, view.getCropPoints());
+        assertEquals(1, view.getInteractionMetrics().getImageMatrixCallCount());
+
+        view.flipImageHorizontally();
+        view.flipImageVertically();
+        assertRect(100, 200, 500, 600, view.getCropRect());
+        assertPoints(new float[]{100, 600, 500, 600, 500, 200, 100, 200}, view.getCropPoints());
+    }
+
+    @Test
+    public void setScaleType_centerInside_keepsSmallImageUnscaled() {
+        CountingCropImageView view = createView();
+        view.setAutoZoomEnabled(false);
+        view.setImageBitmap(createBitmap(100, 100));
+        layout(view);
+        assertEquals(WIDTH * 0.8f, getCropWindowRect(view).width(), TOLERANCE);
+
+        view.mRequestLayoutCount = 0;
+        view.setScaleType(CropImage.ScaleType.CENTER_INSIDE);
+        assertTrue(view.mRequestLayoutCount >= 1);
+        layout(view);
+
+        assertEquals(80, getCropWindowRect(view).width(), TOLERANCE);
+        assertRect(10, 10, 90, 90, view.getCropRect());
+    }
+
+    @Test
+    public void autoZoom_smallCropWindow_zoomsInKeepingCropRect() {
+        CountingCropImageView view = createView();
+        view.setImageBitmap(createBitmap(1200, 900));
+        layout(view);
+
+        view.getInteractionMetrics().reset();
+        view.setCropRect(new Rect(450, 375, 750, 525));
+
+        // 120x60 view pixels at the fit scale of 0.4, zoomed to cover 64% of the view width
+        assertEquals(120 * 2.56f, getCropWindowRect(view).width(), 1);
+        assertRect(450, 375, 750, 525, view.getCropRect());
+        assertEquals(1, view.getInteractionMetrics().getImageMatrixCallCount());
+    }
+
+    private static CountingCropImageView createView() {
+        CountingCropImageView view = new CountingCropImageView(RuntimeEnvironment.getApplication());
+        view.setLayoutParams(new FrameLayout.LayoutParams(WIDTH, HEIGHT));
+        view.setInteractionMetricsEnabled(true);
+        return view;
+    }
+
+    private static void layout(View view) {
+        view.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        view.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    private static Bitmap createBitmap(int width, int height) {
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+
+    private static RectF getCropWindowRect(CropImageView view) {
+        return ((CropOverlayView) view.findViewById(R.id.CropOverlayView)).getCropWindowRect();
+    }
+
+    private static void assertRect(int left, int top, int right, int bottom, Rect actual) {
+        String message = "Expected " + new Rect(left, top, right, bottom) + " but was " + actual;
+        assertEquals(message, left, actual.left, TOLERANCE);
+        assertEquals(message, top, actual.top, TOLERANCE);
+        assertEquals(message, right, actual.right, TOLERANCE);
+        assertEquals(message, bottom, actual.bottom, TOLERANCE);
+    }
+
+    private static void assertPoints(float[] expected, float[] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals("Point coordinate " + i, expected[i], actual[i], TOLERANCE);
+        }
+    }
+
+    /**
+     * Counts the layout requests of the view.
+     */
+    private static final class CountingCropImageView extends CropImageView {
+
+        /**
+         * Not initialized so the requests made by the super constructor are kept.
+         */
+        int mRequestLayoutCount;
+
+        CountingCropImageView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void requestLayout() {
+            super.requestLayout();
+            mRequestLayoutCount++;
+        }
+    }
+}
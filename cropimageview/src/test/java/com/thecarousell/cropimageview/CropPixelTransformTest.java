@@ -0,0 +1,198 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests for {@link CropPixelTransform}, runs on plain JVM pixel arrays.
+ */
+public class CropPixelTransformTest {
+
+    /**
+     * 3x2 source with distinct opaque pixels.
+     */
+    private static final int[] SOURCE = {
+            0xFF000001, 0xFF000002, 0xFF000003,
+            0xFF000004, 0xFF000005, 0xFF000006
+    };
+
+    private static int[] transform(float[] points, int width, int height) {
+        int[] dst = new int[width * height];
+        CropPixelTransform.transform(SOURCE, 3, 2, points, dst, width, height);
+        return dst;
+    }
+
+    @Test
+    public void transform_wholeSource_copiesPixels() {
+        int[] dst = transform(new float[]{0, 0, 3, 0, 3, 2, 0, 2}, 3, 2);
+        assertArrayEquals(SOURCE, dst);
+    }
+
+    @Test
+    public void transform_subRect_cropsPixels() {
+        int[] dst = transform(new float[]{1, 0, 3, 0, 3, 1, 1, 1}, 2, 1);
+        assertArrayEquals(new int[]{0xFF000002, 0xFF000003}, dst);
+    }
+
+    @Test
+    public void transform_flippedPoints_flipsHorizontally() {
+        int[] dst = transform(new float[]{3, 0, 0, 0, 0, 2, 3, 2}, 3, 2);
+        assertArrayEquals(new int[]{
+                0xFF000003, 0xFF000002, 0xFF000001,
+                0xFF000006, 0xFF000005, 0xFF000004
+        }, dst);
+    }
+
+    @Test
+    public void transform_rotatedPoints_rotatesClockwise() {
+        // rotated 90 degrees clockwise the bottom-left source pixel is shown top-left
+        int[] dst = transform(new float[]{0, 2, 0, 0, 3, 0, 3, 2}, 2, 3);
+        assertArrayEquals(new int[]{
+                0xFF000004, 0xFF000001,
+                0xFF000005, 0xFF000002,
+                0xFF000006, 0xFF000003
+        }, dst);
+    }
+
+    @Test
+    public void transform_scaleDown_averagesArea() {
+        int[] src = {0xFF000000, 0xFF0000FF, 0xFF0000FF, 0xFF000000};
+        int[] dst = new int[1];
+        CropPixelTransform.transform(src, 2, 2, new float[]{0, 0, 2, 0, 2, 2, 0, 2}, dst, 1, 1);
+        assertArrayEquals(new int[]{0xFF000080}, dst);
+    }
+
+    @Test
+    public void transform_scaleUp_resizesBicubic() {
+        int[] src = new int[16];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = 0xFF000000 | (i * 16 << 8) | (255 - i * 16);
+        }
+        int[] dst = new int[64];
+        CropPixelTransform.transform(src, 4, 4, new float[]{0, 0, 4, 0, 4, 4, 0, 4}, dst, 8, 8);
+        assertArrayEquals(ImageResampler.resize(src, 4, 4, 8, 8), dst);
+    }
+
+    @Test
+    public void transform_largeScaleDown_averagesEverySourcePixel() {
+        // 8 bilinear samples spread over 32 pixels would all miss the white pixel
+        int[] src = new int[32];
+        Arrays.fill(src, 0xFF000000);
+        src[0] = 0xFFFFFFFF;
+        int[] dst = new int[1];
+        CropPixelTransform.transform(src, 32, 1, new float[]{0, 0, 32, 0, 32, 1, 0, 1}, dst, 1, 1);
+        assertEquals(255 / 32f, dst[0] & 0xFF, 1);
+    }
+
+    @Test
+    public void transform_scaleUpOval_masksOutsideOval() {
+        int[] src = new int[8 * 8];
+        Arrays.fill(src, 0xFF336699);
+        int size = 32;
+        int[] dst = new int[size * size];
+        CropPixelTransform.transform(src, 8, 8, new float[]{0, 0, 8, 0, 8, 8, 0, 8}, dst, size,
+                size, true);
+        assertEquals(0, dst[0]);
+        assertEquals(0xFF336699, dst[size / 2 * size + size / 2]);
+    }
+
+    @Test
+    public void getSampledSize_resizesOnlyUpOrFarDown() {
+        assertEquals(50, CropPixelTransform.getSampledSize(50, 50));
+        assertEquals(100, CropPixelTransform.getSampledSize(100.4f, 200));
+        assertEquals(100, CropPixelTransform.getSampledSize(800, 100));
+        assertEquals(125, CropPixelTransform.getSampledSize(1000, 100));
+    }
+
+    @Test
+    public void transform_oval_masksOutsideOval() {
+        int size = 64;
+        int[] src = new int[size * size];
+        Arrays.fill(src, 0xFF336699);
+        int[] dst = new int[size * size];
+        CropPixelTransform.transform(src, size, size,
+                new float[]{0, 0, size, 0, size, size, 0, size}, dst, size, size, true);
+
+        assertEquals(0, dst[0]);
+        assertEquals(0, dst[size * size - 1]);
+        assertEquals(0xFF336699, dst[size / 2 * size + size / 2]);
+        assertEquals(0xFF336699, dst[size / 2 * size]);
+
+        // the edge is antialiased, the diagonal crosses it between fully in and fully out
+        boolean partial = false;
+        for (int i = 0; i < size; i++) {
+            int alpha = dst[i * size + i] >>> 24;
+            partial |= alpha > 0 && alpha < 255;
+        }
+        assertTrue(partial);
+    }
+
+    @Test
+    public void getHomography_parallelogram_isAffine() {
+        assertNull(CropPixelTransform.getHomography(new float[]{1, 0, 3, 1, 2, 3, 0, 2}, 4, 4));
+    }
+
+    @Test
+    public void getHomography_quad_mapsCornersToPoints() {
+        float[] points = {10, 5, 90, 20, 80, 70, 0, 60};
+        float[] homography = CropPixelTransform.getHomography(points, 40, 30);
+        float[] point = new float[2];
+        float[][] corners = {{0, 0}, {40, 0}, {40, 30}, {0, 30}};
+        for (int i = 0; i < 4; i++) {
+            CropPixelTransform.mapPerspective(homography, corners[i][0], corners[i][1], point);
+            assertEquals(points[i * 2], point[0], 0.001f);
+            assertEquals(points[i * 2 + 1], point[1], 0.001f);
+        }
+    }
+
+    @Test
+    public void transform_quad_warpsUpright() {
+        // a source with a vertical split at x = 16, the quad narrows to the bottom around it
+        int size = 32;
+        int[] src = new int[size * size];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = i % size < 16 ? 0xFF000000 : 0xFFFFFFFF;
+        }
+        int[] dst = new int[16 * 16];
+        CropPixelTransform.transform(src, size, size,
+                new float[]{0, 0, 32, 0, 24, 32, 8, 32}, dst, 16, 16);
+        for (int y = 0; y < 16; y++) {
+            assertEquals(0xFF000000, dst[y * 16 + 6]);
+            assertEquals(0xFFFFFFFF, dst[y * 16 + 9]);
+        }
+    }
+
+    @Test
+    public void transform_colorMatrix_appliedInSamePass() {
+        int[] src = {0xFF102030, 0xFF405060};
+        int[] dst = new int[2];
+        float[] matrix = ColorAdjustments.getMatrix(0.1f, 1, 1);
+        CropPixelTransform.transform(src, 2, 1, new float[]{0, 0, 2, 0, 2, 1, 0, 1}, dst, 2, 1,
+                false, matrix);
+        assertArrayEquals(new int[]{0xFF2A3A4A, 0xFF5A6A7A}, dst);
+    }
+
+    @Test
+    public void getOvalSpan_coversAllNonTransparentCoverage() {
+        int width = 37;
+        int height = 21;
+        int[] span = new int[4];
+        for (int y = 0; y < height; y++) {
+            CropPixelTransform.getOvalSpan(width, height, y, span);
+            for (int x = 0; x < width; x++) {
+                int coverage = CropPixelTransform.getOvalCoverage(width, height, x, y);
+                if (x < span[0] || x >= span[3]) {
+                    assertEquals(0, coverage);
+                } else if (x >= span[1] && x < span[2]) {
+                    assertEquals(256, coverage);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Host tests for {@link CropRegionIndex}.
+ */
+public class CropRegionIndexTest {
+
+    @Test
+    public void find_overlappingWindows_returnsLastAdded() {
+        CropRegionIndex index = new CropRegionIndex();
+        index.set(new float[]{10, 10, 200, 200, 100, 100, 300, 300}, 2, -1, 0, 800, 800);
+        assertEquals(0, index.find(50, 50));
+        assertEquals(1, index.find(150, 150));
+        assertEquals(1, index.find(250, 250));
+        assertEquals(-1, index.find(400, 400));
+    }
+
+    @Test
+    public void find_withinMargin_hitsWindow() {
+        CropRegionIndex index = new CropRegionIndex();
+        index.set(new float[]{100, 100, 200, 200}, 1, -1, 24, 800, 800);
+        assertEquals(0, index.find(80, 150));
+        assertEquals(0, index.find(220, 220));
+        assertEquals(-1, index.find(70, 150));
+    }
+
+    @Test
+    public void find_skippedWindow_isIgnored() {
+        CropRegionIndex index = new CropRegionIndex();
+        index.set(new float[]{10, 10, 200, 200, 100, 100, 300, 300}, 2, 1, 0, 800, 800);
+        assertEquals(0, index.find(150, 150));
+        assertEquals(-1, index.find(250, 250));
+    }
+
+    @Test
+    public void find_randomWindows_matchesLinearSearch() {
+        Random random = new Random(7);
+        CropRegionIndex index = new CropRegionIndex();
+        for (int round = 0; round < 20; round++) {
+            int count = 1 + random.nextInt(12);
+            float[] rects = new float[count * 4];
+            for (int i = 0; i < count; i++) {
+                rects[i * 4] = random.nextFloat() * 600 - 50;
+                rects[i * 4 + 1] = random.nextFloat() * 600 - 50;
+                rects[i * 4 + 2] = rects[i * 4] + 10 + random.nextFloat() * 300;
+                rects[i * 4 + 3] = rects[i * 4 + 1] + 10 + random.nextFloat() * 300;
+            }
+            int skip = random.nextInt(count + 1) - 1;
+            index.set(rects, count, skip, 16, 640, 480);
+            for (int i = 0; i < 500; i++) {
+                float x = random.nextFloat() * 640;
+                float y = random.nextFloat() * 480;
+                int expected = -1;
+                for (int j = count - 1; j >= 0 && expected < 0; j--) {
+                    if (j != skip && x >= rects[j * 4] - 16 && x <= rects[j * 4 + 2] + 16
+                            && y >= rects[j * 4 + 1] - 16 && y <= rects[j * 4 + 3] + 16) {
+                        expected = j;
+                    }
+                }
+                assertEquals(expected, index.find(x, y));
+            }
+        }
+    }
+}
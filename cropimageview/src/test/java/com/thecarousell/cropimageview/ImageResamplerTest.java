@@ -0,0 +1,98 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests for {@link ImageResampler}, runs on plain JVM pixel arrays.
+ */
+public class ImageResamplerTest {
+
+    private static int gray(int value) {
+        return 0xFF000000 | (value << 16) | (value << 8) | value;
+    }
+
+    private static int[] fill(int width, int height, int color) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, color);
+        return pixels;
+    }
+
+    @Test
+    public void resize_sameSize_copiesPixels() {
+        int[] src = {gray(1), gray(2), gray(3), gray(4)};
+        assertArrayEquals(src, ImageResampler.resize(src, 2, 2, 2, 2));
+    }
+
+    @Test
+    public void downscale_averagesCoveredArea() {
+        int[] src = {
+                gray(0), gray(100), gray(200), gray(40),
+                gray(100), gray(0), gray(0), gray(0)
+        };
+        int[] dst = ImageResampler.resize(src, 4, 2, 2, 1);
+        assertArrayEquals(new int[]{gray(50), gray(60)}, dst);
+    }
+
+    @Test
+    public void downscale_fractionalRatio_keepsSolidColor() {
+        int color = 0xFF336699;
+        int[] dst = ImageResampler.resize(fill(7, 5, color), 7, 5, 3, 2);
+        assertArrayEquals(fill(3, 2, color), dst);
+    }
+
+    @Test
+    public void upscale_keepsSolidColor() {
+        int color = 0xFF336699;
+        int[] dst = ImageResampler.resize(fill(3, 2, color), 3, 2, 8, 7);
+        assertArrayEquals(fill(8, 7, color), dst);
+    }
+
+    @Test
+    public void upscale_staysWithinSourceRange() {
+        // hard edges make bicubic ring, every channel has its own range inside 0-255
+        int[] src = {0xFF204060, 0xFFA0C0E0, 0xFF204060, 0xFFA0C0E0};
+        int[] min = {255, 255, 255};
+        int[] max = {0, 0, 0};
+        for (int color : src) {
+            for (int c = 0; c < 3; c++) {
+                int value = (color >> (16 - c * 8)) & 0xFF;
+                min[c] = Math.min(min[c], value);
+                max[c] = Math.max(max[c], value);
+            }
+        }
+        for (int color : ImageResampler.resize(src, 4, 1, 13, 3)) {
+            assertEquals(0xFF, color >>> 24);
+            for (int c = 0; c < 3; c++) {
+                int value = (color >> (16 - c * 8)) & 0xFF;
+                assertTrue("Channel " + c + " of " + Integer.toHexString(color),
+                        value >= min[c] && value <= max[c]);
+            }
+        }
+    }
+
+    @Test
+    public void downscale_transparentPixelsDontBleed() {
+        int[] src = {0x00FF0000, 0xFF0000FF};
+        int[] dst = ImageResampler.resize(src, 2, 1, 1, 1);
+        assertEquals(0x800000FF, dst[0]);
+    }
+
+    @Test
+    public void downscale_largeImage_isDeterministic() {
+        int width = 640;
+        int height = 480;
+        int[] src = new int[width * height];
+        for (int i = 0; i < src.length; i++) {
+            src[i] = gray((i * 31) % 256);
+        }
+        int[] first = ImageResampler.resize(src, width, height, 211, 157);
+        int[] second = ImageResampler.resize(src, width, height, 211, 157);
+        assertArrayEquals(first, second);
+    }
+}
@@ -0,0 +1,64 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+
+    @Test
+    public void getPercentile_smallValues_areExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 20; i++) {
+            histogram.record(i);
+        }
+        assertEquals(20, histogram.getCount());
+        assertEquals(10, histogram.getP50());
+        assertEquals(19, histogram.getP95());
+        assertEquals(20, histogram.getP99());
+    }
+
+    @Test
+    public void getPercentile_largeValues_areWithinBucketPrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000000L);
+        }
+        assertWithin(500000000L, histogram.getP50());
+        assertWithin(950000000L, histogram.getP95());
+        assertWithin(990000000L, histogram.getP99());
+        assertEquals(1000000000L, histogram.getMax());
+    }
+
+    @Test
+    public void getIndex_isMonotonicAndMatchesValue() {
+        int last = -1;
+        for (long value = 0; value < 100000; value += 7) {
+            int index = LatencyHistogram.getIndex(value);
+            assertTrue(index >= last);
+            assertTrue(LatencyHistogram.getValue(index) >= value);
+            last = index;
+        }
+        assertEquals(LatencyHistogram.getIndex(Long.MAX_VALUE),
+                LatencyHistogram.getIndex(LatencyHistogram.getValue(
+                        LatencyHistogram.getIndex(Long.MAX_VALUE))));
+    }
+
+    @Test
+    public void reset_clearsValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(5);
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getP99());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual,
+                Math.abs(actual - expected) <= expected / 32);
+    }
+}
@@ -0,0 +1,112 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Host tests for {@link MappedPixelBuffer} reads and writes across chunk boundaries.
+ */
+public class MappedPixelBufferTest {
+
+    private static final int WIDTH = 5;
+
+    private static final int HEIGHT = 7;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    /**
+     * A buffer of 2 rows per chunk, so rows 1/2, 3/4 and 5/6 are in different chunks.
+     */
+    private MappedPixelBuffer createBuffer() throws IOException {
+        MappedPixelBuffer buffer = MappedPixelBuffer.create(mFolder.newFile(), WIDTH, HEIGHT,
+                2 * WIDTH * MappedPixelBuffer.BYTES_PER_PIXEL + 1);
+        assertEquals(2, buffer.getRowsPerChunk());
+        return buffer;
+    }
+
+    @Test
+    public void create_mapsChunksOnFirstAccess() throws IOException {
+        MappedPixelBuffer buffer = createBuffer();
+        try {
+            assertEquals(0, buffer.getMappedChunkCount());
+            buffer.getPixel(0, 3);
+            assertEquals(1, buffer.getMappedChunkCount());
+            buffer.readPixels(new int[WIDTH * 2], 0, WIDTH, 0, 2, WIDTH, 2);
+            assertEquals(1, buffer.getMappedChunkCount());
+            buffer.getPixel(4, 6);
+            assertEquals(2, buffer.getMappedChunkCount());
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void writePixels_acrossChunks_readsBackEveryPixel() throws IOException {
+        MappedPixelBuffer buffer = createBuffer();
+        try {
+            int[] pixels = new int[WIDTH * HEIGHT];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = 0xFF000000 | i;
+            }
+            buffer.writePixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    assertEquals(pixels[y * WIDTH + x], buffer.getPixel(x, y));
+                }
+            }
+            int[] read = new int[WIDTH * HEIGHT];
+            buffer.readPixels(read, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+            assertArrayEquals(pixels, read);
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void readWritePixels_offsetAndStride() throws IOException {
+        MappedPixelBuffer buffer = createBuffer();
+        try {
+            // a 2x3 region from rows 1-3 (2 chunks), given at offset 1 of rows 4 entries apart
+            int[] pixels = {0, 11, 12, 0, 0, 21, 22, 0, 0, 31, 32, 0};
+            buffer.writePixels(pixels, 1, 4, 2, 1, 2, 3);
+            assertEquals(11, buffer.getPixel(2, 1));
+            assertEquals(22, buffer.getPixel(3, 2));
+            assertEquals(31, buffer.getPixel(2, 3));
+            assertEquals(0, buffer.getPixel(1, 1));
+            assertEquals(0, buffer.getPixel(4, 3));
+            assertEquals(((long) 3 * WIDTH + 2) * 4, buffer.getOffset(2, 3));
+
+            int[] read = new int[8];
+            buffer.readPixels(read, 2, 3, 2, 2, 2, 2);
+            assertArrayEquals(new int[]{0, 0, 21, 22, 0, 31, 32, 0}, read);
+        } finally {
+            buffer.close();
+        }
+    }
+
+    @Test
+    public void readSampledPixels_everyOtherPixel() throws IOException {
+        MappedPixelBuffer buffer = createBuffer();
+        try {
+            int[] pixels = new int[WIDTH * HEIGHT];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = i;
+            }
+            buffer.writePixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+            int width = BitmapUtils.getPreviewSize(WIDTH, 2);
+            int height = BitmapUtils.getPreviewSize(HEIGHT, 2);
+            int[] read = new int[width * height];
+            buffer.readSampledPixels(read, 0, width, 0, 0, width, height, 2);
+            assertArrayEquals(new int[]{0, 2, 4, 10, 12, 14, 20, 22, 24, 30, 32, 34}, read);
+        } finally {
+            buffer.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests for {@link QuadDetector}.
+ */
+public class QuadDetectorTest {
+
+    private static final int WIDTH = 160;
+
+    private static final int HEIGHT = 120;
+
+    @Test
+    public void find_flatImage_returnsNull() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xff808080);
+        assertNull(QuadDetector.find(pixels, WIDTH, HEIGHT));
+    }
+
+    @Test
+    public void find_tiltedDocument_returnsCorners() {
+        float[] quad = {40, 20, 130, 30, 120, 100, 30, 90};
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                boolean inside = true;
+                for (int i = 0; i < 4; i++) {
+                    int j = (i + 1) % 4;
+                    inside &= (quad[j * 2] - quad[i * 2]) * (y + 0.5f - quad[i * 2 + 1])
+                            - (quad[j * 2 + 1] - quad[i * 2 + 1]) * (x + 0.5f - quad[i * 2]) >= 0;
+                }
+                pixels[y * WIDTH + x] = inside ? 0xfff0f0e8 : 0xff303840;
+            }
+        }
+        float[] found = QuadDetector.find(pixels, WIDTH, HEIGHT);
+        for (int i = 0; i < 8; i++) {
+            assertEquals(quad[i], found[i], 2);
+        }
+    }
+
+    @Test
+    public void sortCorners_ordersClockwiseFromTopLeft() {
+        float[] points = {120, 100, 40, 20, 30, 90, 130, 30};
+        QuadDetector.sortCorners(points);
+        assertArrayEquals(new float[]{40, 20, 130, 30, 120, 100, 30, 90}, points, 0);
+    }
+
+    @Test
+    public void isConvex_detectsReflexCorner() {
+        assertTrue(QuadDetector.isConvex(new float[]{0, 0, 10, 0, 10, 10, 0, 10}));
+        assertFalse(QuadDetector.isConvex(new float[]{0, 0, 10, 0, 3, 3, 0, 10}));
+    }
+}
@@ -0,0 +1,61 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests for {@link SaliencyCrop}.
+ */
+public class SaliencyCropTest {
+
+    private static final int WIDTH = 128;
+
+    private static final int HEIGHT = 96;
+
+    @Test
+    public void findCropRect_flatImage_returnsCenteredWindow() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xff808080);
+        int[] rect = SaliencyCrop.findCropRect(pixels, WIDTH, HEIGHT, 1, 0.1f);
+        assertEquals(rect[2] - rect[0], rect[3] - rect[1]);
+        assertEquals(WIDTH / 2, (rect[0] + rect[2]) / 2, 1);
+        assertEquals(HEIGHT / 2, (rect[1] + rect[3]) / 2, 1);
+    }
+
+    @Test
+    public void findCropRect_fixedAspectRatio_movesToContent() {
+        int[] pixels = createImage(90, 40, 120, 70);
+        int[] rect = SaliencyCrop.findCropRect(pixels, WIDTH, HEIGHT, 1, 0.25f);
+        assertEquals(48, rect[2] - rect[0]);
+        assertEquals(48, rect[3] - rect[1]);
+        assertTrue(rect[0] <= 90 && rect[1] <= 40 && rect[2] >= 120 && rect[3] >= 70);
+    }
+
+    @Test
+    public void findCropRect_freeAspectRatio_boundsContent() {
+        int[] pixels = createImage(20, 10, 100, 80);
+        int[] rect = SaliencyCrop.findCropRect(pixels, WIDTH, HEIGHT, 0, 0.1f);
+        assertTrue(rect[0] >= 16 && rect[0] <= 28);
+        assertTrue(rect[2] >= 92 && rect[2] <= 104);
+        assertTrue(rect[1] >= 6 && rect[1] <= 18);
+        assertTrue(rect[3] >= 72 && rect[3] <= 84);
+    }
+
+    /**
+     * A flat image with a checkerboard in the given rectangle.
+     */
+    private static int[] createImage(int left, int top, int right, int bottom) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xff808080);
+        for (int y = top; y < bottom; y++) {
+            for (int x = left; x < right; x++) {
+                pixels[y * WIDTH + x] = ((x / 2 + y / 2) & 1) == 0 ? 0xff000000 : 0xffffffff;
+            }
+        }
+        return pixels;
+    }
+}
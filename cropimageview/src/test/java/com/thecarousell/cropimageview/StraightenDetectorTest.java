@@ -0,0 +1,59 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests for {@link StraightenDetector}.
+ */
+public class StraightenDetectorTest {
+
+    private static final int WIDTH = 200;
+
+    private static final int HEIGHT = 150;
+
+    @Test
+    public void detect_flatImage_returnsNaN() {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        Arrays.fill(pixels, 0xff808080);
+        assertTrue(Float.isNaN(StraightenDetector.detect(pixels, WIDTH, HEIGHT)));
+    }
+
+    @Test
+    public void detect_tiltedStripes_returnsTilt() {
+        assertEquals(4, StraightenDetector.detect(createStripes(4), WIDTH, HEIGHT), 0.3f);
+        assertEquals(-7, StraightenDetector.detect(createStripes(-7), WIDTH, HEIGHT), 0.3f);
+    }
+
+    @Test
+    public void step_incremental_matchesSingleCall() {
+        int[] pixels = createStripes(3);
+        StraightenDetector detector = new StraightenDetector(pixels, WIDTH, HEIGHT);
+        assertFalse(detector.step(10));
+        while (!detector.step(10)) {
+        }
+        assertEquals(StraightenDetector.detect(pixels, WIDTH, HEIGHT), detector.getAngle(), 0);
+    }
+
+    /**
+     * Smooth horizontal stripes rotated clockwise by the given angle, like a filtered down-sampled
+     * photo (hard stripes would alias into axis aligned steps).
+     */
+    private static int[] createStripes(float degrees) {
+        double angle = Math.toRadians(degrees);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                double distance = y * Math.cos(angle) - x * Math.sin(angle);
+                int luma = (int) Math.round(128 + 110 * Math.sin(distance * Math.PI / 8));
+                pixels[y * WIDTH + x] = 0xff000000 | luma << 16 | luma << 8 | luma;
+            }
+        }
+        return pixels;
+    }
+}
@@ -0,0 +1,56 @@
+package com.thecarousell.cropimageview;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Host tests for {@link TouchPredictor}.
+ */
+public class TouchPredictorTest {
+
+    @Test
+    public void predict_constantVelocity_extrapolatesAhead() {
+        TouchPredictor predictor = new TouchPredictor(16);
+        predictor.reset(0, 0, 0);
+        // 2 pixels per millisecond to the right, sampled every 8 ms
+        for (int t = 8; t <= 200; t += 8) {
+            predictor.addSample(t * 2, 0, t);
+        }
+        float[] point = new float[2];
+        predictor.predict(point);
+        assertEquals(432, point[0], 2);
+        assertEquals(0, point[1], 0.01f);
+    }
+
+    @Test
+    public void predict_afterStop_settlesOnPointer() {
+        TouchPredictor predictor = new TouchPredictor(16);
+        predictor.reset(0, 0, 0);
+        for (int t = 8; t <= 96; t += 8) {
+            predictor.addSample(0, t, t);
+        }
+        for (int t = 104; t <= 400; t += 8) {
+            predictor.addSample(0, 96, t);
+        }
+        float[] point = new float[2];
+        predictor.predict(point);
+        assertEquals(96, point[1], 1);
+    }
+
+    @Test
+    public void getError_recordsPredictionAccuracy() {
+        TouchPredictor predictor = new TouchPredictor(16);
+        predictor.reset(0, 0, 0);
+        float[] point = new float[2];
+        for (int t = 8; t <= 400; t += 8) {
+            predictor.addSample(t, t, t);
+            predictor.predict(point);
+        }
+        LatencyHistogram error = predictor.getError();
+        assertTrue(error.getCount() > 10);
+        // linear motion is predicted within a pixel once the velocity settled
+        assertTrue(error.getP50() < 100);
+    }
+}